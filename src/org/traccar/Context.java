@@ -21,6 +21,7 @@ import com.ning.http.client.AsyncHttpClient;
 
 import java.net.InetAddress;
 import java.net.UnknownHostException;
+import java.sql.SQLException;
 import java.util.Properties;
 
 import org.apache.velocity.app.VelocityEngine;
@@ -38,9 +39,12 @@ import org.traccar.database.LdapProvider;
 import org.traccar.database.MediaManager;
 import org.traccar.database.NotificationManager;
 import org.traccar.database.PermissionsManager;
+import org.traccar.database.PositionWriter;
 import org.traccar.database.GeofenceManager;
 import org.traccar.database.GroupsManager;
 import org.traccar.database.StatisticsManager;
+import org.traccar.database.SummaryManager;
+import org.traccar.database.TripsManager;
 import org.traccar.database.UsersManager;
 import org.traccar.events.MotionEventHandler;
 import org.traccar.events.OverspeedEventHandler;
@@ -54,6 +58,7 @@ import org.traccar.geocoder.MapQuestGeocoder;
 import org.traccar.geocoder.NominatimGeocoder;
 import org.traccar.geocoder.OpenCageGeocoder;
 import org.traccar.geocoder.Geocoder;
+import org.traccar.geocoder.GeocoderCacheStore;
 import org.traccar.geolocation.UnwiredGeolocationProvider;
 import org.traccar.helper.Log;
 import org.traccar.model.Attribute;
@@ -71,6 +76,9 @@ import org.traccar.geolocation.GeolocationProvider;
 import org.traccar.geolocation.MozillaGeolocationProvider;
 import org.traccar.geolocation.OpenCellIdGeolocationProvider;
 import org.traccar.notification.EventForwarder;
+import org.traccar.notification.MailQueue;
+import org.traccar.reports.ReportExecutor;
+import org.traccar.reports.ReportJobManager;
 import org.traccar.reports.model.TripsConfig;
 import org.traccar.smpp.SmppClient;
 import org.traccar.web.WebServer;
@@ -110,6 +118,24 @@ public final class Context {
         return dataManager;
     }
 
+    private static SummaryManager summaryManager;
+
+    public static SummaryManager getSummaryManager() {
+        return summaryManager;
+    }
+
+    private static PositionWriter positionWriter;
+
+    public static PositionWriter getPositionWriter() {
+        return positionWriter;
+    }
+
+    private static MailQueue mailQueue;
+
+    public static MailQueue getMailQueue() {
+        return mailQueue;
+    }
+
     private static LdapProvider ldapProvider;
 
     public static LdapProvider getLdapProvider() {
@@ -158,6 +184,12 @@ public final class Context {
         return geocoder;
     }
 
+    private static GeocoderCacheStore geocoderCacheStore;
+
+    public static GeocoderCacheStore getGeocoderCacheStore() {
+        return geocoderCacheStore;
+    }
+
     private static GeolocationProvider geolocationProvider;
 
     public static GeolocationProvider getGeolocationProvider() {
@@ -254,6 +286,24 @@ public final class Context {
         return overspeedEventHandler;
     }
 
+    private static ReportExecutor reportExecutor;
+
+    public static ReportExecutor getReportExecutor() {
+        return reportExecutor;
+    }
+
+    private static ReportJobManager reportJobManager;
+
+    public static ReportJobManager getReportJobManager() {
+        return reportJobManager;
+    }
+
+    private static TripsManager tripsManager;
+
+    public static TripsManager getTripsManager() {
+        return tripsManager;
+    }
+
     private static TripsConfig tripsConfig;
 
     public static TripsConfig getTripsConfig() {
@@ -328,6 +378,14 @@ public final class Context {
             dataManager = new DataManager(config);
         }
 
+        if (dataManager != null && config.getBoolean("database.batch.enable")) {
+            positionWriter = new PositionWriter(dataManager, config);
+        }
+
+        if (dataManager != null && config.getBoolean("report.rollup.enable")) {
+            summaryManager = new SummaryManager(dataManager);
+        }
+
         if (config.getBoolean("ldap.enable")) {
             ldapProvider = new LdapProvider(config);
         }
@@ -345,6 +403,14 @@ public final class Context {
         identityManager = deviceManager;
 
         if (config.getBoolean("geocoder.enable")) {
+            if (config.getInteger("geocoder.cacheSize") > 0 && config.hasKey("geocoder.cacheFile")) {
+                try {
+                    geocoderCacheStore = new GeocoderCacheStore(config.getString("geocoder.cacheFile"),
+                            config.getInteger("geocoder.cacheFileSize", GeocoderCacheStore.DEFAULT_SIZE));
+                } catch (SQLException error) {
+                    Log.warning(error);
+                }
+            }
             geocoder = initGeocoder();
         }
 
@@ -379,10 +445,21 @@ public final class Context {
 
         tripsConfig = initTripsConfig();
 
+        if (dataManager != null && config.getBoolean("report.trip.materialize")) {
+            tripsManager = new TripsManager(dataManager, tripsConfig, config);
+        }
+
+        reportExecutor = new ReportExecutor(config);
+
+        if (config.getBoolean("web.enable")) {
+            reportJobManager = new ReportJobManager(config);
+        }
+
         if (config.getBoolean("event.enable")) {
             geofenceManager = new GeofenceManager(dataManager);
             calendarManager = new CalendarManager(dataManager);
             notificationManager = new NotificationManager(dataManager);
+            mailQueue = new MailQueue(config);
             Properties velocityProperties = new Properties();
             velocityProperties.setProperty("file.resource.loader.path",
                     Context.getConfig().getString("templates.rootPath", "templates") + "/");
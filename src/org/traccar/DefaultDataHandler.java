@@ -1,5 +1,5 @@
 /*
- * Copyright 2015 Anton Tananaev (anton@traccar.org)
+ * Copyright 2015 - 2017 Anton Tananaev (anton@traccar.org)
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -15,21 +15,80 @@
  */
 package org.traccar;
 
+import org.jboss.netty.channel.ChannelEvent;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelUpstreamHandler;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.MessageEvent;
+import org.traccar.database.PositionWriter;
 import org.traccar.helper.Log;
 import org.traccar.model.Position;
 
-public class DefaultDataHandler extends BaseDataHandler {
+public class DefaultDataHandler implements ChannelUpstreamHandler {
 
-    @Override
-    protected Position handlePosition(Position position) {
+    private final PositionWriter positionWriter;
+
+    public DefaultDataHandler() {
+        this(Context.getPositionWriter());
+    }
 
-        try {
-            Context.getDataManager().addPosition(position);
-        } catch (Exception error) {
-            Log.warning(error);
+    public DefaultDataHandler(PositionWriter positionWriter) {
+        this.positionWriter = positionWriter;
+    }
+
+    private void updateReports(Position position) {
+        if (Context.getSummaryManager() != null) {
+            Context.getSummaryManager().updatePosition(position);
+        }
+        if (Context.getTripsManager() != null) {
+            Context.getTripsManager().updatePosition(position);
         }
+    }
 
-        return position;
+    @Override
+    public void handleUpstream(final ChannelHandlerContext ctx, ChannelEvent evt) throws Exception {
+        if (!(evt instanceof MessageEvent)) {
+            ctx.sendUpstream(evt);
+            return;
+        }
+
+        final MessageEvent event = (MessageEvent) evt;
+        Object message = event.getMessage();
+        if (message instanceof Position) {
+            Position position = (Position) message;
+            if (positionWriter != null) {
+                positionWriter.write(event.getChannel(), position, new PositionWriter.WriteCallback() {
+                    @Override
+                    public void onComplete(final Position position, final boolean stored) {
+                        // continue processing on the channel I/O thread so the writer thread only stores positions
+                        ctx.getPipeline().execute(new Runnable() {
+                            @Override
+                            public void run() {
+                                try {
+                                    // positions that failed to store are still forwarded, as without batching
+                                    if (stored) {
+                                        updateReports(position);
+                                    }
+                                    Channels.fireMessageReceived(ctx, position, event.getRemoteAddress());
+                                } catch (RuntimeException error) {
+                                    Log.warning(error);
+                                }
+                            }
+                        });
+                    }
+                });
+            } else {
+                try {
+                    Context.getDataManager().addPosition(position);
+                    updateReports(position);
+                } catch (Exception error) {
+                    Log.warning(error);
+                }
+                ctx.sendUpstream(evt);
+            }
+        } else {
+            ctx.sendUpstream(evt);
+        }
     }
 
 }
@@ -21,6 +21,7 @@ import org.jboss.netty.channel.ChannelUpstreamHandler;
 import org.jboss.netty.channel.Channels;
 import org.jboss.netty.channel.MessageEvent;
 import org.traccar.geocoder.Geocoder;
+import org.traccar.geocoder.GeocoderException;
 import org.traccar.helper.Log;
 import org.traccar.model.Position;
 
@@ -71,7 +72,10 @@ public class GeocoderHandler implements ChannelUpstreamHandler {
 
                     @Override
                     public void onFailure(Throwable e) {
-                        Log.warning("Geocoding failed", e);
+                        // geocoder logs its own failures, like rejected requests, without a trace per position
+                        if (!(e instanceof GeocoderException)) {
+                            Log.warning("Geocoding failed", e);
+                        }
                         Channels.fireMessageReceived(ctx, position, event.getRemoteAddress());
                     }
                 });
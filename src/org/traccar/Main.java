@@ -60,6 +60,19 @@ public final class Main {
                     Context.getWebServer().stop();
                 }
                 Context.getServerManager().stop();
+                if (Context.getPositionWriter() != null) {
+                    Context.getPositionWriter().stop();
+                }
+                if (Context.getNotificationManager() != null) {
+                    Context.getNotificationManager().stop();
+                }
+                if (Context.getDeviceManager() != null) {
+                    Context.getDeviceManager().flushLatestPositions();
+                    Context.getDeviceManager().flushDeviceStatuses();
+                }
+                if (Context.getGeocoderCacheStore() != null) {
+                    Context.getGeocoderCacheStore().close();
+                }
             }
         });
     }
@@ -25,9 +25,12 @@ import org.traccar.model.Device;
 import org.traccar.model.Event;
 import org.traccar.model.Position;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 public class AsyncSocket extends WebSocketAdapter implements ConnectionManager.UpdateListener {
@@ -37,9 +40,19 @@ public class AsyncSocket extends WebSocketAdapter implements ConnectionManager.U
     private static final String KEY_EVENTS = "events";
 
     private long userId;
+    private final Collection<AsyncSocket> sockets;
 
-    public AsyncSocket(long userId) {
+    private final Map<Long, Device> devices = new LinkedHashMap<>();
+    private final Map<Long, Position> positions = new LinkedHashMap<>();
+    private final List<Event> events = new ArrayList<>();
+
+    /**
+     * Updates are buffered until {@link #getUpdates} is called if collection of buffered sockets is provided,
+     * otherwise each update is sent immediately.
+     */
+    public AsyncSocket(long userId, Collection<AsyncSocket> sockets) {
         this.userId = userId;
+        this.sockets = sockets;
     }
 
     @Override
@@ -50,6 +63,9 @@ public class AsyncSocket extends WebSocketAdapter implements ConnectionManager.U
         data.put(KEY_POSITIONS, Context.getDeviceManager().getInitialState(userId));
         sendData(data);
 
+        if (sockets != null) {
+            sockets.add(this);
+        }
         Context.getConnectionManager().addListener(userId, this);
     }
 
@@ -58,33 +74,80 @@ public class AsyncSocket extends WebSocketAdapter implements ConnectionManager.U
         super.onWebSocketClose(statusCode, reason);
 
         Context.getConnectionManager().removeListener(userId, this);
+        if (sockets != null) {
+            sockets.remove(this);
+        }
     }
 
     @Override
     public void onUpdateDevice(Device device) {
-        Map<String, Collection<?>> data = new HashMap<>();
-        data.put(KEY_DEVICES, Collections.singletonList(device));
-        sendData(data);
+        if (sockets != null) {
+            synchronized (this) {
+                devices.put(device.getId(), device);
+            }
+        } else {
+            Map<String, Collection<?>> data = new HashMap<>();
+            data.put(KEY_DEVICES, Collections.singletonList(device));
+            sendData(data);
+        }
     }
 
     @Override
     public void onUpdatePosition(Position position) {
-        Map<String, Collection<?>> data = new HashMap<>();
-        data.put(KEY_POSITIONS, Collections.singletonList(position));
-        sendData(data);
+        if (sockets != null) {
+            synchronized (this) {
+                positions.put(position.getDeviceId(), position);
+            }
+        } else {
+            Map<String, Collection<?>> data = new HashMap<>();
+            data.put(KEY_POSITIONS, Collections.singletonList(position));
+            sendData(data);
+        }
     }
 
     @Override
     public void onUpdateEvent(Event event) {
+        if (sockets != null) {
+            synchronized (this) {
+                events.add(event);
+            }
+        } else {
+            Map<String, Collection<?>> data = new HashMap<>();
+            data.put(KEY_EVENTS, Collections.singletonList(event));
+            sendData(data);
+        }
+    }
+
+    /**
+     * Returns buffered updates and clears the buffer. Only the latest device and position of each device are kept.
+     */
+    public synchronized Map<String, Collection<?>> getUpdates() {
         Map<String, Collection<?>> data = new HashMap<>();
-        data.put(KEY_EVENTS, Collections.singletonList(event));
-        sendData(data);
+        if (!devices.isEmpty()) {
+            data.put(KEY_DEVICES, new ArrayList<>(devices.values()));
+            devices.clear();
+        }
+        if (!positions.isEmpty()) {
+            data.put(KEY_POSITIONS, new ArrayList<>(positions.values()));
+            positions.clear();
+        }
+        if (!events.isEmpty()) {
+            data.put(KEY_EVENTS, new ArrayList<>(events));
+            events.clear();
+        }
+        return data;
+    }
+
+    public void sendString(String message) {
+        if (isConnected()) {
+            getRemote().sendString(message, null);
+        }
     }
 
     private void sendData(Map<String, Collection<?>> data) {
         if (!data.isEmpty() && isConnected()) {
             try {
-                getRemote().sendString(Context.getObjectMapper().writeValueAsString(data), null);
+                sendString(Context.getObjectMapper().writeValueAsString(data));
             } catch (JsonProcessingException e) {
                 Log.warning(e);
             }
@@ -15,6 +15,7 @@
  */
 package org.traccar.api;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
 import org.eclipse.jetty.websocket.servlet.ServletUpgradeRequest;
 import org.eclipse.jetty.websocket.servlet.ServletUpgradeResponse;
 import org.eclipse.jetty.websocket.servlet.WebSocketCreator;
@@ -22,20 +23,47 @@ import org.eclipse.jetty.websocket.servlet.WebSocketServlet;
 import org.eclipse.jetty.websocket.servlet.WebSocketServletFactory;
 import org.traccar.Context;
 import org.traccar.api.resource.SessionResource;
+import org.traccar.helper.Log;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class AsyncSocketServlet extends WebSocketServlet {
 
     private static final long ASYNC_TIMEOUT = 10 * 60 * 1000;
+    private static final long DEFAULT_FLUSH_INTERVAL = 1000;
+
+    private Set<AsyncSocket> sockets;
 
     @Override
     public void configure(WebSocketServletFactory factory) {
         factory.getPolicy().setIdleTimeout(Context.getConfig().getLong("web.timeout", ASYNC_TIMEOUT));
+        long interval = Context.getConfig().getLong("web.socket.flushInterval", DEFAULT_FLUSH_INTERVAL);
+        if (interval > 0) {
+            sockets = Collections.newSetFromMap(new ConcurrentHashMap<AsyncSocket, Boolean>());
+            new Timer("AsyncSocketFlush", true).schedule(new TimerTask() {
+                @Override
+                public void run() {
+                    try {
+                        flush();
+                    } catch (RuntimeException error) {
+                        Log.warning(error);
+                    }
+                }
+            }, interval, interval);
+        }
         factory.setCreator(new WebSocketCreator() {
             @Override
             public Object createWebSocket(ServletUpgradeRequest req, ServletUpgradeResponse resp) {
                 if (req.getSession() != null) {
                     long userId = (Long) req.getSession().getAttribute(SessionResource.USER_ID_KEY);
-                    return new AsyncSocket(userId);
+                    return new AsyncSocket(userId, sockets);
                 } else {
                     return null;
                 }
@@ -43,4 +71,28 @@ public class AsyncSocketServlet extends WebSocketServlet {
         });
     }
 
+    /**
+     * Sends buffered updates of all sockets. Identical batches, for example ones of sessions with the same set of
+     * devices, are serialized only once.
+     */
+    private void flush() {
+        Map<Map<String, Collection<?>>, String> messages = new HashMap<>();
+        for (AsyncSocket socket : sockets) {
+            Map<String, Collection<?>> data = socket.getUpdates();
+            if (!data.isEmpty()) {
+                String message = messages.get(data);
+                if (message == null) {
+                    try {
+                        message = Context.getObjectMapper().writeValueAsString(data);
+                    } catch (JsonProcessingException error) {
+                        Log.warning(error);
+                        continue;
+                    }
+                    messages.put(data, message);
+                }
+                socket.sendString(message);
+            }
+        }
+    }
+
 }
@@ -0,0 +1,157 @@
+/*
+ * Copyright 2017 Anton Tananaev (anton@traccar.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar.api;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import org.traccar.Context;
+import org.traccar.database.QueryBuilder;
+import org.traccar.model.Position;
+import org.traccar.reports.ReportExecutor;
+import org.traccar.web.CsvBuilder;
+import org.traccar.web.GpxBuilder;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.StreamingOutput;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.Date;
+
+public abstract class PositionStreamingOutput implements StreamingOutput {
+
+    private final Collection<Long> deviceIds;
+    private final Date from;
+    private final Date to;
+
+    public PositionStreamingOutput(Collection<Long> deviceIds, Date from, Date to) {
+        this.deviceIds = deviceIds;
+        this.from = from;
+        this.to = to;
+    }
+
+    protected abstract void start(OutputStream output) throws IOException;
+
+    protected abstract void writePosition(Position position) throws IOException;
+
+    protected abstract void finish() throws IOException;
+
+    @Override
+    public void write(OutputStream output) throws IOException {
+        start(output);
+        QueryBuilder.ResultHandler<Position> handler = new QueryBuilder.ResultHandler<Position>() {
+            @Override
+            public void handle(Position position) throws IOException {
+                writePosition(position);
+            }
+        };
+        try {
+            int completed = 0;
+            for (long deviceId : deviceIds) {
+                Context.getDataManager().getPositions(deviceId, from, to, handler);
+                completed += 1;
+                ReportExecutor.updateProgress(completed, deviceIds.size());
+            }
+        } catch (SQLException error) {
+            throw new WebApplicationException(error);
+        }
+        finish();
+    }
+
+    public static PositionStreamingOutput json(Collection<Long> deviceIds, Date from, Date to) {
+        return new PositionStreamingOutput(deviceIds, from, to) {
+
+            private JsonGenerator generator;
+
+            @Override
+            protected void start(OutputStream output) throws IOException {
+                generator = Context.getObjectMapper().getFactory().createGenerator(output);
+                generator.writeStartArray();
+            }
+
+            @Override
+            protected void writePosition(Position position) throws IOException {
+                generator.writeObject(position);
+            }
+
+            @Override
+            protected void finish() throws IOException {
+                generator.writeEndArray();
+                generator.flush();
+            }
+
+        };
+    }
+
+    public static PositionStreamingOutput csv(Collection<Long> deviceIds, Date from, Date to) {
+        return new PositionStreamingOutput(deviceIds, from, to) {
+
+            private final CsvBuilder csv = new CsvBuilder();
+            private Writer writer;
+
+            @Override
+            protected void start(OutputStream output) throws IOException {
+                writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+                csv.addHeaderLine(new Position());
+                csv.write(writer);
+            }
+
+            @Override
+            protected void writePosition(Position position) throws IOException {
+                csv.addLine(position);
+                csv.write(writer);
+            }
+
+            @Override
+            protected void finish() throws IOException {
+                writer.flush();
+            }
+
+        };
+    }
+
+    public static PositionStreamingOutput gpx(final String name, Collection<Long> deviceIds, Date from, Date to) {
+        return new PositionStreamingOutput(deviceIds, from, to) {
+
+            private final GpxBuilder gpx = new GpxBuilder(name);
+            private Writer writer;
+
+            @Override
+            protected void start(OutputStream output) throws IOException {
+                writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+                gpx.write(writer);
+            }
+
+            @Override
+            protected void writePosition(Position position) throws IOException {
+                gpx.addPosition(position);
+                gpx.write(writer);
+            }
+
+            @Override
+            protected void finish() throws IOException {
+                writer.write(gpx.build());
+                writer.flush();
+            }
+
+        };
+    }
+
+}
@@ -17,10 +17,9 @@ package org.traccar.api.resource;
 
 import org.traccar.Context;
 import org.traccar.api.BaseResource;
+import org.traccar.api.PositionStreamingOutput;
 import org.traccar.helper.DateUtil;
 import org.traccar.model.Position;
-import org.traccar.web.CsvBuilder;
-import org.traccar.web.GpxBuilder;
 
 import javax.ws.rs.Consumes;
 import javax.ws.rs.GET;
@@ -33,7 +32,7 @@ import javax.ws.rs.core.Response;
 
 import java.sql.SQLException;
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 
 @Path("positions")
@@ -47,7 +46,7 @@ public class PositionResource extends BaseResource {
     public static final String CONTENT_DISPOSITION_VALUE_GPX = "attachment; filename=positions.gpx";
 
     @GET
-    public Collection<Position> getJson(
+    public Response getJson(
             @QueryParam("deviceId") long deviceId, @QueryParam("id") List<Long> positionIds,
             @QueryParam("from") String from, @QueryParam("to") String to)
             throws SQLException {
@@ -58,13 +57,13 @@ public class PositionResource extends BaseResource {
                 Context.getPermissionsManager().checkDevice(getUserId(), position.getDeviceId());
                 positions.add(position);
             }
-            return positions;
+            return Response.ok(positions).build();
         } else if (deviceId == 0) {
-            return Context.getDeviceManager().getInitialState(getUserId());
+            return Response.ok(Context.getDeviceManager().getInitialState(getUserId())).build();
         } else {
             Context.getPermissionsManager().checkDevice(getUserId(), deviceId);
-            return Context.getDataManager().getPositions(
-                    deviceId, DateUtil.parseDate(from), DateUtil.parseDate(to));
+            return Response.ok(PositionStreamingOutput.json(
+                    Collections.singleton(deviceId), DateUtil.parseDate(from), DateUtil.parseDate(to))).build();
         }
     }
 
@@ -74,11 +73,9 @@ public class PositionResource extends BaseResource {
             @QueryParam("deviceId") long deviceId, @QueryParam("from") String from, @QueryParam("to") String to)
             throws SQLException {
         Context.getPermissionsManager().checkDevice(getUserId(), deviceId);
-        CsvBuilder csv = new CsvBuilder();
-        csv.addHeaderLine(new Position());
-        csv.addArray(Context.getDataManager().getPositions(
-                deviceId, DateUtil.parseDate(from), DateUtil.parseDate(to)));
-        return Response.ok(csv.build()).header(HttpHeaders.CONTENT_DISPOSITION, CONTENT_DISPOSITION_VALUE_CSV).build();
+        return Response.ok(PositionStreamingOutput.csv(
+                Collections.singleton(deviceId), DateUtil.parseDate(from), DateUtil.parseDate(to)))
+                .header(HttpHeaders.CONTENT_DISPOSITION, CONTENT_DISPOSITION_VALUE_CSV).build();
     }
 
     @GET
@@ -87,10 +84,9 @@ public class PositionResource extends BaseResource {
             @QueryParam("deviceId") long deviceId, @QueryParam("from") String from, @QueryParam("to") String to)
             throws SQLException {
         Context.getPermissionsManager().checkDevice(getUserId(), deviceId);
-        GpxBuilder gpx = new GpxBuilder(Context.getIdentityManager().getById(deviceId).getName());
-        gpx.addPositions(Context.getDataManager().getPositions(
-                deviceId, DateUtil.parseDate(from), DateUtil.parseDate(to)));
-        return Response.ok(gpx.build()).header(HttpHeaders.CONTENT_DISPOSITION, CONTENT_DISPOSITION_VALUE_GPX).build();
+        return Response.ok(PositionStreamingOutput.gpx(Context.getIdentityManager().getById(deviceId).getName(),
+                Collections.singleton(deviceId), DateUtil.parseDate(from), DateUtil.parseDate(to)))
+                .header(HttpHeaders.CONTENT_DISPOSITION, CONTENT_DISPOSITION_VALUE_GPX).build();
     }
 
 }
@@ -1,27 +1,44 @@
 package org.traccar.api.resource;
 
-import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
 
 import javax.ws.rs.Consumes;
+import javax.ws.rs.DELETE;
+import javax.ws.rs.DefaultValue;
 import javax.ws.rs.GET;
+import javax.ws.rs.POST;
 import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
+import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 
+import org.traccar.Context;
 import org.traccar.api.BaseResource;
+import org.traccar.api.PositionStreamingOutput;
 import org.traccar.helper.DateUtil;
 import org.traccar.model.Event;
-import org.traccar.model.Position;
 import org.traccar.reports.Events;
+import org.traccar.reports.ReportJobManager;
+import org.traccar.reports.ReportUtils;
 import org.traccar.reports.Summary;
 import org.traccar.reports.Trips;
+import org.traccar.reports.model.ReportJob;
 import org.traccar.reports.model.StopReport;
 import org.traccar.reports.model.SummaryReport;
 import org.traccar.reports.model.TripReport;
@@ -36,13 +53,37 @@ public class ReportResource extends BaseResource {
     private static final String XLSX = "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet";
     private static final String CONTENT_DISPOSITION_VALUE_XLSX = "attachment; filename=report.xlsx";
 
+    private static final Set<String> JOB_REPORTS = new HashSet<>(
+            Arrays.asList("route", "events", "summary", "trips", "stops"));
+
+    private abstract static class ExcelOutput implements StreamingOutput {
+
+        protected abstract void writeExcel(OutputStream stream) throws SQLException, IOException;
+
+        @Override
+        public void write(OutputStream stream) throws IOException {
+            try {
+                writeExcel(stream);
+            } catch (SQLException error) {
+                throw new WebApplicationException(error);
+            }
+        }
+
+    }
+
+    private Response getExcelResponse(StreamingOutput output) {
+        return Response.ok(output).header(HttpHeaders.CONTENT_DISPOSITION, CONTENT_DISPOSITION_VALUE_XLSX).build();
+    }
+
     @Path("route")
     @GET
-    public Collection<Position> getRoute(
+    public Response getRoute(
             @QueryParam("deviceId") final List<Long> deviceIds, @QueryParam("groupId") final List<Long> groupIds,
             @QueryParam("from") String from, @QueryParam("to") String to) throws SQLException {
-        return Route.getObjects(getUserId(), deviceIds, groupIds,
-                DateUtil.parseDate(from), DateUtil.parseDate(to));
+        Date fromDate = DateUtil.parseDate(from);
+        Date toDate = DateUtil.parseDate(to);
+        Collection<Long> devices = ReportUtils.getDeviceList(getUserId(), deviceIds, groupIds, fromDate, toDate);
+        return Response.ok(PositionStreamingOutput.json(devices, fromDate, toDate)).build();
     }
 
     @Path("route")
@@ -50,13 +91,17 @@ public class ReportResource extends BaseResource {
     @Produces(XLSX)
     public Response getRouteExcel(
             @QueryParam("deviceId") final List<Long> deviceIds, @QueryParam("groupId") final List<Long> groupIds,
-            @QueryParam("from") String from, @QueryParam("to") String to) throws SQLException, IOException {
-        ByteArrayOutputStream stream = new ByteArrayOutputStream();
-        Route.getExcel(stream, getUserId(), deviceIds, groupIds,
-                DateUtil.parseDate(from), DateUtil.parseDate(to));
-
-        return Response.ok(stream.toByteArray())
-                .header(HttpHeaders.CONTENT_DISPOSITION, CONTENT_DISPOSITION_VALUE_XLSX).build();
+            @QueryParam("from") String from, @QueryParam("to") String to) {
+        final long userId = getUserId();
+        final Date fromDate = DateUtil.parseDate(from);
+        final Date toDate = DateUtil.parseDate(to);
+        ReportUtils.getDeviceList(userId, deviceIds, groupIds, fromDate, toDate);
+        return getExcelResponse(new ExcelOutput() {
+            @Override
+            protected void writeExcel(OutputStream stream) throws SQLException, IOException {
+                Route.getExcel(stream, userId, deviceIds, groupIds, fromDate, toDate);
+            }
+        });
     }
 
     @Path("events")
@@ -75,13 +120,17 @@ public class ReportResource extends BaseResource {
     public Response getEventsExcel(
             @QueryParam("deviceId") final List<Long> deviceIds, @QueryParam("groupId") final List<Long> groupIds,
             @QueryParam("type") final List<String> types,
-            @QueryParam("from") String from, @QueryParam("to") String to) throws SQLException, IOException {
-        ByteArrayOutputStream stream = new ByteArrayOutputStream();
-        Events.getExcel(stream, getUserId(), deviceIds, groupIds, types,
-                DateUtil.parseDate(from), DateUtil.parseDate(to));
-
-        return Response.ok(stream.toByteArray())
-                .header(HttpHeaders.CONTENT_DISPOSITION, CONTENT_DISPOSITION_VALUE_XLSX).build();
+            @QueryParam("from") String from, @QueryParam("to") String to) {
+        final long userId = getUserId();
+        final Date fromDate = DateUtil.parseDate(from);
+        final Date toDate = DateUtil.parseDate(to);
+        ReportUtils.getDeviceList(userId, deviceIds, groupIds, fromDate, toDate);
+        return getExcelResponse(new ExcelOutput() {
+            @Override
+            protected void writeExcel(OutputStream stream) throws SQLException, IOException {
+                Events.getExcel(stream, userId, deviceIds, groupIds, types, fromDate, toDate);
+            }
+        });
     }
 
     @Path("summary")
@@ -98,13 +147,17 @@ public class ReportResource extends BaseResource {
     @Produces(XLSX)
     public Response getSummaryExcel(
             @QueryParam("deviceId") final List<Long> deviceIds, @QueryParam("groupId") final List<Long> groupIds,
-            @QueryParam("from") String from, @QueryParam("to") String to) throws SQLException, IOException {
-        ByteArrayOutputStream stream = new ByteArrayOutputStream();
-        Summary.getExcel(stream, getUserId(), deviceIds, groupIds,
-                DateUtil.parseDate(from), DateUtil.parseDate(to));
-
-        return Response.ok(stream.toByteArray())
-                .header(HttpHeaders.CONTENT_DISPOSITION, CONTENT_DISPOSITION_VALUE_XLSX).build();
+            @QueryParam("from") String from, @QueryParam("to") String to) {
+        final long userId = getUserId();
+        final Date fromDate = DateUtil.parseDate(from);
+        final Date toDate = DateUtil.parseDate(to);
+        ReportUtils.getDeviceList(userId, deviceIds, groupIds, fromDate, toDate);
+        return getExcelResponse(new ExcelOutput() {
+            @Override
+            protected void writeExcel(OutputStream stream) throws SQLException, IOException {
+                Summary.getExcel(stream, userId, deviceIds, groupIds, fromDate, toDate);
+            }
+        });
     }
 
     @Path("trips")
@@ -122,13 +175,17 @@ public class ReportResource extends BaseResource {
     @Produces(XLSX)
     public Response getTripsExcel(
             @QueryParam("deviceId") final List<Long> deviceIds, @QueryParam("groupId") final List<Long> groupIds,
-            @QueryParam("from") String from, @QueryParam("to") String to) throws SQLException, IOException {
-        ByteArrayOutputStream stream = new ByteArrayOutputStream();
-        Trips.getExcel(stream, getUserId(), deviceIds, groupIds,
-                DateUtil.parseDate(from), DateUtil.parseDate(to));
-
-        return Response.ok(stream.toByteArray())
-                .header(HttpHeaders.CONTENT_DISPOSITION, CONTENT_DISPOSITION_VALUE_XLSX).build();
+            @QueryParam("from") String from, @QueryParam("to") String to) {
+        final long userId = getUserId();
+        final Date fromDate = DateUtil.parseDate(from);
+        final Date toDate = DateUtil.parseDate(to);
+        ReportUtils.getDeviceList(userId, deviceIds, groupIds, fromDate, toDate);
+        return getExcelResponse(new ExcelOutput() {
+            @Override
+            protected void writeExcel(OutputStream stream) throws SQLException, IOException {
+                Trips.getExcel(stream, userId, deviceIds, groupIds, fromDate, toDate);
+            }
+        });
     }
 
     @Path("stops")
@@ -146,14 +203,151 @@ public class ReportResource extends BaseResource {
     @Produces(XLSX)
     public Response getStopsExcel(
             @QueryParam("deviceId") final List<Long> deviceIds, @QueryParam("groupId") final List<Long> groupIds,
-            @QueryParam("from") String from, @QueryParam("to") String to) throws SQLException, IOException {
-        ByteArrayOutputStream stream = new ByteArrayOutputStream();
-        Stops.getExcel(stream, getUserId(), deviceIds, groupIds,
-                DateUtil.parseDate(from), DateUtil.parseDate(to));
+            @QueryParam("from") String from, @QueryParam("to") String to) {
+        final long userId = getUserId();
+        final Date fromDate = DateUtil.parseDate(from);
+        final Date toDate = DateUtil.parseDate(to);
+        ReportUtils.getDeviceList(userId, deviceIds, groupIds, fromDate, toDate);
+        return getExcelResponse(new ExcelOutput() {
+            @Override
+            protected void writeExcel(OutputStream stream) throws SQLException, IOException {
+                Stops.getExcel(stream, userId, deviceIds, groupIds, fromDate, toDate);
+            }
+        });
+    }
+
+    private static String getJobParameters(
+            Collection<Long> devices, Collection<String> types, Date from, Date to) {
+        List<Long> sortedDevices = new ArrayList<>(new TreeSet<>(devices));
+        List<String> sortedTypes = new ArrayList<>(new TreeSet<>(types));
+        return sortedDevices + ":" + sortedTypes + ":" + from.getTime() + ":" + to.getTime();
+    }
+
+    @Path("jobs")
+    @POST
+    public ReportJob submitJob(
+            @QueryParam("report") final String report,
+            @QueryParam("format") @DefaultValue(ReportJob.FORMAT_JSON) final String format,
+            @QueryParam("deviceId") final List<Long> deviceIds, @QueryParam("groupId") final List<Long> groupIds,
+            @QueryParam("type") final List<String> types,
+            @QueryParam("from") String from, @QueryParam("to") String to) {
+        if (Context.getReportJobManager() == null) {
+            throw new WebApplicationException(Response.Status.NOT_FOUND);
+        }
+        if (!JOB_REPORTS.contains(report)) {
+            throw new IllegalArgumentException("Unknown report " + report);
+        }
+        if (!ReportJob.FORMAT_JSON.equals(format) && !ReportJob.FORMAT_XLSX.equals(format)) {
+            throw new IllegalArgumentException("Unknown format " + format);
+        }
+        final long userId = getUserId();
+        final Date fromDate = DateUtil.parseDate(from);
+        final Date toDate = DateUtil.parseDate(to);
+        final Collection<Long> devices = ReportUtils.getDeviceList(userId, deviceIds, groupIds, fromDate, toDate);
+        final boolean excel = ReportJob.FORMAT_XLSX.equals(format);
+
+        return Context.getReportJobManager().submit(userId, report, format,
+                getJobParameters(devices, types, fromDate, toDate), new ReportJobManager.ReportWriter() {
+            @Override
+            public void write(OutputStream stream) throws SQLException, IOException {
+                switch (report) {
+                    case "route":
+                        if (excel) {
+                            Route.getExcel(stream, userId, deviceIds, groupIds, fromDate, toDate);
+                        } else {
+                            PositionStreamingOutput.json(devices, fromDate, toDate).write(stream);
+                        }
+                        break;
+                    case "events":
+                        if (excel) {
+                            Events.getExcel(stream, userId, deviceIds, groupIds, types, fromDate, toDate);
+                        } else {
+                            Context.getObjectMapper().writeValue(stream,
+                                    Events.getObjects(userId, deviceIds, groupIds, types, fromDate, toDate));
+                        }
+                        break;
+                    case "summary":
+                        if (excel) {
+                            Summary.getExcel(stream, userId, deviceIds, groupIds, fromDate, toDate);
+                        } else {
+                            Context.getObjectMapper().writeValue(stream,
+                                    Summary.getObjects(userId, deviceIds, groupIds, fromDate, toDate));
+                        }
+                        break;
+                    case "trips":
+                        if (excel) {
+                            Trips.getExcel(stream, userId, deviceIds, groupIds, fromDate, toDate);
+                        } else {
+                            Context.getObjectMapper().writeValue(stream,
+                                    Trips.getObjects(userId, deviceIds, groupIds, fromDate, toDate));
+                        }
+                        break;
+                    case "stops":
+                        if (excel) {
+                            Stops.getExcel(stream, userId, deviceIds, groupIds, fromDate, toDate);
+                        } else {
+                            Context.getObjectMapper().writeValue(stream,
+                                    Stops.getObjects(userId, deviceIds, groupIds, fromDate, toDate));
+                        }
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown report " + report);
+                }
+            }
+        });
+    }
+
+    @Path("jobs")
+    @GET
+    public Collection<ReportJob> getJobs() {
+        if (Context.getReportJobManager() == null) {
+            throw new WebApplicationException(Response.Status.NOT_FOUND);
+        }
+        return Context.getReportJobManager().getJobs(getUserId());
+    }
 
-        return Response.ok(stream.toByteArray())
-                .header(HttpHeaders.CONTENT_DISPOSITION, CONTENT_DISPOSITION_VALUE_XLSX).build();
+    private ReportJob getJob(String id) {
+        ReportJob job = null;
+        if (Context.getReportJobManager() != null) {
+            job = Context.getReportJobManager().getJob(getUserId(), id);
+        }
+        if (job == null) {
+            throw new WebApplicationException(Response.Status.NOT_FOUND);
+        }
+        return job;
+    }
+
+    @Path("jobs/{id}")
+    @GET
+    public ReportJob getJobStatus(@PathParam("id") String id) {
+        return getJob(id);
     }
 
+    @Path("jobs/{id}/result")
+    @GET
+    @Produces({MediaType.APPLICATION_JSON, XLSX})
+    public Response getJobResult(@PathParam("id") String id) {
+        ReportJob job = getJob(id);
+        if (!ReportJob.STATUS_COMPLETED.equals(job.getStatus())) {
+            throw new WebApplicationException(Response.Status.CONFLICT);
+        }
+        File file = Context.getReportJobManager().getFile(job);
+        if (!file.isFile()) {
+            throw new WebApplicationException(Response.Status.NOT_FOUND);
+        }
+        if (ReportJob.FORMAT_XLSX.equals(job.getFormat())) {
+            return Response.ok(file, XLSX)
+                    .header(HttpHeaders.CONTENT_DISPOSITION, CONTENT_DISPOSITION_VALUE_XLSX).build();
+        } else {
+            return Response.ok(file, MediaType.APPLICATION_JSON).build();
+        }
+    }
+
+    @Path("jobs/{id}")
+    @DELETE
+    public Response removeJob(@PathParam("id") String id) {
+        Context.getReportJobManager().removeJob(getJob(id));
+        return Response.noContent().build();
+    }
 
 }
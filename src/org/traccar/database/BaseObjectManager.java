@@ -18,6 +18,7 @@ package org.traccar.database;
 
 import java.sql.SQLException;
 import java.util.Collection;
+import java.util.Date;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.Map;
@@ -29,11 +30,15 @@ import org.traccar.model.BaseModel;
 
 public class BaseObjectManager<T extends BaseModel> {
 
+    private static final long CHANGES_OVERLAP = 60 * 1000;
+
     private final DataManager dataManager;
 
     private Map<Long, T> items;
     private Class<T> baseClass;
 
+    private volatile long lastRefresh;
+
     protected BaseObjectManager(DataManager dataManager, Class<T> baseClass) {
         this.dataManager = dataManager;
         this.baseClass = baseClass;
@@ -55,6 +60,7 @@ public class BaseObjectManager<T extends BaseModel> {
     public void refreshItems() {
         if (dataManager != null) {
             try {
+                long refreshTime = System.currentTimeMillis();
                 Collection<T> databaseItems = dataManager.getObjects(baseClass);
                 if (items == null) {
                     items = new ConcurrentHashMap<>(databaseItems.size());
@@ -73,6 +79,37 @@ public class BaseObjectManager<T extends BaseModel> {
                         removeCachedItem(cachedItemId);
                     }
                 }
+                lastRefresh = refreshTime;
+            } catch (SQLException error) {
+                Log.warning(error);
+            }
+        }
+    }
+
+    public void refreshChangedItems() {
+        if (dataManager != null) {
+            if (items == null || lastRefresh == 0) {
+                refreshItems();
+                return;
+            }
+            try {
+                long refreshTime = System.currentTimeMillis();
+                // Overlap covers clock differences between servers and transactions committed late
+                Date since = new Date(lastRefresh - CHANGES_OVERLAP);
+                for (T item : dataManager.getChangedObjects(baseClass, since)) {
+                    if (items.containsKey(item.getId())) {
+                        updateCachedItem(item);
+                    } else {
+                        addNewItem(item);
+                    }
+                }
+                Set<Long> databaseItemIds = dataManager.getObjectIds(baseClass);
+                for (Long cachedItemId : items.keySet()) {
+                    if (!databaseItemIds.contains(cachedItemId)) {
+                        removeCachedItem(cachedItemId);
+                    }
+                }
+                lastRefresh = refreshTime;
             } catch (SQLException error) {
                 Log.warning(error);
             }
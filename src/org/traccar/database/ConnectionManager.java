@@ -23,6 +23,7 @@ import org.traccar.GlobalTimer;
 import org.traccar.Protocol;
 import org.traccar.events.OverspeedEventHandler;
 import org.traccar.helper.Log;
+import org.traccar.helper.LongObjectMap;
 import org.traccar.model.Device;
 import org.traccar.model.DeviceState;
 import org.traccar.model.Event;
@@ -30,12 +31,16 @@ import org.traccar.model.Position;
 
 import java.net.SocketAddress;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
 
 public class ConnectionManager {
@@ -47,7 +52,8 @@ public class ConnectionManager {
     private final boolean updateDeviceState;
 
     private final Map<Long, ActiveDevice> activeDevices = new ConcurrentHashMap<>();
-    private final Map<Long, Set<UpdateListener>> listeners = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Long, Set<UpdateListener>> listeners = new ConcurrentHashMap<>();
+    private volatile LongObjectMap<UpdateListener[]> deviceListeners = new LongObjectMap<>();
     private final Map<Long, Timeout> timeouts = new ConcurrentHashMap<>();
 
     public ConnectionManager() {
@@ -85,7 +91,9 @@ public class ConnectionManager {
         String oldStatus = device.getStatus();
         device.setStatus(status);
 
-        if (enableStatusEvents && !status.equals(oldStatus)) {
+        boolean statusChanged = !status.equals(oldStatus);
+
+        if (enableStatusEvents && statusChanged) {
             String eventType;
             Map<Event, Position> events = new HashMap<>();
             switch (status) {
@@ -131,7 +139,7 @@ public class ConnectionManager {
         }
 
         try {
-            Context.getDeviceManager().updateDeviceStatus(device);
+            Context.getDeviceManager().updateDeviceStatus(device, !statusChanged);
         } catch (SQLException error) {
             Log.warning(error);
         }
@@ -157,31 +165,28 @@ public class ConnectionManager {
         return result;
     }
 
-    public synchronized void updateDevice(Device device) {
-        for (long userId : Context.getPermissionsManager().getDeviceUsers(device.getId())) {
-            if (listeners.containsKey(userId)) {
-                for (UpdateListener listener : listeners.get(userId)) {
-                    listener.onUpdateDevice(device);
-                }
+    public void updateDevice(Device device) {
+        UpdateListener[] connected = deviceListeners.get(device.getId());
+        if (connected != null) {
+            for (UpdateListener listener : connected) {
+                listener.onUpdateDevice(device);
             }
         }
     }
 
-    public synchronized void updatePosition(Position position) {
-        long deviceId = position.getDeviceId();
-
-        for (long userId : Context.getPermissionsManager().getDeviceUsers(deviceId)) {
-            if (listeners.containsKey(userId)) {
-                for (UpdateListener listener : listeners.get(userId)) {
-                    listener.onUpdatePosition(position);
-                }
+    public void updatePosition(Position position) {
+        UpdateListener[] connected = deviceListeners.get(position.getDeviceId());
+        if (connected != null) {
+            for (UpdateListener listener : connected) {
+                listener.onUpdatePosition(position);
             }
         }
     }
 
-    public synchronized void updateEvent(long userId, Event event) {
-        if (listeners.containsKey(userId)) {
-            for (UpdateListener listener : listeners.get(userId)) {
+    public void updateEvent(long userId, Event event) {
+        Set<UpdateListener> userListeners = listeners.get(userId);
+        if (userListeners != null) {
+            for (UpdateListener listener : userListeners) {
                 listener.onUpdateEvent(event);
             }
         }
@@ -194,17 +199,70 @@ public class ConnectionManager {
     }
 
     public synchronized void addListener(long userId, UpdateListener listener) {
-        if (!listeners.containsKey(userId)) {
-            listeners.put(userId, new HashSet<UpdateListener>());
+        Set<UpdateListener> userListeners = listeners.get(userId);
+        if (userListeners == null) {
+            userListeners = Collections.newSetFromMap(new ConcurrentHashMap<UpdateListener, Boolean>());
+            listeners.put(userId, userListeners);
+        }
+        if (userListeners.add(listener)) {
+            LongObjectMap<UpdateListener[]> index = new LongObjectMap<>(deviceListeners);
+            for (long deviceId : Context.getPermissionsManager().getDevicePermissions(userId)) {
+                UpdateListener[] oldListeners = index.get(deviceId);
+                if (oldListeners == null) {
+                    index.put(deviceId, new UpdateListener[] {listener});
+                } else {
+                    UpdateListener[] newListeners = Arrays.copyOf(oldListeners, oldListeners.length + 1);
+                    newListeners[oldListeners.length] = listener;
+                    index.put(deviceId, newListeners);
+                }
+            }
+            deviceListeners = index;
         }
-        listeners.get(userId).add(listener);
     }
 
     public synchronized void removeListener(long userId, UpdateListener listener) {
-        if (!listeners.containsKey(userId)) {
-            listeners.put(userId, new HashSet<UpdateListener>());
+        Set<UpdateListener> userListeners = listeners.get(userId);
+        if (userListeners != null && userListeners.remove(listener)) {
+            if (userListeners.isEmpty()) {
+                listeners.remove(userId);
+            }
+            LongObjectMap<UpdateListener[]> index = new LongObjectMap<>(deviceListeners);
+            for (long deviceId : index.keys()) {
+                UpdateListener[] oldListeners = index.get(deviceId);
+                List<UpdateListener> newListeners = new ArrayList<>(Arrays.asList(oldListeners));
+                if (newListeners.remove(listener)) {
+                    if (newListeners.isEmpty()) {
+                        index.remove(deviceId);
+                    } else {
+                        index.put(deviceId, newListeners.toArray(new UpdateListener[newListeners.size()]));
+                    }
+                }
+            }
+            deviceListeners = index;
+        }
+    }
+
+    /**
+     * Rebuilds index of connected listeners by device, must be called when device permissions change.
+     */
+    public synchronized void refreshDeviceListeners() {
+        LongObjectMap<List<UpdateListener>> lists = new LongObjectMap<>();
+        for (Map.Entry<Long, Set<UpdateListener>> entry : listeners.entrySet()) {
+            for (long deviceId : Context.getPermissionsManager().getDevicePermissions(entry.getKey())) {
+                List<UpdateListener> list = lists.get(deviceId);
+                if (list == null) {
+                    list = new ArrayList<>();
+                    lists.put(deviceId, list);
+                }
+                list.addAll(entry.getValue());
+            }
+        }
+        LongObjectMap<UpdateListener[]> index = new LongObjectMap<>(lists.size());
+        for (long deviceId : lists.keys()) {
+            List<UpdateListener> list = lists.get(deviceId);
+            index.put(deviceId, list.toArray(new UpdateListener[list.size()]));
         }
-        listeners.get(userId).remove(listener);
+        deviceListeners = index;
     }
 
 }
@@ -17,6 +17,7 @@ package org.traccar.database;
 
 import java.beans.Introspector;
 import java.io.File;
+import java.io.IOException;
 import java.lang.reflect.Method;
 import java.net.URL;
 import java.net.URLClassLoader;
@@ -26,7 +27,10 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Date;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.naming.InitialContext;
 import javax.sql.DataSource;
@@ -43,6 +47,7 @@ import org.traccar.Config;
 import org.traccar.Context;
 import org.traccar.helper.Log;
 import org.traccar.model.Attribute;
+import org.traccar.model.DailySummary;
 import org.traccar.model.Device;
 import org.traccar.model.Driver;
 import org.traccar.model.Event;
@@ -58,12 +63,16 @@ import org.traccar.model.Position;
 import org.traccar.model.Server;
 import org.traccar.model.Statistics;
 import org.traccar.model.User;
+import org.traccar.reports.model.StopReport;
+import org.traccar.reports.model.TripReport;
 
 import com.zaxxer.hikari.HikariConfig;
 import com.zaxxer.hikari.HikariDataSource;
 
 public class DataManager {
 
+    public static final int DEFAULT_FETCH_SIZE = 1000;
+
     public static final String ACTION_SELECT_ALL = "selectAll";
     public static final String ACTION_SELECT = "select";
     public static final String ACTION_INSERT = "insert";
@@ -76,8 +85,12 @@ public class DataManager {
 
     private boolean generateQueries;
 
+    private int fetchSize = DEFAULT_FETCH_SIZE;
+
     private boolean forceLdap;
 
+    private final Map<String, String> queries = new ConcurrentHashMap<>();
+
     public DataManager(Config config) throws Exception {
         this.config = config;
 
@@ -128,13 +141,42 @@ public class DataManager {
                 hikariConfig.setMaximumPoolSize(maxPoolSize);
             }
 
+            int statementCacheSize = config.getInteger("database.statementCacheSize");
+
+            if (statementCacheSize != 0) {
+                initStatementCache(hikariConfig, config.getString("database.url"), statementCacheSize);
+            }
+
             generateQueries = config.getBoolean("database.generateQueries");
 
+            fetchSize = config.getInteger("database.fetchSize", DEFAULT_FETCH_SIZE);
+            String url = config.getString("database.url");
+            if (url.startsWith("jdbc:mysql:") || url.startsWith("jdbc:mariadb:")) {
+                // MySQL drivers only stream results row by row with this special value
+                fetchSize = Integer.MIN_VALUE;
+            }
+
             dataSource = new HikariDataSource(hikariConfig);
 
         }
     }
 
+    private static void initStatementCache(HikariConfig hikariConfig, String url, int size) {
+        if (url.startsWith("jdbc:mysql:") || url.startsWith("jdbc:mariadb:")) {
+            hikariConfig.addDataSourceProperty("cachePrepStmts", "true");
+            hikariConfig.addDataSourceProperty("prepStmtCacheSize", String.valueOf(size));
+            hikariConfig.addDataSourceProperty("prepStmtCacheSqlLimit", "4096");
+            hikariConfig.addDataSourceProperty("useServerPrepStmts", "true");
+        } else if (url.startsWith("jdbc:postgresql:")) {
+            hikariConfig.addDataSourceProperty("prepareThreshold", "1");
+            hikariConfig.addDataSourceProperty("preparedStatementCacheQueries", String.valueOf(size));
+        } else if (url.startsWith("jdbc:h2:")) {
+            hikariConfig.addDataSourceProperty("QUERY_CACHE_SIZE", String.valueOf(size));
+        } else {
+            Log.warning("Statement cache is not supported for " + url);
+        }
+    }
+
     public static String constructObjectQuery(String action, Class<?> clazz, boolean extended) {
         switch (action) {
             case ACTION_INSERT:
@@ -206,9 +248,14 @@ public class DataManager {
     }
 
     private String getQuery(String key) {
-        String query = config.getString(key);
+        String query = queries.get(key);
         if (query == null) {
-            Log.info("Query not provided: " + key);
+            query = config.getString(key);
+            if (query != null) {
+                queries.put(key, query);
+            } else {
+                Log.info("Query not provided: " + key);
+            }
         }
         return query;
     }
@@ -227,13 +274,19 @@ public class DataManager {
                 queryName += "Extended";
             }
         }
-        String query = config.getString(queryName);
+        String query = queries.get(queryName);
         if (query == null) {
-            if (generateQueries) {
-                query = constructObjectQuery(action, clazz, extended);
-                config.setString(queryName, query);
-            } else {
-                Log.info("Query not provided: " + queryName);
+            query = config.getString(queryName);
+            if (query == null) {
+                if (generateQueries) {
+                    query = constructObjectQuery(action, clazz, extended);
+                    config.setString(queryName, query);
+                } else {
+                    Log.info("Query not provided: " + queryName);
+                }
+            }
+            if (query != null) {
+                queries.put(queryName, query);
             }
         }
 
@@ -249,14 +302,20 @@ public class DataManager {
         } else {
             queryName = "database.unlink" + owner.getSimpleName() + property.getSimpleName();
         }
-        String query = config.getString(queryName);
+        String query = queries.get(queryName);
         if (query == null) {
-            if (generateQueries) {
-                query = constructPermissionQuery(action, owner,
-                        property.equals(User.class) ? ManagedUser.class : property);
-                config.setString(queryName, query);
-            } else {
-                Log.info("Query not provided: " + queryName);
+            query = config.getString(queryName);
+            if (query == null) {
+                if (generateQueries) {
+                    query = constructPermissionQuery(action, owner,
+                            property.equals(User.class) ? ManagedUser.class : property);
+                    config.setString(queryName, query);
+                } else {
+                    Log.info("Query not provided: " + queryName);
+                }
+            }
+            if (query != null) {
+                queries.put(queryName, query);
             }
         }
 
@@ -321,12 +380,26 @@ public class DataManager {
         return null;
     }
 
+    public Device getDeviceByUniqueId(String uniqueId) throws SQLException {
+        return QueryBuilder.create(dataSource, getQuery("database.selectDeviceByUniqueId"))
+                .setString("uniqueId", uniqueId)
+                .executeQuerySingle(Device.class);
+    }
+
     public void updateDeviceStatus(Device device) throws SQLException {
         QueryBuilder.create(dataSource, getQuery(ACTION_UPDATE, Device.class, true))
                 .setObject(device)
                 .executeUpdate();
     }
 
+    public void updateDeviceStatuses(Collection<Device> devices) throws SQLException {
+        QueryBuilder queryBuilder = QueryBuilder.create(dataSource, getQuery(ACTION_UPDATE, Device.class, true));
+        for (Device device : devices) {
+            queryBuilder.setObject(device).addBatch();
+        }
+        queryBuilder.executeBatch();
+    }
+
     public Collection<Position> getPositions(long deviceId, Date from, Date to) throws SQLException {
         return QueryBuilder.create(dataSource, getQuery("database.selectPositions"))
                 .setLong("deviceId", deviceId)
@@ -335,6 +408,15 @@ public class DataManager {
                 .executeQuery(Position.class);
     }
 
+    public void getPositions(long deviceId, Date from, Date to, QueryBuilder.ResultHandler<Position> handler)
+            throws SQLException, IOException {
+        QueryBuilder.create(dataSource, getQuery("database.selectPositions"))
+                .setLong("deviceId", deviceId)
+                .setDate("from", from)
+                .setDate("to", to)
+                .executeQuery(Position.class, fetchSize, handler);
+    }
+
     public void addPosition(Position position) throws SQLException {
         position.setId(QueryBuilder.create(dataSource, getQuery(ACTION_INSERT, Position.class), true)
                 .setObject(position)
@@ -342,6 +424,19 @@ public class DataManager {
                 .executeUpdate());
     }
 
+    public void addPositions(List<Position> positions) throws SQLException {
+        QueryBuilder queryBuilder = QueryBuilder.create(dataSource, getQuery(ACTION_INSERT, Position.class), true);
+        for (Position position : positions) {
+            queryBuilder.setObject(position)
+                    .setDate("serverTime", new Date())
+                    .addBatch();
+        }
+        long[] ids = queryBuilder.executeBatch();
+        for (int i = 0; i < ids.length; i++) {
+            positions.get(i).setId(ids[i]);
+        }
+    }
+
     public void updateLatestPosition(Position position) throws SQLException {
         QueryBuilder.create(dataSource, getQuery("database.updateLatestPosition"))
                 .setDate("now", new Date())
@@ -349,6 +444,16 @@ public class DataManager {
                 .executeUpdate();
     }
 
+    public void updateLatestPositions(Collection<Position> positions) throws SQLException {
+        QueryBuilder queryBuilder = QueryBuilder.create(dataSource, getQuery("database.updateLatestPosition"));
+        for (Position position : positions) {
+            queryBuilder.setDate("now", new Date())
+                    .setObject(position)
+                    .addBatch();
+        }
+        queryBuilder.executeBatch();
+    }
+
     public Collection<Position> getLatestPositions() throws SQLException {
         return QueryBuilder.create(dataSource, getQuery("database.selectLatestPositions"))
                 .executeQuery(Position.class);
@@ -388,6 +493,87 @@ public class DataManager {
                 .executeQuery(Statistics.class);
     }
 
+    public Collection<DailySummary> getSummaries(long deviceId, Date from, Date to) throws SQLException {
+        return QueryBuilder.create(dataSource, getQuery("database.selectSummaries"))
+                .setLong("deviceId", deviceId)
+                .setDate("from", from)
+                .setDate("to", to)
+                .executeQuery(DailySummary.class);
+    }
+
+    public Collection<DailySummary> getLatestSummaries() throws SQLException {
+        return QueryBuilder.create(dataSource, getQuery("database.selectLatestSummaries"))
+                .executeQuery(DailySummary.class);
+    }
+
+    public void addSummary(DailySummary summary) throws SQLException {
+        removeSummary(summary.getDeviceId(), summary.getStartTime());
+        QueryBuilder.create(dataSource, getQuery("database.insertSummary"))
+                .setObject(summary)
+                .executeUpdate();
+    }
+
+    public void removeSummary(long deviceId, Date startTime) throws SQLException {
+        QueryBuilder.create(dataSource, getQuery("database.deleteSummary"))
+                .setLong("deviceId", deviceId)
+                .setDate("startTime", startTime)
+                .executeUpdate();
+    }
+
+    public Collection<TripReport> getTrips(long deviceId, Date from, Date to) throws SQLException {
+        return QueryBuilder.create(dataSource, getQuery("database.selectTrips"))
+                .setLong("deviceId", deviceId)
+                .setDate("from", from)
+                .setDate("to", to)
+                .executeQuery(TripReport.class);
+    }
+
+    public TripReport getTripsRange(long deviceId) throws SQLException {
+        return QueryBuilder.create(dataSource, getQuery("database.selectTripsRange"))
+                .setLong("deviceId", deviceId)
+                .executeQuerySingle(TripReport.class);
+    }
+
+    public void addTrip(TripReport trip) throws SQLException {
+        QueryBuilder.create(dataSource, getQuery("database.insertTrip"))
+                .setObject(trip)
+                .executeUpdate();
+    }
+
+    public void removeTrips(long deviceId, Date time) throws SQLException {
+        QueryBuilder.create(dataSource, getQuery("database.deleteTrips"))
+                .setLong("deviceId", deviceId)
+                .setDate("time", time)
+                .executeUpdate();
+    }
+
+    public Collection<StopReport> getStops(long deviceId, Date from, Date to) throws SQLException {
+        return QueryBuilder.create(dataSource, getQuery("database.selectStops"))
+                .setLong("deviceId", deviceId)
+                .setDate("from", from)
+                .setDate("to", to)
+                .executeQuery(StopReport.class);
+    }
+
+    public StopReport getStopsRange(long deviceId) throws SQLException {
+        return QueryBuilder.create(dataSource, getQuery("database.selectStopsRange"))
+                .setLong("deviceId", deviceId)
+                .executeQuerySingle(StopReport.class);
+    }
+
+    public void addStop(StopReport stop) throws SQLException {
+        QueryBuilder.create(dataSource, getQuery("database.insertStop"))
+                .setObject(stop)
+                .executeUpdate();
+    }
+
+    public void removeStops(long deviceId, Date time) throws SQLException {
+        QueryBuilder.create(dataSource, getQuery("database.deleteStops"))
+                .setLong("deviceId", deviceId)
+                .setDate("time", time)
+                .executeUpdate();
+    }
+
     public static Class<?> getClassByName(String name) throws ClassNotFoundException {
         switch (name.toLowerCase().replace("id", "")) {
             case "device":
@@ -445,6 +631,21 @@ public class DataManager {
                 .executeQuery(clazz);
     }
 
+    public <T extends BaseModel> Collection<T> getChangedObjects(Class<T> clazz, Date since) throws SQLException {
+        return QueryBuilder.create(dataSource, getQuery("database.selectChanged" + clazz.getSimpleName() + "s"))
+                .setDate("modifiedTime", since)
+                .executeQuery(clazz);
+    }
+
+    public Set<Long> getObjectIds(Class<? extends BaseModel> clazz) throws SQLException {
+        Set<Long> result = new HashSet<>();
+        String query = getQuery("database.select" + clazz.getSimpleName() + "Ids");
+        for (BaseModel item : QueryBuilder.create(dataSource, query).executeQuery(BaseModel.class)) {
+            result.add(item.getId());
+        }
+        return result;
+    }
+
     public void addObject(BaseModel entity) throws SQLException {
         entity.setId(QueryBuilder.create(dataSource, getQuery(ACTION_INSERT, entity.getClass()), true)
                 .setObject(entity)
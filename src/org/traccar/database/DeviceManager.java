@@ -16,18 +16,24 @@
 package org.traccar.database;
 
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashSet;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.Timer;
+import java.util.TimerTask;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.traccar.Config;
 import org.traccar.Context;
 import org.traccar.helper.Log;
+import org.traccar.helper.LongSet;
 import org.traccar.model.Device;
 import org.traccar.model.DeviceState;
 import org.traccar.model.DeviceTotalDistance;
@@ -38,19 +44,31 @@ import org.traccar.model.Server;
 public class DeviceManager extends BaseObjectManager<Device> implements IdentityManager, ManagableObjects {
 
     public static final long DEFAULT_REFRESH_DELAY = 300;
+    public static final int DEFAULT_UNKNOWN_CACHE_SIZE = 10000;
 
     private final Config config;
     private final long dataRefreshDelay;
+    private final boolean incrementalRefresh;
     private boolean lookupGroupsAttribute;
 
     private Map<String, Device> devicesByUniqueId;
     private Map<String, Device> devicesByPhone;
     private AtomicLong devicesLastUpdate = new AtomicLong();
 
+    private boolean ignoreUnknown;
+    private long unknownDevicesTimeout;
+    private Map<String, Long> unknownDevices;
+
     private final Map<Long, Position> positions = new ConcurrentHashMap<>();
 
     private final Map<Long, DeviceState> deviceStates = new ConcurrentHashMap<>();
 
+    private final long latestPositionDelay;
+    private final Map<Long, Position> pendingLatestPositions = new ConcurrentHashMap<>();
+
+    private final long deviceStatusDelay;
+    private final Map<Long, Device> pendingDeviceStatuses = new ConcurrentHashMap<>();
+
     public DeviceManager(DataManager dataManager) {
         super(dataManager, Device.class);
         this.config = Context.getConfig();
@@ -61,25 +79,87 @@ public class DeviceManager extends BaseObjectManager<Device> implements Identity
             devicesByUniqueId = new ConcurrentHashMap<>();
         }
         dataRefreshDelay = config.getLong("database.refreshDelay", DEFAULT_REFRESH_DELAY) * 1000;
+        incrementalRefresh = config.getBoolean("database.incrementalRefresh");
+        ignoreUnknown = config.getBoolean("database.ignoreUnknown");
+        unknownDevicesTimeout = config.getLong("database.unknownCacheTimeout", DEFAULT_REFRESH_DELAY) * 1000;
+        final int unknownDevicesSize = config.getInteger("database.unknownCacheSize", DEFAULT_UNKNOWN_CACHE_SIZE);
+        unknownDevices = Collections.synchronizedMap(new LinkedHashMap<String, Long>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+                return size() > unknownDevicesSize;
+            }
+        });
         lookupGroupsAttribute = config.getBoolean("deviceManager.lookupGroupsAttribute");
         refreshLastPositions();
+
+        latestPositionDelay = config.getLong("database.latestPositionDelay") * 1000;
+        deviceStatusDelay = config.getLong("database.deviceStatusDelay") * 1000;
+        if (latestPositionDelay > 0 || deviceStatusDelay > 0) {
+            Timer timer = new Timer(true);
+            if (latestPositionDelay > 0) {
+                timer.scheduleAtFixedRate(new TimerTask() {
+                    @Override
+                    public void run() {
+                        flushLatestPositions();
+                    }
+                }, latestPositionDelay, latestPositionDelay);
+            }
+            if (deviceStatusDelay > 0) {
+                timer.scheduleAtFixedRate(new TimerTask() {
+                    @Override
+                    public void run() {
+                        flushDeviceStatuses();
+                    }
+                }, deviceStatusDelay, deviceStatusDelay);
+            }
+        }
     }
 
     private void updateDeviceCache(boolean force) throws SQLException {
         long lastUpdate = devicesLastUpdate.get();
         if ((force || System.currentTimeMillis() - lastUpdate > dataRefreshDelay)
                 && devicesLastUpdate.compareAndSet(lastUpdate, System.currentTimeMillis())) {
-            refreshItems();
+            if (incrementalRefresh && !force) {
+                refreshChangedItems();
+            } else {
+                refreshItems();
+            }
         }
     }
 
     @Override
     public Device getByUniqueId(String uniqueId) throws SQLException {
-        boolean forceUpdate = !devicesByUniqueId.containsKey(uniqueId) && !config.getBoolean("database.ignoreUnknown");
+        updateDeviceCache(false);
 
-        updateDeviceCache(forceUpdate);
+        Device device = devicesByUniqueId.get(uniqueId);
+        if (device == null) {
+            if (Context.getStatisticsManager() != null) {
+                Context.getStatisticsManager().registerUnknownDevice();
+            }
+            if (!ignoreUnknown && !isUnknownDevice(uniqueId)) {
+                if (Context.getStatisticsManager() != null) {
+                    Context.getStatisticsManager().registerUnknownDeviceQuery();
+                }
+                device = getDataManager().getDeviceByUniqueId(uniqueId);
+                if (device != null) {
+                    addNewItem(device);
+                } else {
+                    unknownDevices.put(uniqueId, System.currentTimeMillis() + unknownDevicesTimeout);
+                }
+            }
+        }
+        return device;
+    }
 
-        return devicesByUniqueId.get(uniqueId);
+    private boolean isUnknownDevice(String uniqueId) {
+        Long expiration = unknownDevices.get(uniqueId);
+        if (expiration != null) {
+            if (expiration > System.currentTimeMillis()) {
+                return true;
+            }
+            unknownDevices.remove(uniqueId);
+        }
+        return false;
     }
 
     public Device getDeviceByPhone(String phone) {
@@ -105,17 +185,17 @@ public class DeviceManager extends BaseObjectManager<Device> implements Identity
     }
 
     @Override
-    public Set<Long> getUserItems(long userId) {
+    public LongSet getUserItems(long userId) {
         if (Context.getPermissionsManager() != null) {
             return Context.getPermissionsManager().getDevicePermissions(userId);
         } else {
-            return new HashSet<>();
+            return new LongSet();
         }
     }
 
     @Override
-    public Set<Long> getManagedItems(long userId) {
-        Set<Long> result = new HashSet<>();
+    public LongSet getManagedItems(long userId) {
+        LongSet result = new LongSet();
         result.addAll(getUserItems(userId));
         for (long managedUserId : Context.getUsersManager().getUserItems(userId)) {
             result.addAll(getUserItems(managedUserId));
@@ -128,6 +208,9 @@ public class DeviceManager extends BaseObjectManager<Device> implements Identity
             devicesByUniqueId = new ConcurrentHashMap<>(getAllItems().size());
         }
         devicesByUniqueId.put(device.getUniqueId(), device);
+        if (unknownDevices != null) {
+            unknownDevices.remove(device.getUniqueId());
+        }
     }
 
     private void putPhone(Device device) {
@@ -161,6 +244,7 @@ public class DeviceManager extends BaseObjectManager<Device> implements Identity
         cachedDevice.setContact(device.getContact());
         cachedDevice.setModel(device.getModel());
         cachedDevice.setAttributes(device.getAttributes());
+        cachedDevice.setModifiedTime(device.getModifiedTime());
         if (!device.getUniqueId().equals(cachedDevice.getUniqueId())) {
             devicesByUniqueId.remove(cachedDevice.getUniqueId());
             cachedDevice.setUniqueId(device.getUniqueId());
@@ -174,6 +258,18 @@ public class DeviceManager extends BaseObjectManager<Device> implements Identity
         }
     }
 
+    @Override
+    public void addItem(Device device) throws SQLException {
+        device.setModifiedTime(new Date());
+        super.addItem(device);
+    }
+
+    @Override
+    public void updateItem(Device device) throws SQLException {
+        device.setModifiedTime(new Date());
+        super.updateItem(device);
+    }
+
     @Override
     protected void removeCachedItem(long deviceId) {
         Device cachedDevice = getById(deviceId);
@@ -187,16 +283,44 @@ public class DeviceManager extends BaseObjectManager<Device> implements Identity
             }
         }
         positions.remove(deviceId);
+        pendingLatestPositions.remove(deviceId);
+        pendingDeviceStatuses.remove(deviceId);
     }
 
     public void updateDeviceStatus(Device device) throws SQLException {
-        getDataManager().updateDeviceStatus(device);
+        updateDeviceStatus(device, false);
+    }
+
+    public void updateDeviceStatus(Device device, boolean delayed) throws SQLException {
+        if (delayed && deviceStatusDelay > 0) {
+            pendingDeviceStatuses.put(device.getId(), device);
+        } else {
+            pendingDeviceStatuses.remove(device.getId());
+            getDataManager().updateDeviceStatus(device);
+        }
         Device cachedDevice = getById(device.getId());
         if (cachedDevice != null) {
             cachedDevice.setStatus(device.getStatus());
         }
     }
 
+    public void flushDeviceStatuses() {
+        if (!pendingDeviceStatuses.isEmpty()) {
+            List<Device> batch = new ArrayList<>(pendingDeviceStatuses.values());
+            for (Device device : batch) {
+                pendingDeviceStatuses.remove(device.getId(), device);
+            }
+            try {
+                getDataManager().updateDeviceStatuses(batch);
+            } catch (SQLException error) {
+                Log.warning(error);
+                for (Device device : batch) {
+                    pendingDeviceStatuses.putIfAbsent(device.getId(), device);
+                }
+            }
+        }
+    }
+
     private void refreshLastPositions() {
         if (getDataManager() != null) {
             try {
@@ -218,7 +342,11 @@ public class DeviceManager extends BaseObjectManager<Device> implements Identity
 
         if (isLatestPosition(position)) {
 
-            getDataManager().updateLatestPosition(position);
+            if (latestPositionDelay > 0) {
+                pendingLatestPositions.put(position.getDeviceId(), position);
+            } else {
+                getDataManager().updateLatestPosition(position);
+            }
 
             Device device = getById(position.getDeviceId());
             if (device != null) {
@@ -233,6 +361,23 @@ public class DeviceManager extends BaseObjectManager<Device> implements Identity
         }
     }
 
+    public void flushLatestPositions() {
+        if (!pendingLatestPositions.isEmpty()) {
+            List<Position> batch = new ArrayList<>(pendingLatestPositions.values());
+            for (Position position : batch) {
+                pendingLatestPositions.remove(position.getDeviceId(), position);
+            }
+            try {
+                getDataManager().updateLatestPositions(batch);
+            } catch (SQLException error) {
+                Log.warning(error);
+                for (Position position : batch) {
+                    pendingLatestPositions.putIfAbsent(position.getDeviceId(), position);
+                }
+            }
+        }
+    }
+
     @Override
     public Position getLastPosition(long deviceId) {
         return positions.get(deviceId);
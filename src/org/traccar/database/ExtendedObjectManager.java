@@ -18,13 +18,11 @@ package org.traccar.database;
 
 import java.sql.SQLException;
 import java.util.Collection;
-import java.util.HashSet;
-import java.util.Map;
-import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
 
 import org.traccar.Context;
 import org.traccar.helper.Log;
+import org.traccar.helper.LongObjectMap;
+import org.traccar.helper.LongSet;
 import org.traccar.model.Device;
 import org.traccar.model.Group;
 import org.traccar.model.Permission;
@@ -32,34 +30,39 @@ import org.traccar.model.BaseModel;
 
 public abstract class ExtendedObjectManager<T extends BaseModel> extends SimpleObjectManager<T> {
 
-    private final Map<Long, Set<Long>> deviceItems = new ConcurrentHashMap<>();
-    private final Map<Long, Set<Long>> deviceItemsWithGroups = new ConcurrentHashMap<>();
-    private final Map<Long, Set<Long>> groupItems = new ConcurrentHashMap<>();
+    private volatile LongObjectMap<LongSet> deviceItems = new LongObjectMap<>();
+    private volatile LongObjectMap<LongSet> deviceItemsWithGroups = new LongObjectMap<>();
+    private volatile LongObjectMap<LongSet> groupItems = new LongObjectMap<>();
 
     protected ExtendedObjectManager(DataManager dataManager, Class<T> baseClass) {
         super(dataManager, baseClass);
         refreshExtendedPermissions();
     }
 
-    public final Set<Long> getGroupItems(long groupId) {
-        if (!groupItems.containsKey(groupId)) {
-            groupItems.put(groupId, new HashSet<Long>());
-        }
-        return groupItems.get(groupId);
+    private static LongSet get(LongObjectMap<LongSet> map, long key) {
+        LongSet result = map.get(key);
+        return result != null ? result : new LongSet();
     }
 
-    public final Set<Long> getDeviceItems(long deviceId) {
-        if (!deviceItems.containsKey(deviceId)) {
-            deviceItems.put(deviceId, new HashSet<Long>());
+    private static LongSet getOrCreate(LongObjectMap<LongSet> map, long key) {
+        LongSet result = map.get(key);
+        if (result == null) {
+            result = new LongSet();
+            map.put(key, result);
         }
-        return deviceItems.get(deviceId);
+        return result;
     }
 
-    public Set<Long> getAllDeviceItems(long deviceId) {
-        if (!deviceItemsWithGroups.containsKey(deviceId)) {
-            deviceItemsWithGroups.put(deviceId, new HashSet<Long>());
-        }
-        return deviceItemsWithGroups.get(deviceId);
+    public final LongSet getGroupItems(long groupId) {
+        return get(groupItems, groupId);
+    }
+
+    public final LongSet getDeviceItems(long deviceId) {
+        return get(deviceItems, deviceId);
+    }
+
+    public LongSet getAllDeviceItems(long deviceId) {
+        return get(deviceItemsWithGroups, deviceId);
     }
 
     @Override
@@ -75,26 +78,30 @@ public abstract class ExtendedObjectManager<T extends BaseModel> extends SimpleO
                 Collection<Permission> databaseGroupPermissions =
                         getDataManager().getPermissions(Group.class, getBaseClass());
 
-                groupItems.clear();
+                LongObjectMap<LongSet> newGroupItems = new LongObjectMap<>();
                 for (Permission groupPermission : databaseGroupPermissions) {
-                    getGroupItems(groupPermission.getOwnerId()).add(groupPermission.getPropertyId());
+                    getOrCreate(newGroupItems, groupPermission.getOwnerId()).add(groupPermission.getPropertyId());
                 }
 
                 Collection<Permission> databaseDevicePermissions =
                         getDataManager().getPermissions(Device.class, getBaseClass());
 
-                deviceItems.clear();
-                deviceItemsWithGroups.clear();
+                LongObjectMap<LongSet> newDeviceItems = new LongObjectMap<>();
+                LongObjectMap<LongSet> newDeviceItemsWithGroups = new LongObjectMap<>();
 
                 for (Permission devicePermission : databaseDevicePermissions) {
-                    getDeviceItems(devicePermission.getOwnerId()).add(devicePermission.getPropertyId());
-                    getAllDeviceItems(devicePermission.getOwnerId()).add(devicePermission.getPropertyId());
+                    getOrCreate(newDeviceItems, devicePermission.getOwnerId()).add(devicePermission.getPropertyId());
+                    getOrCreate(newDeviceItemsWithGroups, devicePermission.getOwnerId())
+                            .add(devicePermission.getPropertyId());
                 }
 
                 for (Device device : Context.getDeviceManager().getAllDevices()) {
                     long groupId = device.getGroupId();
                     while (groupId != 0) {
-                        getAllDeviceItems(device.getId()).addAll(getGroupItems(groupId));
+                        LongSet items = newGroupItems.get(groupId);
+                        if (items != null) {
+                            getOrCreate(newDeviceItemsWithGroups, device.getId()).addAll(items);
+                        }
                         Group group = (Group) Context.getGroupsManager().getById(groupId);
                         if (group != null) {
                             groupId = group.getGroupId();
@@ -104,6 +111,10 @@ public abstract class ExtendedObjectManager<T extends BaseModel> extends SimpleO
                     }
                 }
 
+                groupItems = newGroupItems;
+                deviceItems = newDeviceItems;
+                deviceItemsWithGroups = newDeviceItemsWithGroups;
+
             } catch (SQLException | ClassNotFoundException error) {
                 Log.warning(error);
             }
@@ -16,50 +16,213 @@
 package org.traccar.database;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import org.traccar.Context;
+import org.traccar.geofence.GeofenceIndex;
+import org.traccar.helper.LongObjectMap;
+import org.traccar.helper.LongSet;
 import org.traccar.model.Device;
 import org.traccar.model.Geofence;
 import org.traccar.model.Position;
 
 public class GeofenceManager extends ExtendedObjectManager<Geofence> {
 
+    private static final double DEFAULT_INDEX_CELL_SIZE = 0.1;
+
+    private static final int RECALCULATE_BATCH = 256;
+
+    private volatile GeofenceIndex index;
+    private ForkJoinPool pool;
+
     public GeofenceManager(DataManager dataManager) {
         super(dataManager, Geofence.class);
     }
 
+    private GeofenceIndex getIndex() {
+        // items are loaded from the base class constructor before field initializers run
+        GeofenceIndex result = index;
+        if (result == null) {
+            synchronized (this) {
+                result = index;
+                if (result == null) {
+                    result = new GeofenceIndex(
+                            Context.getConfig().getDouble("geofence.indexCellSize", DEFAULT_INDEX_CELL_SIZE));
+                    index = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    private synchronized ForkJoinPool getPool() {
+        if (pool == null) {
+            pool = new ForkJoinPool();
+        }
+        return pool;
+    }
+
+    private void updateIndex(Geofence geofence) {
+        if (geofence.getGeometry() != null) {
+            getIndex().put(geofence.getId(), geofence.getGeometry());
+        } else {
+            getIndex().remove(geofence.getId());
+        }
+    }
+
+    @Override
+    protected void addNewItem(Geofence geofence) {
+        super.addNewItem(geofence);
+        updateIndex(geofence);
+    }
+
+    @Override
+    protected void updateCachedItem(Geofence geofence) {
+        Geofence cachedGeofence = getById(geofence.getId());
+        super.updateCachedItem(geofence);
+        updateIndex(geofence);
+        // cached instance could be modified in place, so changes can't be detected for it
+        if (cachedGeofence == null || cachedGeofence == geofence
+                || !Objects.equals(cachedGeofence.getArea(), geofence.getArea())) {
+            recalculateDevicesGeofences(geofence.getId());
+        }
+    }
+
+    @Override
+    protected void removeCachedItem(long geofenceId) {
+        super.removeCachedItem(geofenceId);
+        getIndex().remove(geofenceId);
+        recalculateDevicesGeofences(geofenceId);
+    }
+
+    /**
+     * Recalculates only devices which geofence links changed or which were never calculated.
+     */
     @Override
     public final void refreshExtendedPermissions() {
+        DeviceManager deviceManager = Context.getDeviceManager();
+        if (deviceManager == null) {
+            super.refreshExtendedPermissions();
+            return;
+        }
+        Collection<Device> devices = deviceManager.getAllDevices();
+        LongObjectMap<LongSet> previousDeviceItems = new LongObjectMap<>(devices.size());
+        for (Device device : devices) {
+            if (device != null) {
+                previousDeviceItems.put(device.getId(), getAllDeviceItems(device.getId()));
+            }
+        }
         super.refreshExtendedPermissions();
-        recalculateDevicesGeofences();
+        List<Device> changedDevices = new ArrayList<>();
+        for (Device device : deviceManager.getAllDevices()) {
+            if (device != null && (device.getGeofenceIds() == null
+                    || !getAllDeviceItems(device.getId()).equals(previousDeviceItems.get(device.getId())))) {
+                changedDevices.add(device);
+            }
+        }
+        recalculateDevicesGeofences(changedDevices);
+    }
+
+    private boolean containsPoint(long geofenceId, Position position) {
+        Geofence geofence = getById(geofenceId);
+        return geofence != null && geofence.getGeometry() != null
+                && geofence.getGeometry().containsPoint(position.getLatitude(), position.getLongitude());
     }
 
     public List<Long> getCurrentDeviceGeofences(Position position) {
         List<Long> result = new ArrayList<>();
-        for (long geofenceId : getAllDeviceItems(position.getDeviceId())) {
-            Geofence geofence = getById(geofenceId);
-            if (geofence != null && geofence.getGeometry()
-                    .containsPoint(position.getLatitude(), position.getLongitude())) {
-                result.add(geofenceId);
+        LongSet deviceGeofences = getAllDeviceItems(position.getDeviceId());
+        long[] candidates = getIndex().getItems(position.getLatitude(), position.getLongitude());
+        if (candidates.length < deviceGeofences.size()) {
+            for (long geofenceId : candidates) {
+                if (deviceGeofences.contains(geofenceId) && containsPoint(geofenceId, position)) {
+                    result.add(geofenceId);
+                }
+            }
+        } else {
+            for (long geofenceId : deviceGeofences.toLongArray()) {
+                if (containsPoint(geofenceId, position)) {
+                    result.add(geofenceId);
+                }
             }
         }
         return result;
     }
 
-    public void recalculateDevicesGeofences() {
-        for (Device device : Context.getDeviceManager().getAllDevices()) {
-            List<Long> deviceGeofenceIds = device.getGeofenceIds();
-            if (deviceGeofenceIds == null) {
-                deviceGeofenceIds = new ArrayList<>();
+    private void recalculateDeviceGeofences(Device device) {
+        Position lastPosition = Context.getIdentityManager().getLastPosition(device.getId());
+        if (lastPosition != null) {
+            device.setGeofenceIds(getCurrentDeviceGeofences(lastPosition));
+        } else {
+            device.setGeofenceIds(new ArrayList<Long>());
+        }
+    }
+
+    private final class RecalculateAction extends RecursiveAction {
+
+        private final Device[] devices;
+        private final int from;
+        private final int to;
+
+        private RecalculateAction(Device[] devices, int from, int to) {
+            this.devices = devices;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= RECALCULATE_BATCH) {
+                for (int i = from; i < to; i++) {
+                    recalculateDeviceGeofences(devices[i]);
+                }
             } else {
-                deviceGeofenceIds.clear();
+                int middle = (from + to) >>> 1;
+                invokeAll(new RecalculateAction(devices, from, middle), new RecalculateAction(devices, middle, to));
             }
-            Position lastPosition = Context.getIdentityManager().getLastPosition(device.getId());
-            if (lastPosition != null && getAllDeviceItems(device.getId()) != null) {
-                deviceGeofenceIds.addAll(getCurrentDeviceGeofences(lastPosition));
+        }
+
+    }
+
+    public void recalculateDevicesGeofences(Collection<Device> devices) {
+        Device[] deviceArray = devices.toArray(new Device[devices.size()]);
+        if (deviceArray.length <= RECALCULATE_BATCH) {
+            for (Device device : deviceArray) {
+                recalculateDeviceGeofences(device);
+            }
+        } else {
+            getPool().invoke(new RecalculateAction(deviceArray, 0, deviceArray.length));
+        }
+    }
+
+    /**
+     * Recalculates devices linked to the geofence directly or through groups.
+     */
+    public void recalculateDevicesGeofences(long geofenceId) {
+        if (Context.getDeviceManager() != null) {
+            List<Device> devices = new ArrayList<>();
+            for (Device device : Context.getDeviceManager().getAllDevices()) {
+                if (device != null && getAllDeviceItems(device.getId()).contains(geofenceId)) {
+                    devices.add(device);
+                }
+            }
+            recalculateDevicesGeofences(devices);
+        }
+    }
+
+    public void recalculateDevicesGeofences() {
+        if (Context.getDeviceManager() != null) {
+            List<Device> devices = new ArrayList<>();
+            for (Device device : Context.getDeviceManager().getAllDevices()) {
+                if (device != null) {
+                    devices.add(device);
+                }
             }
-            device.setGeofenceIds(deviceGeofenceIds);
+            recalculateDevicesGeofences(devices);
         }
     }
 
@@ -17,23 +17,27 @@
 package org.traccar.database;
 
 import java.sql.SQLException;
+import java.util.Date;
 import java.util.HashSet;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.traccar.Context;
 import org.traccar.helper.Log;
+import org.traccar.helper.LongSet;
 import org.traccar.model.Group;
 
 public class GroupsManager extends BaseObjectManager<Group> implements ManagableObjects {
 
     private AtomicLong groupsLastUpdate = new AtomicLong();
     private final long dataRefreshDelay;
+    private final boolean incrementalRefresh;
 
     public GroupsManager(DataManager dataManager) {
         super(dataManager, Group.class);
         dataRefreshDelay = Context.getConfig().getLong("database.refreshDelay",
                 DeviceManager.DEFAULT_REFRESH_DELAY) * 1000;
+        incrementalRefresh = Context.getConfig().getBoolean("database.incrementalRefresh");
     }
 
     private void checkGroupCycles(Group group) {
@@ -51,7 +55,11 @@ public class GroupsManager extends BaseObjectManager<Group> implements Managable
         long lastUpdate = groupsLastUpdate.get();
         if ((force || System.currentTimeMillis() - lastUpdate > dataRefreshDelay)
                 && groupsLastUpdate.compareAndSet(lastUpdate, System.currentTimeMillis())) {
-            refreshItems();
+            if (incrementalRefresh && !force) {
+                refreshChangedItems();
+            } else {
+                refreshItems();
+            }
         }
     }
 
@@ -82,17 +90,29 @@ public class GroupsManager extends BaseObjectManager<Group> implements Managable
     }
 
     @Override
-    public Set<Long> getUserItems(long userId) {
+    public void addItem(Group group) throws SQLException {
+        group.setModifiedTime(new Date());
+        super.addItem(group);
+    }
+
+    @Override
+    public void updateItem(Group group) throws SQLException {
+        group.setModifiedTime(new Date());
+        super.updateItem(group);
+    }
+
+    @Override
+    public LongSet getUserItems(long userId) {
         if (Context.getPermissionsManager() != null) {
             return Context.getPermissionsManager().getGroupPermissions(userId);
         } else {
-            return new HashSet<>();
+            return new LongSet();
         }
     }
 
     @Override
-    public Set<Long> getManagedItems(long userId) {
-        Set<Long> result = new HashSet<>();
+    public LongSet getManagedItems(long userId) {
+        LongSet result = new LongSet();
         result.addAll(getUserItems(userId));
         for (long managedUserId : Context.getUsersManager().getUserItems(userId)) {
             result.addAll(getUserItems(managedUserId));
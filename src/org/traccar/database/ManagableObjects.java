@@ -16,12 +16,12 @@
  */
 package org.traccar.database;
 
-import java.util.Set;
+import org.traccar.helper.LongSet;
 
 public interface ManagableObjects {
 
-    Set<Long> getUserItems(long userId);
+    LongSet getUserItems(long userId);
 
-    Set<Long> getManagedItems(long userId);
+    LongSet getManagedItems(long userId);
 
 }
@@ -19,10 +19,17 @@ package org.traccar.database;
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import org.traccar.Context;
 import org.traccar.helper.Log;
@@ -35,11 +42,33 @@ import org.traccar.notification.NotificationSms;
 
 public class NotificationManager extends ExtendedObjectManager<Notification> {
 
+    public static final int DEFAULT_THREADS = 2;
+    public static final int DEFAULT_QUEUE_SIZE = 1000;
+
+    private static final long STOP_TIMEOUT = 30000;
+
     private boolean geocodeOnRequest;
 
+    private final List<ThreadPoolExecutor> executors = new ArrayList<>();
+
     public NotificationManager(DataManager dataManager) {
         super(dataManager, Notification.class);
         geocodeOnRequest = Context.getConfig().getBoolean("geocoder.onRequest");
+
+        int threads = Math.max(Context.getConfig().getInteger("notification.queue.threads", DEFAULT_THREADS), 1);
+        int queueSize = Math.max(Context.getConfig().getInteger("notification.queue.size", DEFAULT_QUEUE_SIZE), 1);
+        for (int i = 0; i < threads; i++) {
+            final String name = "notification-" + i;
+            executors.add(new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<Runnable>(queueSize), new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, name);
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            }));
+        }
     }
 
     private Set<Long> getEffectiveNotifications(long userId, long deviceId) {
@@ -53,13 +82,63 @@ public class NotificationManager extends ExtendedObjectManager<Notification> {
         return result;
     }
 
-    public void updateEvent(Event event, Position position) {
+    /**
+     * Queues event for storing and delivery. Events of the same device are processed in order by a single worker.
+     * If the queue is full, the event is stored on the calling thread and only its delivery is dropped.
+     */
+    public void updateEvent(final Event event, Position position) {
+        final Position eventPosition = getEventPosition(position);
+        ThreadPoolExecutor executor = executors.get((int) (event.getDeviceId() % executors.size()));
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        storeEvent(event);
+                        processEvent(event, eventPosition);
+                    } catch (RuntimeException error) {
+                        Log.warning(error);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException error) {
+            if (!executor.isShutdown()) {
+                // callers are network threads, so a full queue drops the delivery instead of blocking them
+                Log.warning("Notification queue is full, " + event.getType()
+                        + " event of device " + event.getDeviceId() + " is not delivered");
+                if (Context.getStatisticsManager() != null) {
+                    Context.getStatisticsManager().registerNotificationDropped();
+                }
+            }
+            storeEvent(event);
+            return;
+        }
+        if (Context.getStatisticsManager() != null) {
+            Context.getStatisticsManager().registerNotificationQueue(executor.getQueue().size());
+        }
+    }
+
+    private Position getEventPosition(Position position) {
+        if (position != null && geocodeOnRequest && Context.getGeocoder() != null && position.getAddress() == null) {
+            // address is resolved by the worker, so it gets its own copy of the position still used by the pipeline
+            try {
+                return position.clone();
+            } catch (CloneNotSupportedException error) {
+                throw new RuntimeException(error);
+            }
+        }
+        return position;
+    }
+
+    private void storeEvent(Event event) {
         try {
             getDataManager().addObject(event);
         } catch (SQLException error) {
             Log.warning(error);
         }
+    }
 
+    private void processEvent(Event event, Position position) {
         if (position != null && geocodeOnRequest && Context.getGeocoder() != null && position.getAddress() == null) {
             position.setAddress(Context.getGeocoder()
                     .getAddress(position.getLatitude(), position.getLongitude(), null));
@@ -106,6 +185,24 @@ public class NotificationManager extends ExtendedObjectManager<Notification> {
         }
     }
 
+    /**
+     * Stops accepting events and waits for queued ones to be stored and delivered.
+     */
+    public void stop() {
+        for (ThreadPoolExecutor executor : executors) {
+            executor.shutdown();
+        }
+        for (ThreadPoolExecutor executor : executors) {
+            try {
+                if (!executor.awaitTermination(STOP_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                    Log.warning("Notification queue is not empty after shutdown timeout");
+                }
+            } catch (InterruptedException error) {
+                Log.warning(error);
+            }
+        }
+    }
+
     public Set<Typed> getAllNotificationTypes() {
         Set<Typed> types = new HashSet<>();
         Field[] fields = Event.class.getDeclaredFields();
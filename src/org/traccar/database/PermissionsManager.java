@@ -17,6 +17,8 @@ package org.traccar.database;
 
 import org.traccar.Context;
 import org.traccar.helper.Log;
+import org.traccar.helper.LongObjectMap;
+import org.traccar.helper.LongSet;
 import org.traccar.model.Attribute;
 import org.traccar.model.BaseModel;
 import org.traccar.model.Calendar;
@@ -32,10 +34,6 @@ import org.traccar.model.Server;
 import org.traccar.model.User;
 
 import java.sql.SQLException;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Map;
-import java.util.Set;
 
 public class PermissionsManager {
 
@@ -44,10 +42,10 @@ public class PermissionsManager {
 
     private volatile Server server;
 
-    private final Map<Long, Set<Long>> groupPermissions = new HashMap<>();
-    private final Map<Long, Set<Long>> devicePermissions = new HashMap<>();
-    private final Map<Long, Set<Long>> deviceUsers = new HashMap<>();
-    private final Map<Long, Set<Long>> groupDevices = new HashMap<>();
+    private volatile LongObjectMap<LongSet> groupPermissions = new LongObjectMap<>();
+    private volatile LongObjectMap<LongSet> devicePermissions = new LongObjectMap<>();
+    private volatile LongObjectMap<LongSet> deviceUsers = new LongObjectMap<>();
+    private volatile LongObjectMap<LongSet> groupDevices = new LongObjectMap<>();
 
     public PermissionsManager(DataManager dataManager, UsersManager usersManager) {
         this.dataManager = dataManager;
@@ -60,32 +58,34 @@ public class PermissionsManager {
         return (User) usersManager.getById(userId);
     }
 
-    public Set<Long> getGroupPermissions(long userId) {
-        if (!groupPermissions.containsKey(userId)) {
-            groupPermissions.put(userId, new HashSet<Long>());
-        }
-        return groupPermissions.get(userId);
+    private static LongSet get(LongObjectMap<LongSet> map, long key) {
+        LongSet result = map.get(key);
+        return result != null ? result : new LongSet();
     }
 
-    public Set<Long> getDevicePermissions(long userId) {
-        if (!devicePermissions.containsKey(userId)) {
-            devicePermissions.put(userId, new HashSet<Long>());
+    private static LongSet getOrCreate(LongObjectMap<LongSet> map, long key) {
+        LongSet result = map.get(key);
+        if (result == null) {
+            result = new LongSet();
+            map.put(key, result);
         }
-        return devicePermissions.get(userId);
+        return result;
     }
 
-    public Set<Long> getDeviceUsers(long deviceId) {
-        if (!deviceUsers.containsKey(deviceId)) {
-            deviceUsers.put(deviceId, new HashSet<Long>());
-        }
-        return deviceUsers.get(deviceId);
+    public LongSet getGroupPermissions(long userId) {
+        return get(groupPermissions, userId);
     }
 
-    public Set<Long> getGroupDevices(long groupId) {
-        if (!groupDevices.containsKey(groupId)) {
-            groupDevices.put(groupId, new HashSet<Long>());
-        }
-        return groupDevices.get(groupId);
+    public LongSet getDevicePermissions(long userId) {
+        return get(devicePermissions, userId);
+    }
+
+    public LongSet getDeviceUsers(long deviceId) {
+        return get(deviceUsers, deviceId);
+    }
+
+    public LongSet getGroupDevices(long groupId) {
+        return get(groupDevices, groupId);
     }
 
     public void refreshServer() {
@@ -97,15 +97,16 @@ public class PermissionsManager {
     }
 
     public final void refreshDeviceAndGroupPermissions() {
-        groupPermissions.clear();
-        devicePermissions.clear();
+        LongObjectMap<LongSet> newGroupPermissions = new LongObjectMap<>();
+        LongObjectMap<LongSet> newDevicePermissions = new LongObjectMap<>();
+        LongObjectMap<LongSet> newGroupDevices = new LongObjectMap<>();
         try {
             GroupTree groupTree = new GroupTree(Context.getGroupsManager().getItems(
                     Context.getGroupsManager().getAllItems()),
                     Context.getDeviceManager().getAllDevices());
             for (Permission groupPermission : dataManager.getPermissions(User.class, Group.class)) {
-                Set<Long> userGroupPermissions = getGroupPermissions(groupPermission.getOwnerId());
-                Set<Long> userDevicePermissions = getDevicePermissions(groupPermission.getOwnerId());
+                LongSet userGroupPermissions = getOrCreate(newGroupPermissions, groupPermission.getOwnerId());
+                LongSet userDevicePermissions = getOrCreate(newDevicePermissions, groupPermission.getOwnerId());
                 userGroupPermissions.add(groupPermission.getPropertyId());
                 for (Group group : groupTree.getGroups(groupPermission.getPropertyId())) {
                     userGroupPermissions.add(group.getId());
@@ -116,13 +117,12 @@ public class PermissionsManager {
             }
 
             for (Permission devicePermission : dataManager.getPermissions(User.class, Device.class)) {
-                getDevicePermissions(devicePermission.getOwnerId()).add(devicePermission.getPropertyId());
+                getOrCreate(newDevicePermissions, devicePermission.getOwnerId()).add(devicePermission.getPropertyId());
             }
 
-            groupDevices.clear();
             for (long groupId : Context.getGroupsManager().getAllItems()) {
                 for (Device device : groupTree.getDevices(groupId)) {
-                    getGroupDevices(groupId).add(device.getId());
+                    getOrCreate(newGroupDevices, groupId).add(device.getId());
                 }
             }
 
@@ -130,12 +130,21 @@ public class PermissionsManager {
             Log.warning(error);
         }
 
-        deviceUsers.clear();
-        for (Map.Entry<Long, Set<Long>> entry : devicePermissions.entrySet()) {
-            for (long deviceId : entry.getValue()) {
-                getDeviceUsers(deviceId).add(entry.getKey());
+        LongObjectMap<LongSet> newDeviceUsers = new LongObjectMap<>();
+        for (long userId : newDevicePermissions.keys()) {
+            for (long deviceId : newDevicePermissions.get(userId).toLongArray()) {
+                getOrCreate(newDeviceUsers, deviceId).add(userId);
             }
         }
+
+        groupPermissions = newGroupPermissions;
+        devicePermissions = newDevicePermissions;
+        groupDevices = newGroupDevices;
+        deviceUsers = newDeviceUsers;
+
+        if (Context.getConnectionManager() != null) {
+            Context.getConnectionManager().refreshDeviceListeners();
+        }
     }
 
     public boolean getUserAdmin(long userId) {
@@ -408,12 +417,17 @@ public class PermissionsManager {
     }
 
     public User login(String email, String password) throws SQLException {
-        User user = dataManager.login(email, password);
-        if (user != null) {
-            checkUserEnabled(user.getId());
-            return getUser(user.getId());
+        Long userId = usersManager.getCachedLogin(email, password);
+        if (userId == null) {
+            User user = dataManager.login(email, password);
+            if (user == null) {
+                return null;
+            }
+            userId = user.getId();
+            usersManager.addCachedLogin(email, password, userId);
         }
-        return null;
+        checkUserEnabled(userId);
+        return getUser(userId);
     }
 
     public Object lookupAttribute(long userId, String key, Object defaultValue) {
@@ -0,0 +1,229 @@
+/*
+ * Copyright 2017 Anton Tananaev (anton@traccar.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar.database;
+
+import org.jboss.netty.channel.Channel;
+import org.traccar.Config;
+import org.traccar.Context;
+import org.traccar.helper.Log;
+import org.traccar.model.Position;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class PositionWriter {
+
+    public static final int DEFAULT_BATCH_SIZE = 100;
+    public static final long DEFAULT_BATCH_DELAY = 100;
+    public static final int DEFAULT_QUEUE_SIZE = 10000;
+
+    private static final long STOP_TIMEOUT = 30000;
+
+    public interface WriteCallback {
+        void onComplete(Position position, boolean stored);
+    }
+
+    private static final class Entry {
+
+        private final Position position;
+        private final WriteCallback callback;
+
+        private Entry(Position position, WriteCallback callback) {
+            this.position = position;
+            this.callback = callback;
+        }
+
+    }
+
+    private final DataManager dataManager;
+    private final int batchSize;
+    private final long batchDelay;
+    private final int queueSize;
+
+    private final List<BlockingQueue<Entry>> queues = new ArrayList<>();
+    private final List<Thread> workers = new ArrayList<>();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final Set<Channel> suspendedChannels =
+            Collections.newSetFromMap(new ConcurrentHashMap<Channel, Boolean>());
+
+    private volatile boolean running = true;
+
+    public PositionWriter(DataManager dataManager, Config config) {
+        this.dataManager = dataManager;
+
+        batchSize = Math.max(config.getInteger("database.batch.size", DEFAULT_BATCH_SIZE), 1);
+        batchDelay = config.getLong("database.batch.delay", DEFAULT_BATCH_DELAY);
+        queueSize = config.getInteger("database.batch.queueSize", DEFAULT_QUEUE_SIZE);
+
+        int threads = Math.max(config.getInteger("database.batch.threads", 1), 1);
+        for (int i = 0; i < threads; i++) {
+            final BlockingQueue<Entry> queue = new LinkedBlockingQueue<>();
+            queues.add(queue);
+            Thread worker = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    process(queue);
+                }
+            }, "position-writer-" + i);
+            worker.setDaemon(true);
+            workers.add(worker);
+            worker.start();
+        }
+    }
+
+    public int getQueueSize() {
+        return pending.get();
+    }
+
+    public void write(Channel channel, Position position, WriteCallback callback) {
+        if (!running) {
+            callback.onComplete(position, writeSingle(position));
+            return;
+        }
+
+        // Queue is selected by device to keep positions of the same device in order
+        int index = (int) (position.getDeviceId() % queues.size());
+        queues.get(index).add(new Entry(position, callback));
+
+        int size = pending.incrementAndGet();
+        if (size >= queueSize && channel != null && channel.isReadable()) {
+            suspendedChannels.add(channel);
+            channel.setReadable(false);
+        }
+    }
+
+    private void process(BlockingQueue<Entry> queue) {
+        List<Entry> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                Entry first = queue.poll(batchDelay, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.currentTimeMillis() + batchDelay;
+                while (batch.size() < batchSize) {
+                    queue.drainTo(batch, batchSize - batch.size());
+                    long wait = deadline - System.currentTimeMillis();
+                    if (batch.size() >= batchSize || wait <= 0) {
+                        break;
+                    }
+                    Entry next = queue.poll(wait, TimeUnit.MILLISECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                flush(batch);
+            } catch (InterruptedException error) {
+                Log.warning(error);
+            } catch (RuntimeException error) {
+                Log.warning(error);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void flush(List<Entry> batch) {
+        long startTime = System.currentTimeMillis();
+
+        List<Position> positions = new ArrayList<>(batch.size());
+        for (Entry entry : batch) {
+            positions.add(entry.position);
+        }
+
+        boolean[] stored = new boolean[batch.size()];
+        int size;
+        try {
+            try {
+                addPositions(positions);
+                Arrays.fill(stored, true);
+            } catch (SQLException | RuntimeException error) {
+                Log.warning("Batch insert failed, writing positions one by one", error);
+                for (int i = 0; i < positions.size(); i++) {
+                    stored[i] = writeSingle(positions.get(i));
+                }
+            }
+        } finally {
+            size = pending.addAndGet(-batch.size());
+            if (size < queueSize / 2 && !suspendedChannels.isEmpty()) {
+                for (Channel channel : suspendedChannels) {
+                    suspendedChannels.remove(channel);
+                    channel.setReadable(true);
+                }
+            }
+        }
+
+        if (Context.getStatisticsManager() != null) {
+            Context.getStatisticsManager().registerPositionBatch(
+                    batch.size(), System.currentTimeMillis() - startTime, size + batch.size());
+        }
+
+        for (int i = 0; i < batch.size(); i++) {
+            try {
+                batch.get(i).callback.onComplete(batch.get(i).position, stored[i]);
+            } catch (RuntimeException error) {
+                Log.warning(error);
+            }
+        }
+    }
+
+    protected void addPositions(List<Position> positions) throws SQLException {
+        dataManager.addPositions(positions);
+    }
+
+    protected void addPosition(Position position) throws SQLException {
+        dataManager.addPosition(position);
+    }
+
+    private boolean writeSingle(Position position) {
+        try {
+            addPosition(position);
+            return true;
+        } catch (SQLException | RuntimeException error) {
+            Log.warning(error);
+            return false;
+        }
+    }
+
+    public void stop() {
+        running = false;
+        for (Thread worker : workers) {
+            try {
+                worker.join(STOP_TIMEOUT);
+            } catch (InterruptedException error) {
+                Log.warning(error);
+            }
+        }
+        for (BlockingQueue<Entry> queue : queues) {
+            Entry entry;
+            while ((entry = queue.poll()) != null) {
+                entry.callback.onComplete(entry.position, writeSingle(entry.position));
+            }
+        }
+    }
+
+}
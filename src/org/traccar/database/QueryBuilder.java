@@ -23,7 +23,9 @@ import org.traccar.model.Permission;
 
 import javax.sql.DataSource;
 import java.io.IOException;
-import java.lang.reflect.InvocationTargetException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Method;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
@@ -33,45 +35,113 @@ import java.sql.SQLException;
 import java.sql.Statement;
 import java.sql.Timestamp;
 import java.sql.Types;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public final class QueryBuilder {
 
-    private final Map<String, List<Integer>> indexMap = new HashMap<>();
+    private static final int[] NO_INDEXES = new int[0];
+
+    private static final Map<Class<?>, PropertyAccessor[]> GETTERS = new ConcurrentHashMap<>();
+    private static final Map<Class<?>, Map<String, PropertyAccessor>> SETTERS = new ConcurrentHashMap<>();
+
+    private static final Map<String, ParsedQuery> PARSED_QUERIES = new ConcurrentHashMap<>();
+
+    private final Map<String, int[]> indexMap;
+    private final ParsedQuery parsedQuery;
     private Connection connection;
     private PreparedStatement statement;
     private final String query;
     private final boolean returnGeneratedKeys;
+    private int batchSize;
 
     private QueryBuilder(DataSource dataSource, String query, boolean returnGeneratedKeys) throws SQLException {
         this.query = query;
         this.returnGeneratedKeys = returnGeneratedKeys;
         if (query != null) {
+            parsedQuery = getParsedQuery(query);
+            indexMap = parsedQuery.indexes;
             connection = dataSource.getConnection();
-            String parsedQuery = parse(query.trim(), indexMap);
             try {
                 if (returnGeneratedKeys) {
-                    statement = connection.prepareStatement(parsedQuery, Statement.RETURN_GENERATED_KEYS);
+                    statement = connection.prepareStatement(parsedQuery.query, Statement.RETURN_GENERATED_KEYS);
                 } else {
-                    statement = connection.prepareStatement(parsedQuery);
+                    statement = connection.prepareStatement(parsedQuery.query);
                 }
             } catch (SQLException error) {
                 connection.close();
                 throw error;
             }
+        } else {
+            indexMap = Collections.emptyMap();
+            parsedQuery = null;
         }
     }
 
-    private static String parse(String query, Map<String, List<Integer>> paramMap) {
+    private static final class ParsedQuery {
+
+        private final String query;
+        private final Map<String, int[]> indexes;
+        private final Map<Class<?>, ParameterBinding[]> bindings = new ConcurrentHashMap<>();
+
+        private ParsedQuery(String query, Map<String, int[]> indexes) {
+            this.query = query;
+            this.indexes = indexes;
+        }
+
+        private ParameterBinding[] getBindings(Class<?> clazz) {
+            ParameterBinding[] result = bindings.get(clazz);
+            if (result == null) {
+                List<ParameterBinding> list = new ArrayList<>();
+                for (PropertyAccessor getter : getGetters(clazz)) {
+                    int[] getterIndexes = indexes.get(getter.key);
+                    if (getterIndexes != null) {
+                        list.add(new ParameterBinding(getter, getterIndexes));
+                    }
+                }
+                result = list.toArray(new ParameterBinding[list.size()]);
+                bindings.put(clazz, result);
+            }
+            return result;
+        }
+
+    }
+
+    private static final class ParameterBinding {
+
+        private final PropertyAccessor getter;
+        private final int[] indexes;
+
+        private ParameterBinding(PropertyAccessor getter, int[] indexes) {
+            this.getter = getter;
+            this.indexes = indexes;
+        }
+
+    }
+
+    private static ParsedQuery getParsedQuery(String query) {
+        ParsedQuery parsedQuery = PARSED_QUERIES.get(query);
+        if (parsedQuery == null) {
+            Map<String, int[]> indexes = new HashMap<>();
+            parsedQuery = new ParsedQuery(parse(query.trim(), indexes), indexes);
+            PARSED_QUERIES.put(query, parsedQuery);
+        }
+        return parsedQuery;
+    }
+
+    private static String parse(String query, Map<String, int[]> paramMap) {
 
         int length = query.length();
         StringBuilder parsedQuery = new StringBuilder(length);
+        Map<String, List<Integer>> indexLists = new HashMap<>();
         boolean inSingleQuote = false;
         boolean inDoubleQuote = false;
         int index = 1;
@@ -111,10 +181,10 @@ public final class QueryBuilder {
                     name = name.toLowerCase();
 
                     // Add to list
-                    List<Integer> indexList = paramMap.get(name);
+                    List<Integer> indexList = indexLists.get(name);
                     if (indexList == null) {
-                        indexList = new LinkedList<>();
-                        paramMap.put(name, indexList);
+                        indexList = new ArrayList<>(1);
+                        indexLists.put(name, indexList);
                     }
                     indexList.add(index);
 
@@ -125,6 +195,14 @@ public final class QueryBuilder {
             parsedQuery.append(c);
         }
 
+        for (Map.Entry<String, List<Integer>> entry : indexLists.entrySet()) {
+            int[] indexes = new int[entry.getValue().size()];
+            for (int i = 0; i < indexes.length; i++) {
+                indexes[i] = entry.getValue().get(i);
+            }
+            paramMap.put(entry.getKey(), indexes);
+        }
+
         return parsedQuery.toString();
     }
 
@@ -137,39 +215,45 @@ public final class QueryBuilder {
         return new QueryBuilder(dataSource, query, returnGeneratedKeys);
     }
 
-    private List<Integer> indexes(String name) {
-        name = name.toLowerCase();
-        List<Integer> result = indexMap.get(name);
-        if (result == null) {
-            result = new LinkedList<>();
-        }
-        return result;
+    private int[] indexes(String name) {
+        int[] result = indexMap.get(name.toLowerCase());
+        return result != null ? result : NO_INDEXES;
+    }
+
+    private void close(SQLException error) throws SQLException {
+        statement.close();
+        connection.close();
+        throw error;
     }
 
     public QueryBuilder setBoolean(String name, boolean value) throws SQLException {
-        for (int i : indexes(name)) {
+        setBoolean(indexes(name), value);
+        return this;
+    }
+
+    private void setBoolean(int[] indexes, boolean value) throws SQLException {
+        for (int i : indexes) {
             try {
                 statement.setBoolean(i, value);
             } catch (SQLException error) {
-                statement.close();
-                connection.close();
-                throw error;
+                close(error);
             }
         }
-        return this;
     }
 
     public QueryBuilder setInteger(String name, int value) throws SQLException {
-        for (int i : indexes(name)) {
+        setInteger(indexes(name), value);
+        return this;
+    }
+
+    private void setInteger(int[] indexes, int value) throws SQLException {
+        for (int i : indexes) {
             try {
                 statement.setInt(i, value);
             } catch (SQLException error) {
-                statement.close();
-                connection.close();
-                throw error;
+                close(error);
             }
         }
-        return this;
     }
 
     public QueryBuilder setLong(String name, long value) throws SQLException {
@@ -177,7 +261,12 @@ public final class QueryBuilder {
     }
 
     public QueryBuilder setLong(String name, long value, boolean nullIfZero) throws SQLException {
-        for (int i : indexes(name)) {
+        setLong(indexes(name), value, nullIfZero);
+        return this;
+    }
+
+    private void setLong(int[] indexes, long value, boolean nullIfZero) throws SQLException {
+        for (int i : indexes) {
             try {
                 if (value == 0 && nullIfZero) {
                     statement.setNull(i, Types.INTEGER);
@@ -185,29 +274,33 @@ public final class QueryBuilder {
                     statement.setLong(i, value);
                 }
             } catch (SQLException error) {
-                statement.close();
-                connection.close();
-                throw error;
+                close(error);
             }
         }
-        return this;
     }
 
     public QueryBuilder setDouble(String name, double value) throws SQLException {
-        for (int i : indexes(name)) {
+        setDouble(indexes(name), value);
+        return this;
+    }
+
+    private void setDouble(int[] indexes, double value) throws SQLException {
+        for (int i : indexes) {
             try {
                 statement.setDouble(i, value);
             } catch (SQLException error) {
-                statement.close();
-                connection.close();
-                throw error;
+                close(error);
             }
         }
-        return this;
     }
 
     public QueryBuilder setString(String name, String value) throws SQLException {
-        for (int i : indexes(name)) {
+        setString(indexes(name), value);
+        return this;
+    }
+
+    private void setString(int[] indexes, String value) throws SQLException {
+        for (int i : indexes) {
             try {
                 if (value == null) {
                     statement.setNull(i, Types.VARCHAR);
@@ -215,16 +308,18 @@ public final class QueryBuilder {
                     statement.setString(i, value);
                 }
             } catch (SQLException error) {
-                statement.close();
-                connection.close();
-                throw error;
+                close(error);
             }
         }
-        return this;
     }
 
     public QueryBuilder setDate(String name, Date value) throws SQLException {
-        for (int i : indexes(name)) {
+        setDate(indexes(name), value);
+        return this;
+    }
+
+    private void setDate(int[] indexes, Date value) throws SQLException {
+        for (int i : indexes) {
             try {
                 if (value == null) {
                     statement.setNull(i, Types.TIMESTAMP);
@@ -232,16 +327,18 @@ public final class QueryBuilder {
                     statement.setTimestamp(i, new Timestamp(value.getTime()));
                 }
             } catch (SQLException error) {
-                statement.close();
-                connection.close();
-                throw error;
+                close(error);
             }
         }
-        return this;
     }
 
     public QueryBuilder setBlob(String name, byte[] value) throws SQLException {
-        for (int i : indexes(name)) {
+        setBlob(indexes(name), value);
+        return this;
+    }
+
+    private void setBlob(int[] indexes, byte[] value) throws SQLException {
+        for (int i : indexes) {
             try {
                 if (value == null) {
                     statement.setNull(i, Types.BLOB);
@@ -249,225 +346,309 @@ public final class QueryBuilder {
                     statement.setBytes(i, value);
                 }
             } catch (SQLException error) {
-                statement.close();
-                connection.close();
-                throw error;
+                close(error);
             }
         }
-        return this;
     }
 
     public QueryBuilder setObject(Object object) throws SQLException {
 
-        Method[] methods = object.getClass().getMethods();
+        if (parsedQuery == null) {
+            return this;
+        }
 
-        for (Method method : methods) {
-            if (method.getName().startsWith("get") && method.getParameterTypes().length == 0
-                    && !method.isAnnotationPresent(QueryIgnore.class)) {
-                String name = method.getName().substring(3);
-                try {
-                    if (method.getReturnType().equals(boolean.class)) {
-                        setBoolean(name, (Boolean) method.invoke(object));
-                    } else if (method.getReturnType().equals(int.class)) {
-                        setInteger(name, (Integer) method.invoke(object));
-                    } else if (method.getReturnType().equals(long.class)) {
-                        setLong(name, (Long) method.invoke(object), name.endsWith("Id"));
-                    } else if (method.getReturnType().equals(double.class)) {
-                        setDouble(name, (Double) method.invoke(object));
-                    } else if (method.getReturnType().equals(String.class)) {
-                        setString(name, (String) method.invoke(object));
-                    } else if (method.getReturnType().equals(Date.class)) {
-                        setDate(name, (Date) method.invoke(object));
-                    } else if (method.getReturnType().equals(byte[].class)) {
-                        setBlob(name, (byte[]) method.invoke(object));
-                    } else {
-                        if (method.getReturnType().equals(Map.class)
-                                && Context.getConfig().getBoolean("database.xml")) {
-                            setString(name, MiscFormatter.toXmlString((Map) method.invoke(object)));
-                        } else {
-                            setString(name, Context.getObjectMapper().writeValueAsString(method.invoke(object)));
-                        }
-                    }
-                } catch (IllegalAccessException | InvocationTargetException | JsonProcessingException error) {
-                    Log.warning(error);
+        for (ParameterBinding binding : parsedQuery.getBindings(object.getClass())) {
+            PropertyAccessor getter = binding.getter;
+            int[] indexes = binding.indexes;
+            try {
+                switch (getter.type) {
+                    case PropertyAccessor.TYPE_BOOLEAN:
+                        setBoolean(indexes, (boolean) getter.handle.invokeExact(object));
+                        break;
+                    case PropertyAccessor.TYPE_INTEGER:
+                        setInteger(indexes, (int) getter.handle.invokeExact(object));
+                        break;
+                    case PropertyAccessor.TYPE_LONG:
+                        setLong(indexes, (long) getter.handle.invokeExact(object), getter.nullIfZero);
+                        break;
+                    case PropertyAccessor.TYPE_DOUBLE:
+                        setDouble(indexes, (double) getter.handle.invokeExact(object));
+                        break;
+                    default:
+                        Object value = getter.handle.invokeExact(object);
+                        setValue(indexes, getter.type, value);
+                        break;
                 }
+            } catch (SQLException error) {
+                throw error;
+            } catch (Throwable error) {
+                Log.warning(error);
             }
         }
 
         return this;
     }
 
-    private interface ResultSetProcessor<T> {
-        void process(T object, ResultSet resultSet) throws SQLException;
-    }
-
-    public <T> T executeQuerySingle(Class<T> clazz) throws SQLException {
-        Collection<T> result = executeQuery(clazz);
-        if (!result.isEmpty()) {
-            return result.iterator().next();
-        } else {
-            return null;
+    private void setValue(int[] indexes, int type, Object value) throws SQLException, JsonProcessingException {
+        switch (type) {
+            case PropertyAccessor.TYPE_STRING:
+                setString(indexes, (String) value);
+                break;
+            case PropertyAccessor.TYPE_DATE:
+                setDate(indexes, (Date) value);
+                break;
+            case PropertyAccessor.TYPE_BLOB:
+                setBlob(indexes, (byte[]) value);
+                break;
+            case PropertyAccessor.TYPE_MAP:
+                if (Context.getConfig().getBoolean("database.xml")) {
+                    setString(indexes, MiscFormatter.toXmlString((Map) value));
+                } else {
+                    setString(indexes, Context.getObjectMapper().writeValueAsString(value));
+                }
+                break;
+            default:
+                setString(indexes, Context.getObjectMapper().writeValueAsString(value));
+                break;
         }
     }
 
-    private <T> void addProcessors(
-            List<ResultSetProcessor<T>> processors,
-            final Class<?> parameterType, final Method method, final String name) {
+    private static final class PropertyAccessor {
+
+        private static final int TYPE_BOOLEAN = 1;
+        private static final int TYPE_INTEGER = 2;
+        private static final int TYPE_LONG = 3;
+        private static final int TYPE_DOUBLE = 4;
+        private static final int TYPE_STRING = 5;
+        private static final int TYPE_DATE = 6;
+        private static final int TYPE_BLOB = 7;
+        private static final int TYPE_MAP = 8;
+        private static final int TYPE_OBJECT = 9;
+
+        private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+        /**
+         * Getters are typed (Object)T and setters (Object,T)void, where T is the primitive property type or Object,
+         * so that they can be called with invokeExact without boxing.
+         */
+        private final MethodHandle handle;
+        private final String key;
+        private final Class<?> valueClass;
+        private final int type;
+        private final boolean nullIfZero;
+
+        private PropertyAccessor(Method method, Class<?> valueClass, boolean getter) throws IllegalAccessException {
+            this.valueClass = valueClass;
+            String name = method.getName().substring(3);
+            key = name.toLowerCase();
+            nullIfZero = name.endsWith("Id");
+            if (valueClass.equals(boolean.class)) {
+                type = TYPE_BOOLEAN;
+            } else if (valueClass.equals(int.class)) {
+                type = TYPE_INTEGER;
+            } else if (valueClass.equals(long.class)) {
+                type = TYPE_LONG;
+            } else if (valueClass.equals(double.class)) {
+                type = TYPE_DOUBLE;
+            } else if (valueClass.equals(String.class)) {
+                type = TYPE_STRING;
+            } else if (valueClass.equals(Date.class)) {
+                type = TYPE_DATE;
+            } else if (valueClass.equals(byte[].class)) {
+                type = TYPE_BLOB;
+            } else if (valueClass.equals(Map.class)) {
+                type = TYPE_MAP;
+            } else {
+                type = TYPE_OBJECT;
+            }
+            Class<?> handleClass = valueClass.isPrimitive() ? valueClass : Object.class;
+            MethodType methodType;
+            if (getter) {
+                methodType = MethodType.methodType(handleClass, Object.class);
+            } else {
+                methodType = MethodType.methodType(void.class, Object.class, handleClass);
+            }
+            handle = LOOKUP.unreflect(method).asType(methodType);
+        }
 
-        if (parameterType.equals(boolean.class)) {
-            processors.add(new ResultSetProcessor<T>() {
-                @Override
-                public void process(T object, ResultSet resultSet) throws SQLException {
-                    try {
-                        method.invoke(object, resultSet.getBoolean(name));
-                    } catch (IllegalAccessException | InvocationTargetException error) {
-                        Log.warning(error);
-                    }
-                }
-            });
-        } else if (parameterType.equals(int.class)) {
-            processors.add(new ResultSetProcessor<T>() {
-                @Override
-                public void process(T object, ResultSet resultSet) throws SQLException {
-                    try {
-                        method.invoke(object, resultSet.getInt(name));
-                    } catch (IllegalAccessException | InvocationTargetException error) {
-                        Log.warning(error);
-                    }
-                }
-            });
-        } else if (parameterType.equals(long.class)) {
-            processors.add(new ResultSetProcessor<T>() {
-                @Override
-                public void process(T object, ResultSet resultSet) throws SQLException {
-                    try {
-                        method.invoke(object, resultSet.getLong(name));
-                    } catch (IllegalAccessException | InvocationTargetException error) {
-                        Log.warning(error);
-                    }
-                }
-            });
-        } else if (parameterType.equals(double.class)) {
-            processors.add(new ResultSetProcessor<T>() {
-                @Override
-                public void process(T object, ResultSet resultSet) throws SQLException {
-                    try {
-                        method.invoke(object, resultSet.getDouble(name));
-                    } catch (IllegalAccessException | InvocationTargetException error) {
-                        Log.warning(error);
-                    }
-                }
-            });
-        } else if (parameterType.equals(String.class)) {
-            processors.add(new ResultSetProcessor<T>() {
-                @Override
-                public void process(T object, ResultSet resultSet) throws SQLException {
-                    try {
-                        method.invoke(object, resultSet.getString(name));
-                    } catch (IllegalAccessException | InvocationTargetException error) {
-                        Log.warning(error);
-                    }
-                }
-            });
-        } else if (parameterType.equals(Date.class)) {
-            processors.add(new ResultSetProcessor<T>() {
-                @Override
-                public void process(T object, ResultSet resultSet) throws SQLException {
-                    try {
-                        Timestamp timestamp = resultSet.getTimestamp(name);
+        private void read(Object object, ResultSet resultSet, int column) throws SQLException {
+            try {
+                switch (type) {
+                    case TYPE_BOOLEAN:
+                        handle.invokeExact(object, resultSet.getBoolean(column));
+                        break;
+                    case TYPE_INTEGER:
+                        handle.invokeExact(object, resultSet.getInt(column));
+                        break;
+                    case TYPE_LONG:
+                        handle.invokeExact(object, resultSet.getLong(column));
+                        break;
+                    case TYPE_DOUBLE:
+                        handle.invokeExact(object, resultSet.getDouble(column));
+                        break;
+                    case TYPE_STRING:
+                        handle.invokeExact(object, (Object) resultSet.getString(column));
+                        break;
+                    case TYPE_DATE:
+                        Timestamp timestamp = resultSet.getTimestamp(column);
                         if (timestamp != null) {
-                            method.invoke(object, new Date(timestamp.getTime()));
+                            handle.invokeExact(object, (Object) new Date(timestamp.getTime()));
+                        }
+                        break;
+                    case TYPE_BLOB:
+                        handle.invokeExact(object, (Object) resultSet.getBytes(column));
+                        break;
+                    default:
+                        String value = resultSet.getString(column);
+                        if (value != null && !value.isEmpty()) {
+                            handle.invokeExact(object, (Object) Context.getObjectMapper().readValue(value, valueClass));
                         }
-                    } catch (IllegalAccessException | InvocationTargetException error) {
+                        break;
+                }
+            } catch (SQLException error) {
+                throw error;
+            } catch (Throwable error) {
+                Log.warning(error);
+            }
+        }
+
+    }
+
+    private static PropertyAccessor[] getGetters(Class<?> clazz) {
+        PropertyAccessor[] getters = GETTERS.get(clazz);
+        if (getters == null) {
+            List<PropertyAccessor> result = new ArrayList<>();
+            for (Method method : clazz.getMethods()) {
+                if (method.getName().startsWith("get") && method.getParameterTypes().length == 0
+                        && method.getDeclaringClass() != Object.class
+                        && !method.isAnnotationPresent(QueryIgnore.class)) {
+                    try {
+                        result.add(new PropertyAccessor(method, method.getReturnType(), true));
+                    } catch (IllegalAccessException error) {
                         Log.warning(error);
                     }
                 }
-            });
-        } else if (parameterType.equals(byte[].class)) {
-            processors.add(new ResultSetProcessor<T>() {
-                @Override
-                public void process(T object, ResultSet resultSet) throws SQLException {
+            }
+            getters = result.toArray(new PropertyAccessor[result.size()]);
+            GETTERS.put(clazz, getters);
+        }
+        return getters;
+    }
+
+    private static Map<String, PropertyAccessor> getSetters(Class<?> clazz) {
+        Map<String, PropertyAccessor> setters = SETTERS.get(clazz);
+        if (setters == null) {
+            setters = new HashMap<>();
+            for (Method method : clazz.getMethods()) {
+                if (method.getName().startsWith("set") && method.getParameterTypes().length == 1
+                        && !method.isAnnotationPresent(QueryIgnore.class)) {
                     try {
-                        method.invoke(object, resultSet.getBytes(name));
-                    } catch (IllegalAccessException | InvocationTargetException error) {
+                        PropertyAccessor setter = new PropertyAccessor(method, method.getParameterTypes()[0], false);
+                        setters.put(setter.key, setter);
+                    } catch (IllegalAccessException error) {
                         Log.warning(error);
                     }
                 }
-            });
+            }
+            SETTERS.put(clazz, setters);
+        }
+        return setters;
+    }
+
+    public <T> T executeQuerySingle(Class<T> clazz) throws SQLException {
+        Collection<T> result = executeQuery(clazz);
+        if (!result.isEmpty()) {
+            return result.iterator().next();
         } else {
-            processors.add(new ResultSetProcessor<T>() {
-                @Override
-                public void process(T object, ResultSet resultSet) throws SQLException {
-                    String value = resultSet.getString(name);
-                    if (value != null && !value.isEmpty()) {
-                        try {
-                            method.invoke(object, Context.getObjectMapper().readValue(value, parameterType));
-                        } catch (InvocationTargetException | IllegalAccessException | IOException error) {
-                            Log.warning(error);
-                        }
-                    }
+            return null;
+        }
+    }
+
+    public interface ResultHandler<T> {
+        void handle(T object) throws IOException;
+    }
+
+    private static <T> void readResults(
+            ResultSet resultSet, Class<T> clazz, ResultHandler<T> handler) throws SQLException, IOException {
+
+        ResultSetMetaData resultMetaData = resultSet.getMetaData();
+        Map<String, PropertyAccessor> setters = getSetters(clazz);
+
+        int columnCount = resultMetaData.getColumnCount();
+        PropertyAccessor[] columnSetters = new PropertyAccessor[columnCount];
+        int[] columns = new int[columnCount];
+        int count = 0;
+        for (int i = 1; i <= columnCount; i++) {
+            PropertyAccessor setter = setters.get(resultMetaData.getColumnLabel(i).toLowerCase());
+            if (setter != null) {
+                columnSetters[count] = setter;
+                columns[count] = i;
+                count += 1;
+            }
+        }
+
+        while (resultSet.next()) {
+            try {
+                T object = clazz.newInstance();
+                for (int i = 0; i < count; i++) {
+                    columnSetters[i].read(object, resultSet, columns[i]);
                 }
-            });
+                handler.handle(object);
+            } catch (InstantiationException | IllegalAccessException e) {
+                throw new IllegalArgumentException();
+            }
         }
     }
 
     public <T> Collection<T> executeQuery(Class<T> clazz) throws SQLException {
-        List<T> result = new LinkedList<>();
+        final List<T> result = new ArrayList<>();
 
         if (query != null) {
 
             try {
 
                 try (ResultSet resultSet = statement.executeQuery()) {
+                    readResults(resultSet, clazz, new ResultHandler<T>() {
+                        @Override
+                        public void handle(T object) {
+                            result.add(object);
+                        }
+                    });
+                } catch (IOException error) {
+                    throw new SQLException(error);
+                }
 
-                    ResultSetMetaData resultMetaData = resultSet.getMetaData();
-
-                    List<ResultSetProcessor<T>> processors = new LinkedList<>();
-
-                    Method[] methods = clazz.getMethods();
+            } finally {
+                statement.close();
+                connection.close();
+            }
+        }
 
-                    for (final Method method : methods) {
-                        if (method.getName().startsWith("set") && method.getParameterTypes().length == 1
-                                && !method.isAnnotationPresent(QueryIgnore.class)) {
+        return result;
+    }
 
-                            final String name = method.getName().substring(3);
+    public <T> void executeQuery(
+            Class<T> clazz, int fetchSize, ResultHandler<T> handler) throws SQLException, IOException {
 
-                            // Check if column exists
-                            boolean column = false;
-                            for (int i = 1; i <= resultMetaData.getColumnCount(); i++) {
-                                if (name.equalsIgnoreCase(resultMetaData.getColumnLabel(i))) {
-                                    column = true;
-                                    break;
-                                }
-                            }
-                            if (!column) {
-                                continue;
-                            }
-
-                            addProcessors(processors, method.getParameterTypes()[0], method, name);
-                        }
-                    }
+        if (query != null) {
 
-                    while (resultSet.next()) {
-                        try {
-                            T object = clazz.newInstance();
-                            for (ResultSetProcessor<T> processor : processors) {
-                                processor.process(object, resultSet);
-                            }
-                            result.add(object);
-                        } catch (InstantiationException | IllegalAccessException e) {
-                            throw new IllegalArgumentException();
-                        }
+            try {
+                boolean autoCommit = connection.getAutoCommit();
+                // Some drivers (e.g. PostgreSQL) only fetch rows in chunks within a transaction
+                connection.setAutoCommit(false);
+                try {
+                    statement.setFetchSize(fetchSize);
+                    try (ResultSet resultSet = statement.executeQuery()) {
+                        readResults(resultSet, clazz, handler);
                     }
+                } finally {
+                    connection.setAutoCommit(autoCommit);
                 }
-
             } finally {
                 statement.close();
                 connection.close();
             }
         }
-
-        return result;
     }
 
     public long executeUpdate() throws SQLException {
@@ -489,6 +670,54 @@ public final class QueryBuilder {
         return 0;
     }
 
+    public QueryBuilder addBatch() throws SQLException {
+        if (query != null) {
+            try {
+                statement.addBatch();
+                batchSize += 1;
+            } catch (SQLException error) {
+                statement.close();
+                connection.close();
+                throw error;
+            }
+        }
+        return this;
+    }
+
+    public long[] executeBatch() throws SQLException {
+        long[] result = new long[batchSize];
+        if (query != null && batchSize > 0) {
+            try {
+                boolean autoCommit = connection.getAutoCommit();
+                connection.setAutoCommit(false);
+                try {
+                    statement.executeBatch();
+                    if (returnGeneratedKeys) {
+                        int count = 0;
+                        try (ResultSet resultSet = statement.getGeneratedKeys()) {
+                            while (resultSet.next() && count < result.length) {
+                                result[count++] = resultSet.getLong(1);
+                            }
+                        }
+                        if (count < result.length) {
+                            throw new SQLException("Generated keys are not returned for batch");
+                        }
+                    }
+                    connection.commit();
+                } catch (SQLException error) {
+                    connection.rollback();
+                    throw error;
+                } finally {
+                    connection.setAutoCommit(autoCommit);
+                }
+            } finally {
+                statement.close();
+                connection.close();
+            }
+        }
+        return result;
+    }
+
     public Collection<Permission> executePermissionsQuery() throws SQLException, ClassNotFoundException {
         List<Permission> result = new LinkedList<>();
         if (query != null) {
@@ -17,13 +17,11 @@
 package org.traccar.database;
 
 import java.sql.SQLException;
-import java.util.HashSet;
-import java.util.Map;
-import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
 
 import org.traccar.Context;
 import org.traccar.helper.Log;
+import org.traccar.helper.LongObjectMap;
+import org.traccar.helper.LongSet;
 import org.traccar.model.BaseModel;
 import org.traccar.model.Permission;
 import org.traccar.model.User;
@@ -31,23 +29,22 @@ import org.traccar.model.User;
 public abstract class SimpleObjectManager<T extends BaseModel> extends BaseObjectManager<T>
         implements ManagableObjects {
 
-    private Map<Long, Set<Long>> userItems;
+    private volatile LongObjectMap<LongSet> userItems;
 
     protected SimpleObjectManager(DataManager dataManager, Class<T> baseClass) {
         super(dataManager, baseClass);
     }
 
     @Override
-    public final Set<Long> getUserItems(long userId) {
-        if (!userItems.containsKey(userId)) {
-            userItems.put(userId, new HashSet<Long>());
-        }
-        return userItems.get(userId);
+    public final LongSet getUserItems(long userId) {
+        LongObjectMap<LongSet> items = userItems;
+        LongSet result = items != null ? items.get(userId) : null;
+        return result != null ? result : new LongSet();
     }
 
     @Override
-    public Set<Long> getManagedItems(long userId) {
-        Set<Long> result = new HashSet<>();
+    public LongSet getManagedItems(long userId) {
+        LongSet result = new LongSet();
         result.addAll(getUserItems(userId));
         for (long managedUserId : Context.getUsersManager().getUserItems(userId)) {
             result.addAll(getUserItems(managedUserId));
@@ -68,14 +65,16 @@ public abstract class SimpleObjectManager<T extends BaseModel> extends BaseObjec
     public final void refreshUserItems() {
         if (getDataManager() != null) {
             try {
-                if (userItems != null) {
-                    userItems.clear();
-                } else {
-                    userItems = new ConcurrentHashMap<>();
-                }
+                LongObjectMap<LongSet> newUserItems = new LongObjectMap<>();
                 for (Permission permission : getDataManager().getPermissions(User.class, getBaseClass())) {
-                    getUserItems(permission.getOwnerId()).add(permission.getPropertyId());
+                    LongSet items = newUserItems.get(permission.getOwnerId());
+                    if (items == null) {
+                        items = new LongSet();
+                        newUserItems.put(permission.getOwnerId(), items);
+                    }
+                    items.add(permission.getPropertyId());
                 }
+                userItems = newUserItems;
             } catch (SQLException | ClassNotFoundException error) {
                 Log.warning(error);
             }
@@ -46,6 +46,32 @@ public class StatisticsManager {
     private int geocoderRequests;
     private int geolocationRequests;
 
+    private int geocoderCacheHits;
+    private int geocoderCacheMisses;
+    private int geocoderResponses;
+    private long geocoderTime;
+    private long geocoderMaxTime;
+    private int geocoderRejected;
+    private int geocoderCoalesced;
+
+    private int unknownDevices;
+    private int unknownDeviceQueries;
+
+    private int positionBatches;
+    private int positionBatchPositions;
+    private long positionBatchTime;
+    private long positionBatchMaxTime;
+    private int positionQueueMax;
+
+    private int mailDeliveries;
+    private long mailTime;
+    private long mailMaxTime;
+    private int mailQueueMax;
+    private int mailRetries;
+    private int mailDropped;
+    private int notificationQueueMax;
+    private int notificationDropped;
+
     private void checkSplit() {
         int currentUpdate = Calendar.getInstance().get(SPLIT_MODE);
         if (lastUpdate.getAndSet(currentUpdate) != currentUpdate) {
@@ -61,6 +87,47 @@ public class StatisticsManager {
             statistics.setGeocoderRequests(geocoderRequests);
             statistics.setGeolocationRequests(geolocationRequests);
 
+            if (geocoderCacheHits > 0 || geocoderCacheMisses > 0) {
+                statistics.set("geocoderCacheHits", geocoderCacheHits);
+                statistics.set("geocoderCacheMisses", geocoderCacheMisses);
+            }
+
+            if (geocoderResponses > 0) {
+                statistics.set("geocoderTime", geocoderTime / geocoderResponses);
+                statistics.set("geocoderMaxTime", geocoderMaxTime);
+            }
+            if (geocoderRejected > 0 || geocoderCoalesced > 0) {
+                statistics.set("geocoderRejected", geocoderRejected);
+                statistics.set("geocoderCoalesced", geocoderCoalesced);
+            }
+
+            if (unknownDevices > 0) {
+                statistics.set("unknownDevices", unknownDevices);
+                statistics.set("unknownDeviceQueries", unknownDeviceQueries);
+            }
+
+            if (positionBatches > 0) {
+                statistics.set("positionBatches", positionBatches);
+                statistics.set("positionBatchSize", positionBatchPositions / positionBatches);
+                statistics.set("positionBatchTime", positionBatchTime / positionBatches);
+                statistics.set("positionBatchMaxTime", positionBatchMaxTime);
+                statistics.set("positionQueueMax", positionQueueMax);
+            }
+
+            if (mailDeliveries > 0) {
+                statistics.set("mailTime", mailTime / mailDeliveries);
+                statistics.set("mailMaxTime", mailMaxTime);
+                statistics.set("mailQueueMax", mailQueueMax);
+            }
+            if (mailRetries > 0 || mailDropped > 0) {
+                statistics.set("mailRetries", mailRetries);
+                statistics.set("mailDropped", mailDropped);
+            }
+            if (notificationQueueMax > 0 || notificationDropped > 0) {
+                statistics.set("notificationQueueMax", notificationQueueMax);
+                statistics.set("notificationDropped", notificationDropped);
+            }
+
             try {
                 Context.getDataManager().addObject(statistics);
             } catch (SQLException e) {
@@ -97,6 +164,28 @@ public class StatisticsManager {
             smsSent = 0;
             geocoderRequests = 0;
             geolocationRequests = 0;
+            geocoderCacheHits = 0;
+            geocoderCacheMisses = 0;
+            geocoderResponses = 0;
+            geocoderTime = 0;
+            geocoderMaxTime = 0;
+            geocoderRejected = 0;
+            geocoderCoalesced = 0;
+            unknownDevices = 0;
+            unknownDeviceQueries = 0;
+            positionBatches = 0;
+            positionBatchPositions = 0;
+            positionBatchTime = 0;
+            positionBatchMaxTime = 0;
+            positionQueueMax = 0;
+            mailDeliveries = 0;
+            mailTime = 0;
+            mailMaxTime = 0;
+            mailQueueMax = 0;
+            mailRetries = 0;
+            mailDropped = 0;
+            notificationQueueMax = 0;
+            notificationDropped = 0;
         }
     }
 
@@ -136,9 +225,82 @@ public class StatisticsManager {
         geocoderRequests += 1;
     }
 
+    public synchronized void registerGeocoderCache(boolean hit) {
+        checkSplit();
+        if (hit) {
+            geocoderCacheHits += 1;
+        } else {
+            geocoderCacheMisses += 1;
+        }
+    }
+
+    public synchronized void registerGeocoderResponse(long time) {
+        checkSplit();
+        geocoderResponses += 1;
+        geocoderTime += time;
+        geocoderMaxTime = Math.max(geocoderMaxTime, time);
+    }
+
+    public synchronized void registerGeocoderRejected() {
+        checkSplit();
+        geocoderRejected += 1;
+    }
+
+    public synchronized void registerGeocoderCoalesced() {
+        checkSplit();
+        geocoderCoalesced += 1;
+    }
+
     public synchronized void registerGeolocationRequest() {
         checkSplit();
         geolocationRequests += 1;
     }
 
+    public synchronized void registerUnknownDevice() {
+        checkSplit();
+        unknownDevices += 1;
+    }
+
+    public synchronized void registerUnknownDeviceQuery() {
+        checkSplit();
+        unknownDeviceQueries += 1;
+    }
+
+    public synchronized void registerPositionBatch(int size, long time, int queueSize) {
+        checkSplit();
+        positionBatches += 1;
+        positionBatchPositions += size;
+        positionBatchTime += time;
+        positionBatchMaxTime = Math.max(positionBatchMaxTime, time);
+        positionQueueMax = Math.max(positionQueueMax, queueSize);
+    }
+
+    public synchronized void registerMailDelivery(long time, int queueSize) {
+        checkSplit();
+        mailDeliveries += 1;
+        mailTime += time;
+        mailMaxTime = Math.max(mailMaxTime, time);
+        mailQueueMax = Math.max(mailQueueMax, queueSize);
+    }
+
+    public synchronized void registerMailRetry() {
+        checkSplit();
+        mailRetries += 1;
+    }
+
+    public synchronized void registerMailDropped() {
+        checkSplit();
+        mailDropped += 1;
+    }
+
+    public synchronized void registerNotificationQueue(int queueSize) {
+        checkSplit();
+        notificationQueueMax = Math.max(notificationQueueMax, queueSize);
+    }
+
+    public synchronized void registerNotificationDropped() {
+        checkSplit();
+        notificationDropped += 1;
+    }
+
 }
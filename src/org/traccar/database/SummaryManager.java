@@ -0,0 +1,171 @@
+/*
+ * Copyright 2017 Anton Tananaev (anton@traccar.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar.database;
+
+import org.traccar.Config;
+import org.traccar.Context;
+import org.traccar.helper.Log;
+import org.traccar.model.DailySummary;
+import org.traccar.model.Position;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Maintains per device daily summaries (UTC days) used by the summary report for whole days of a period.
+ */
+public class SummaryManager {
+
+    public static final long DAY = 24 * 3600 * 1000L;
+
+    private static final long DEFAULT_INTERVAL = 300;
+    private static final long DEFAULT_DELAY = 3600;
+    private static final int DEFAULT_BACKFILL_DAYS = 31;
+    private static final int DEFAULT_BATCH_SIZE = 1000;
+
+    private final DataManager dataManager;
+    private final long delay;
+    private final int backfillDays;
+    private final int batchSize;
+
+    private final Map<Long, Long> latestDays = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Long, Set<Long>> invalidDays = new ConcurrentHashMap<>();
+
+    public SummaryManager(DataManager dataManager) {
+        this.dataManager = dataManager;
+
+        Config config = Context.getConfig();
+        delay = config.getLong("report.rollup.delay", DEFAULT_DELAY) * 1000;
+        backfillDays = Math.max(config.getInteger("report.rollup.backfillDays", DEFAULT_BACKFILL_DAYS), 1);
+        batchSize = config.getInteger("report.rollup.batchSize", DEFAULT_BATCH_SIZE);
+
+        try {
+            for (DailySummary summary : dataManager.getLatestSummaries()) {
+                latestDays.put(summary.getDeviceId(), summary.getStartTime().getTime());
+            }
+        } catch (SQLException error) {
+            Log.warning(error);
+        }
+
+        long interval = config.getLong("report.rollup.interval", DEFAULT_INTERVAL) * 1000;
+        new Timer(true).schedule(new TimerTask() {
+            @Override
+            public void run() {
+                try {
+                    compact();
+                } catch (RuntimeException error) {
+                    Log.warning(error);
+                }
+            }
+        }, interval, interval);
+    }
+
+    public static long getDayStart(long time) {
+        return time - time % DAY;
+    }
+
+    public static DailySummary calculate(long deviceId, Date from, Date to) throws SQLException {
+        final DailySummary summary = new DailySummary();
+        summary.setDeviceId(deviceId);
+        summary.setStartTime(from);
+        try {
+            Context.getDataManager().getPositions(deviceId, from, to, new QueryBuilder.ResultHandler<Position>() {
+                @Override
+                public void handle(Position position) {
+                    summary.addPosition(position);
+                }
+            });
+        } catch (IOException error) {
+            throw new SQLException(error);
+        }
+        return summary;
+    }
+
+    public Collection<DailySummary> getSummaries(long deviceId, Date from, Date to) throws SQLException {
+        Long latestDay = latestDays.get(deviceId);
+        if (latestDay == null || latestDay < from.getTime()) {
+            return Collections.emptyList();
+        }
+        return dataManager.getSummaries(deviceId, from, to);
+    }
+
+    public void updatePosition(Position position) {
+        long deviceId = position.getDeviceId();
+        Long latestDay = latestDays.get(deviceId);
+        long day = getDayStart(position.getFixTime().getTime());
+        if (latestDay != null && day <= latestDay) {
+            Set<Long> days = invalidDays.get(deviceId);
+            if (days == null) {
+                days = Collections.newSetFromMap(new ConcurrentHashMap<Long, Boolean>());
+                Set<Long> existing = invalidDays.putIfAbsent(deviceId, days);
+                if (existing != null) {
+                    days = existing;
+                }
+            }
+            if (days.add(day)) {
+                try {
+                    dataManager.removeSummary(deviceId, new Date(day));
+                } catch (SQLException error) {
+                    Log.warning(error);
+                }
+            }
+        }
+    }
+
+    private void calculateDay(long deviceId, long day) throws SQLException {
+        dataManager.addSummary(calculate(deviceId, new Date(day), new Date(day + DAY - 1)));
+    }
+
+    public void compact() {
+        int count = 0;
+        try {
+            for (Map.Entry<Long, Set<Long>> entry : invalidDays.entrySet()) {
+                Iterator<Long> iterator = entry.getValue().iterator();
+                while (iterator.hasNext() && count < batchSize) {
+                    long day = iterator.next();
+                    iterator.remove();
+                    calculateDay(entry.getKey(), day);
+                    count += 1;
+                }
+            }
+
+            long lastDay = getDayStart(System.currentTimeMillis() - delay) - DAY;
+            for (long deviceId : Context.getDeviceManager().getAllItems()) {
+                Long latestDay = latestDays.get(deviceId);
+                long day = latestDay != null ? latestDay + DAY : lastDay - (backfillDays - 1) * DAY;
+                while (day <= lastDay && count < batchSize) {
+                    latestDays.put(deviceId, day);
+                    calculateDay(deviceId, day);
+                    day += DAY;
+                    count += 1;
+                }
+            }
+        } catch (SQLException error) {
+            Log.warning(error);
+        }
+    }
+
+}
@@ -0,0 +1,379 @@
+/*
+ * Copyright 2017 Anton Tananaev (anton@traccar.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar.database;
+
+import org.traccar.Config;
+import org.traccar.Context;
+import org.traccar.helper.Log;
+import org.traccar.model.Position;
+import org.traccar.reports.ReportUtils;
+import org.traccar.reports.TripsDetector;
+import org.traccar.reports.model.BaseReport;
+import org.traccar.reports.model.StopReport;
+import org.traccar.reports.model.TripReport;
+import org.traccar.reports.model.TripsConfig;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Detects trips and stops as positions are received and stores completed ones for the trips and stops reports.
+ */
+public class TripsManager {
+
+    private static final long DAY = 24 * 3600 * 1000L;
+
+    private static final long DEFAULT_INTERVAL = 60;
+    private static final int DEFAULT_BACKFILL_DAYS = 31;
+    private static final int DEFAULT_BATCH_SIZE = 100;
+    private static final int MAX_REPLAY_PASSES = 3;
+
+    private final DataManager dataManager;
+    private final TripsConfig tripsConfig;
+    private final int backfillDays;
+    private final int batchSize;
+
+    private final ConcurrentMap<Long, DeviceTrips> devices = new ConcurrentHashMap<>();
+
+    private static final class DeviceTrips {
+        private boolean loaded;
+        private Date startTime;
+        private Date endTime;
+        private TripsDetector detector;
+        private Date lastTime;
+        private Date unprocessedTime;
+        private Date invalidTime;
+        private List<BaseReport> pending = new ArrayList<>();
+    }
+
+    public TripsManager(DataManager dataManager, TripsConfig tripsConfig, Config config) {
+        this.dataManager = dataManager;
+        this.tripsConfig = tripsConfig;
+
+        backfillDays = Math.max(config.getInteger("report.trip.backfillDays", DEFAULT_BACKFILL_DAYS), 1);
+        batchSize = config.getInteger("report.trip.batchSize", DEFAULT_BATCH_SIZE);
+
+        long interval = config.getLong("report.trip.interval", DEFAULT_INTERVAL) * 1000;
+        if (interval > 0) {
+            new Timer(true).schedule(new TimerTask() {
+                @Override
+                public void run() {
+                    try {
+                        update();
+                    } catch (RuntimeException error) {
+                        Log.warning(error);
+                    }
+                }
+            }, interval, interval);
+        }
+    }
+
+    private static Date min(Date first, Date second) {
+        return first == null || second != null && second.before(first) ? second : first;
+    }
+
+    private static Date max(Date first, Date second) {
+        return first == null || second != null && second.after(first) ? second : first;
+    }
+
+    private DeviceTrips getDeviceTrips(long deviceId) {
+        DeviceTrips deviceTrips = devices.get(deviceId);
+        if (deviceTrips == null) {
+            deviceTrips = new DeviceTrips();
+            DeviceTrips existing = devices.putIfAbsent(deviceId, deviceTrips);
+            if (existing != null) {
+                deviceTrips = existing;
+            }
+        }
+        return deviceTrips;
+    }
+
+    private TripReport loadRange(long deviceId) throws SQLException {
+        TripReport trips = dataManager.getTripsRange(deviceId);
+        StopReport stops = dataManager.getStopsRange(deviceId);
+        TripReport range = new TripReport();
+        if (trips != null) {
+            range.setStartTime(trips.getStartTime());
+            range.setEndTime(trips.getEndTime());
+        }
+        if (stops != null) {
+            range.setStartTime(min(range.getStartTime(), stops.getStartTime()));
+            range.setEndTime(max(range.getEndTime(), stops.getEndTime()));
+        }
+        return range;
+    }
+
+    private static void setRange(DeviceTrips deviceTrips, TripReport range) {
+        deviceTrips.startTime = range.getStartTime();
+        deviceTrips.endTime = range.getEndTime();
+        deviceTrips.loaded = true;
+    }
+
+    private static boolean isIgnoreOdometer(long deviceId) {
+        return Context.getIdentityManager().lookupAttributeBoolean(deviceId, "report.ignoreOdometer", false, true);
+    }
+
+    private TripsDetector createDetector(long deviceId, final DeviceTrips deviceTrips, final Date from) {
+        return new TripsDetector(tripsConfig, isIgnoreOdometer(deviceId), new TripsDetector.Listener() {
+            @Override
+            public void onTrip(TripReport trip) {
+                addPending(deviceTrips, from, trip, trip.getEndTime());
+            }
+
+            @Override
+            public void onStop(StopReport stop) {
+                addPending(deviceTrips, from, stop, stop.getEndTime());
+            }
+        });
+    }
+
+    private void addPending(DeviceTrips deviceTrips, Date from, BaseReport report, Date endTime) {
+        if (endTime.after(from)) {
+            synchronized (deviceTrips) {
+                deviceTrips.pending.add(report);
+            }
+        }
+    }
+
+    public void updatePosition(Position position) {
+        DeviceTrips deviceTrips = getDeviceTrips(position.getDeviceId());
+        Date time = position.getFixTime();
+        synchronized (deviceTrips) {
+            if (deviceTrips.detector == null) {
+                deviceTrips.unprocessedTime = min(deviceTrips.unprocessedTime, time);
+            } else if (time.before(deviceTrips.lastTime)) {
+                deviceTrips.detector = null;
+                deviceTrips.invalidTime = min(deviceTrips.invalidTime, time);
+            } else if (time.after(deviceTrips.lastTime)) {
+                deviceTrips.detector.addPosition(position);
+                deviceTrips.lastTime = time;
+            }
+        }
+    }
+
+    private void store(DeviceTrips deviceTrips) throws SQLException {
+        List<BaseReport> reports;
+        synchronized (deviceTrips) {
+            reports = deviceTrips.pending;
+            deviceTrips.pending = new ArrayList<>();
+        }
+        for (BaseReport report : reports) {
+            Date startTime;
+            Date endTime;
+            if (report instanceof TripReport) {
+                TripReport trip = (TripReport) report;
+                ReportUtils.resolveAddresses(trip);
+                dataManager.addTrip(trip);
+                startTime = trip.getStartTime();
+                endTime = trip.getEndTime();
+            } else {
+                StopReport stop = (StopReport) report;
+                ReportUtils.resolveAddresses(stop);
+                dataManager.addStop(stop);
+                startTime = stop.getStartTime();
+                endTime = stop.getEndTime();
+            }
+            synchronized (deviceTrips) {
+                if (deviceTrips.loaded) {
+                    deviceTrips.startTime = min(deviceTrips.startTime, startTime);
+                    deviceTrips.endTime = max(deviceTrips.endTime, endTime);
+                }
+            }
+        }
+    }
+
+    private Date readPositions(long deviceId, final TripsDetector detector, final Date from, final boolean inclusive)
+            throws SQLException, IOException {
+        dataManager.getPositions(deviceId, from, new Date(), new QueryBuilder.ResultHandler<Position>() {
+            @Override
+            public void handle(Position position) {
+                if (inclusive || position.getFixTime().after(from)) {
+                    detector.addPosition(position);
+                }
+            }
+        });
+        Position last = detector.getLastPosition();
+        return last != null ? last.getFixTime() : from;
+    }
+
+    private void replay(long deviceId, DeviceTrips deviceTrips) throws SQLException, IOException {
+        Date invalidTime;
+        boolean loaded;
+        synchronized (deviceTrips) {
+            invalidTime = deviceTrips.invalidTime;
+            deviceTrips.invalidTime = null;
+            if (invalidTime != null) {
+                deviceTrips.loaded = false;
+            }
+            loaded = deviceTrips.loaded;
+        }
+
+        if (!loaded) {
+            TripReport range;
+            try {
+                if (invalidTime != null) {
+                    dataManager.removeTrips(deviceId, invalidTime);
+                    dataManager.removeStops(deviceId, invalidTime);
+                }
+                range = loadRange(deviceId);
+            } catch (SQLException error) {
+                synchronized (deviceTrips) {
+                    deviceTrips.invalidTime = min(deviceTrips.invalidTime, invalidTime);
+                }
+                throw error;
+            }
+            synchronized (deviceTrips) {
+                setRange(deviceTrips, range);
+            }
+        }
+
+        Date from;
+        synchronized (deviceTrips) {
+            from = deviceTrips.endTime;
+            deviceTrips.unprocessedTime = null;
+        }
+        if (from == null) {
+            from = new Date(System.currentTimeMillis() - backfillDays * DAY);
+        }
+
+        // history is read without holding the lock, positions received meanwhile are caught up by another pass
+        TripsDetector detector = createDetector(deviceId, deviceTrips, from);
+        Date lastTime = from;
+        for (int pass = 0; pass < MAX_REPLAY_PASSES; pass++) {
+            lastTime = readPositions(deviceId, detector, lastTime, pass == 0);
+            synchronized (deviceTrips) {
+                Date unprocessedTime = deviceTrips.unprocessedTime;
+                deviceTrips.unprocessedTime = null;
+                if (unprocessedTime == null) {
+                    deviceTrips.lastTime = lastTime;
+                    deviceTrips.detector = detector;
+                    return;
+                } else if (unprocessedTime.before(lastTime)) {
+                    // late position received while reading history, it might have been missed
+                    deviceTrips.invalidTime = unprocessedTime;
+                    deviceTrips.pending.clear();
+                    return;
+                }
+            }
+        }
+    }
+
+    public void update() {
+        update(Context.getDeviceManager().getAllItems());
+    }
+
+    void update(Collection<Long> deviceIds) {
+        for (DeviceTrips deviceTrips : devices.values()) {
+            try {
+                store(deviceTrips);
+            } catch (SQLException error) {
+                Log.warning(error);
+            }
+        }
+        int count = 0;
+        for (long deviceId : deviceIds) {
+            DeviceTrips deviceTrips = getDeviceTrips(deviceId);
+            boolean active;
+            synchronized (deviceTrips) {
+                active = deviceTrips.detector != null;
+            }
+            if (!active && count < batchSize) {
+                try {
+                    replay(deviceId, deviceTrips);
+                    store(deviceTrips);
+                } catch (SQLException | IOException error) {
+                    Log.warning(error);
+                }
+                count += 1;
+            }
+        }
+    }
+
+    private <T extends BaseReport> Collection<T> getReports(
+            long deviceId, Date from, Date to, Class<T> reportClass) throws SQLException {
+        DeviceTrips deviceTrips = getDeviceTrips(deviceId);
+        boolean loaded;
+        synchronized (deviceTrips) {
+            loaded = deviceTrips.loaded;
+        }
+        if (!loaded) {
+            TripReport range = loadRange(deviceId);
+            synchronized (deviceTrips) {
+                if (!deviceTrips.loaded) {
+                    setRange(deviceTrips, range);
+                }
+            }
+        }
+        Date startTime;
+        Date endTime;
+        synchronized (deviceTrips) {
+            startTime = deviceTrips.startTime;
+            endTime = deviceTrips.endTime;
+        }
+        if (startTime == null || from.before(startTime)) {
+            return null;
+        }
+
+        Collection<T> result = new ArrayList<>();
+        if (from.before(endTime)) {
+            Date storedTo = min(to, endTime);
+            if (reportClass.equals(TripReport.class)) {
+                for (TripReport trip : dataManager.getTrips(deviceId, from, storedTo)) {
+                    trip.setDeviceName(Context.getIdentityManager().getById(deviceId).getName());
+                    trip.setDriverName(ReportUtils.findDriverName(trip.getDriverUniqueId()));
+                    result.add(reportClass.cast(trip));
+                }
+            } else {
+                for (StopReport stop : dataManager.getStops(deviceId, from, storedTo)) {
+                    stop.setDeviceName(Context.getIdentityManager().getById(deviceId).getName());
+                    result.add(reportClass.cast(stop));
+                }
+            }
+        }
+        if (to.after(endTime)) {
+            for (T report : ReportUtils.detectTripsAndStops(dataManager, tripsConfig, isIgnoreOdometer(deviceId),
+                    deviceId, max(from, endTime), to, reportClass)) {
+                Date reportEnd = report instanceof TripReport
+                        ? ((TripReport) report).getEndTime() : ((StopReport) report).getEndTime();
+                if (reportEnd.after(endTime)) {
+                    result.add(report);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns stored trips completed with trips detected after the last stored one, or null if the period is
+     * not covered by stored data.
+     */
+    public Collection<TripReport> getTrips(long deviceId, Date from, Date to) throws SQLException {
+        return getReports(deviceId, from, to, TripReport.class);
+    }
+
+    public Collection<StopReport> getStops(long deviceId, Date from, Date to) throws SQLException {
+        return getReports(deviceId, from, to, StopReport.class);
+    }
+
+}
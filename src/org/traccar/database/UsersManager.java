@@ -16,22 +16,62 @@
  */
 package org.traccar.database;
 
-import java.util.HashSet;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import javax.xml.bind.DatatypeConverter;
+
+import org.traccar.Context;
+import org.traccar.helper.LongSet;
 import org.traccar.model.User;
 
 public class UsersManager extends SimpleObjectManager<User> {
 
+    private static final int DEFAULT_LOGIN_CACHE_SIZE = 1000;
+    private static final long DEFAULT_LOGIN_CACHE_TTL = 60;
+
+    private static final String LOGIN_HASH_ALGORITHM = "HmacSHA256";
+
     private Map<String, User> usersTokens;
 
+    private static final class CachedLogin {
+        private final long userId;
+        private final long expirationTime;
+
+        private CachedLogin(long userId, long expirationTime) {
+            this.userId = userId;
+            this.expirationTime = expirationTime;
+        }
+    }
+
+    private final SecretKeySpec loginKey;
+    private final long loginCacheTtl;
+    private final Map<String, CachedLogin> loginCache;
+
     public UsersManager(DataManager dataManager) {
         super(dataManager, User.class);
         if (usersTokens == null) {
             usersTokens = new ConcurrentHashMap<>();
         }
+
+        byte[] key = new byte[32];
+        new SecureRandom().nextBytes(key);
+        loginKey = new SecretKeySpec(key, LOGIN_HASH_ALGORITHM);
+        loginCacheTtl = Context.getConfig().getLong("web.loginCache.ttl", DEFAULT_LOGIN_CACHE_TTL) * 1000;
+        final int loginCacheSize = Context.getConfig().getInteger("web.loginCache.size", DEFAULT_LOGIN_CACHE_SIZE);
+        loginCache = new LinkedHashMap<String, CachedLogin>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedLogin> eldest) {
+                return size() > loginCacheSize;
+            }
+        };
     }
 
     private void putToken(User user) {
@@ -52,6 +92,11 @@ public class UsersManager extends SimpleObjectManager<User> {
     @Override
     protected void updateCachedItem(User user) {
         User cachedUser = getById(user.getId());
+        if (user.getHashedPassword() == null || !user.getHashedPassword().equals(cachedUser.getHashedPassword())
+                || user.getDisabled() || !equals(user.getEmail(), cachedUser.getEmail())
+                || !equals(user.getLogin(), cachedUser.getLogin())) {
+            removeCachedLogins(user.getId());
+        }
         super.updateCachedItem(user);
         putToken(user);
         if (cachedUser.getToken() != null && !cachedUser.getToken().equals(user.getToken())) {
@@ -62,6 +107,7 @@ public class UsersManager extends SimpleObjectManager<User> {
     @Override
     protected void removeCachedItem(long userId) {
         User cachedUser = getById(userId);
+        removeCachedLogins(userId);
         if (cachedUser != null) {
             String userToken = cachedUser.getToken();
             super.removeCachedItem(userId);
@@ -72,8 +118,8 @@ public class UsersManager extends SimpleObjectManager<User> {
     }
 
     @Override
-    public Set<Long> getManagedItems(long userId) {
-        Set<Long> result = new HashSet<>();
+    public LongSet getManagedItems(long userId) {
+        LongSet result = new LongSet();
         result.addAll(getUserItems(userId));
         result.add(userId);
         return result;
@@ -83,4 +129,61 @@ public class UsersManager extends SimpleObjectManager<User> {
         return usersTokens.get(token);
     }
 
+    private static boolean equals(String first, String second) {
+        return first == null ? second == null : first.equals(second);
+    }
+
+    private String getLoginKey(String email, String password) {
+        try {
+            Mac mac = Mac.getInstance(LOGIN_HASH_ALGORITHM);
+            mac.init(loginKey);
+            mac.update(email.trim().getBytes(StandardCharsets.UTF_8));
+            mac.update((byte) 0);
+            return DatatypeConverter.printBase64Binary(mac.doFinal(password.getBytes(StandardCharsets.UTF_8)));
+        } catch (GeneralSecurityException e) {
+            throw new SecurityException(e);
+        }
+    }
+
+    /**
+     * Returns user id for credentials recently verified by {@link #addCachedLogin}, so repeated requests with
+     * basic authentication skip the database query and password hashing.
+     */
+    public Long getCachedLogin(String email, String password) {
+        if (loginCacheTtl <= 0) {
+            return null;
+        }
+        String key = getLoginKey(email, password);
+        synchronized (loginCache) {
+            CachedLogin login = loginCache.get(key);
+            if (login != null) {
+                if (login.expirationTime > System.currentTimeMillis()) {
+                    return login.userId;
+                }
+                loginCache.remove(key);
+            }
+        }
+        return null;
+    }
+
+    public void addCachedLogin(String email, String password, long userId) {
+        if (loginCacheTtl > 0) {
+            String key = getLoginKey(email, password);
+            synchronized (loginCache) {
+                loginCache.put(key, new CachedLogin(userId, System.currentTimeMillis() + loginCacheTtl));
+            }
+        }
+    }
+
+    private void removeCachedLogins(long userId) {
+        synchronized (loginCache) {
+            Iterator<CachedLogin> iterator = loginCache.values().iterator();
+            while (iterator.hasNext()) {
+                if (iterator.next().userId == userId) {
+                    iterator.remove();
+                }
+            }
+        }
+    }
+
 }
@@ -0,0 +1,200 @@
+/*
+ * Copyright 2017 Anton Tananaev (anton@traccar.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar.geocoder;
+
+import org.traccar.helper.DistanceCalculator;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class GeocoderCache {
+
+    public static final int DEFAULT_PRECISION = 4;
+
+    private static final int MAX_PRECISION = 7;
+    private static final int MAX_SEARCH_CELLS = 10;
+    private static final double METERS_PER_DEGREE = 111320.0;
+    private static final double MIN_LONGITUDE_SCALE = 0.01;
+
+    private static final class Entry {
+
+        private final double latitude;
+        private final double longitude;
+        private final String address;
+        private final long time;
+        private volatile int hits;
+
+        private Entry(double latitude, double longitude, String address, long time, int hits) {
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.address = address;
+            this.time = time;
+            this.hits = hits;
+        }
+
+    }
+
+    private final int size;
+    private final double scale;
+    private final long timeout;
+    private final double radius;
+
+    private final Map<Long, Entry> cells;
+
+    private GeocoderCacheStore store;
+
+    public GeocoderCache(final int size, int precision, long timeout, double radius) {
+        this.size = size;
+        scale = getScale(precision);
+        this.timeout = timeout;
+        this.radius = radius;
+        cells = Collections.synchronizedMap(new LinkedHashMap<Long, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Entry> eldest) {
+                return size() > size;
+            }
+        });
+    }
+
+    /**
+     * Loads most used addresses from the store. Cells are computed again from stored coordinates, because rows could
+     * be stored with different precision.
+     */
+    public void setStore(GeocoderCacheStore store) {
+        for (GeocoderCacheStore.CachedAddress cachedAddress : store.getHottest(size)) {
+            cells.put(getKey(cachedAddress), new Entry(
+                    cachedAddress.getLatitude(), cachedAddress.getLongitude(), cachedAddress.getAddress(),
+                    cachedAddress.getCreated().getTime(), cachedAddress.getHits()));
+        }
+        this.store = store;
+    }
+
+    private static double getScale(int precision) {
+        return Math.pow(10, Math.max(0, Math.min(precision, MAX_PRECISION)));
+    }
+
+    private static long getKey(long latitudeIndex, long longitudeIndex) {
+        return latitudeIndex << 32 | longitudeIndex & 0xffffffffL;
+    }
+
+    public static long getKey(double latitude, double longitude, int precision) {
+        double scale = getScale(precision);
+        return getKey(Math.round(latitude * scale), Math.round(longitude * scale));
+    }
+
+    private long getKey(GeocoderCacheStore.CachedAddress cachedAddress) {
+        return getKey(
+                Math.round(cachedAddress.getLatitude() * scale), Math.round(cachedAddress.getLongitude() * scale));
+    }
+
+    private boolean isExpired(long time, long currentTime) {
+        return timeout > 0 && currentTime - time > timeout;
+    }
+
+    private Entry getEntry(long key, long currentTime, boolean loadStored) {
+        Entry entry = cells.get(key);
+        if (entry != null && isExpired(entry.time, currentTime)) {
+            cells.remove(key);
+            return null;
+        }
+        if (entry == null && loadStored && store != null) {
+            GeocoderCacheStore.CachedAddress cachedAddress = store.get(key);
+            // row stored with another precision can have the same cell number for a different place
+            if (cachedAddress != null && getKey(cachedAddress) == key
+                    && !isExpired(cachedAddress.getCreated().getTime(), currentTime)) {
+                entry = new Entry(cachedAddress.getLatitude(), cachedAddress.getLongitude(),
+                        cachedAddress.getAddress(), cachedAddress.getCreated().getTime(), cachedAddress.getHits());
+                cells.put(key, entry);
+            }
+        }
+        return entry;
+    }
+
+    private void store(long key, Entry entry, long currentTime) {
+        if (store != null) {
+            GeocoderCacheStore.CachedAddress cachedAddress = new GeocoderCacheStore.CachedAddress();
+            cachedAddress.setCell(key);
+            cachedAddress.setLatitude(entry.latitude);
+            cachedAddress.setLongitude(entry.longitude);
+            cachedAddress.setAddress(entry.address);
+            cachedAddress.setCreated(new Date(entry.time));
+            cachedAddress.setLastUsed(new Date(currentTime));
+            cachedAddress.setHits(entry.hits);
+            store.put(cachedAddress);
+        }
+    }
+
+    private String hit(long key, Entry entry, long currentTime) {
+        entry.hits += 1;
+        store(key, entry, currentTime);
+        return entry.address;
+    }
+
+    public String get(double latitude, double longitude) {
+        long currentTime = System.currentTimeMillis();
+        long latitudeIndex = Math.round(latitude * scale);
+        long longitudeIndex = Math.round(longitude * scale);
+
+        long key = getKey(latitudeIndex, longitudeIndex);
+        Entry entry = getEntry(key, currentTime, true);
+        if (entry != null) {
+            return hit(key, entry, currentTime);
+        }
+        if (radius <= 0) {
+            return null;
+        }
+
+        double cellSize = METERS_PER_DEGREE / scale;
+        double longitudeCellSize = cellSize * Math.max(Math.cos(Math.toRadians(latitude)), MIN_LONGITUDE_SCALE);
+        int latitudeCells = (int) Math.min(Math.ceil(radius / cellSize), MAX_SEARCH_CELLS);
+        int longitudeCells = (int) Math.min(Math.ceil(radius / longitudeCellSize), MAX_SEARCH_CELLS);
+
+        Entry nearest = null;
+        long nearestKey = 0;
+        double nearestDistance = radius;
+        for (long i = latitudeIndex - latitudeCells; i <= latitudeIndex + latitudeCells; i++) {
+            for (long j = longitudeIndex - longitudeCells; j <= longitudeIndex + longitudeCells; j++) {
+                long cellKey = getKey(i, j);
+                entry = getEntry(cellKey, currentTime, false);
+                if (entry != null) {
+                    double distance = DistanceCalculator.distance(
+                            latitude, longitude, entry.latitude, entry.longitude);
+                    if (distance <= nearestDistance) {
+                        nearest = entry;
+                        nearestKey = cellKey;
+                        nearestDistance = distance;
+                    }
+                }
+            }
+        }
+        return nearest != null ? hit(nearestKey, nearest, currentTime) : null;
+    }
+
+    public void put(double latitude, double longitude, String address) {
+        long currentTime = System.currentTimeMillis();
+        long key = getKey(Math.round(latitude * scale), Math.round(longitude * scale));
+        Entry entry = new Entry(latitude, longitude, address, currentTime, 1);
+        cells.put(key, entry);
+        store(key, entry, currentTime);
+    }
+
+    public int size() {
+        return cells.size();
+    }
+
+}
@@ -0,0 +1,224 @@
+/*
+ * Copyright 2017 Anton Tananaev (anton@traccar.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar.geocoder;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.traccar.database.QueryBuilder;
+import org.traccar.helper.Log;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class GeocoderCacheStore {
+
+    public static final int DEFAULT_SIZE = 100000;
+
+    private static final long FLUSH_DELAY = 5000;
+    private static final int MAX_PENDING = 10000;
+
+    private static final String QUERY_CREATE =
+            "CREATE TABLE IF NOT EXISTS addresses (cell BIGINT PRIMARY KEY, latitude DOUBLE, longitude DOUBLE, "
+            + "address VARCHAR(512), created TIMESTAMP, lastUsed TIMESTAMP, hits INT)";
+    private static final String QUERY_SELECT = "SELECT * FROM addresses WHERE cell = :cell";
+    private static final String QUERY_SELECT_HOTTEST = "SELECT * FROM addresses ORDER BY hits DESC LIMIT :limit";
+    private static final String QUERY_MERGE =
+            "MERGE INTO addresses (cell, latitude, longitude, address, created, lastUsed, hits) KEY (cell) "
+            + "VALUES (:cell, :latitude, :longitude, :address, :created, :lastUsed, :hits)";
+    private static final String QUERY_COUNT = "SELECT COUNT(*) FROM addresses";
+    private static final String QUERY_EVICT =
+            "DELETE FROM addresses WHERE cell IN (SELECT cell FROM addresses ORDER BY lastUsed LIMIT :limit)";
+
+    public static class CachedAddress {
+
+        private long cell;
+
+        public long getCell() {
+            return cell;
+        }
+
+        public void setCell(long cell) {
+            this.cell = cell;
+        }
+
+        private double latitude;
+
+        public double getLatitude() {
+            return latitude;
+        }
+
+        public void setLatitude(double latitude) {
+            this.latitude = latitude;
+        }
+
+        private double longitude;
+
+        public double getLongitude() {
+            return longitude;
+        }
+
+        public void setLongitude(double longitude) {
+            this.longitude = longitude;
+        }
+
+        private String address;
+
+        public String getAddress() {
+            return address;
+        }
+
+        public void setAddress(String address) {
+            this.address = address;
+        }
+
+        private Date created;
+
+        public Date getCreated() {
+            return created;
+        }
+
+        public void setCreated(Date created) {
+            this.created = created;
+        }
+
+        private Date lastUsed;
+
+        public Date getLastUsed() {
+            return lastUsed;
+        }
+
+        public void setLastUsed(Date lastUsed) {
+            this.lastUsed = lastUsed;
+        }
+
+        private int hits;
+
+        public int getHits() {
+            return hits;
+        }
+
+        public void setHits(int hits) {
+            this.hits = hits;
+        }
+
+    }
+
+    private final JdbcDataSource dataSource;
+    private final int size;
+
+    private final Map<Long, CachedAddress> pending = new ConcurrentHashMap<>();
+
+    private final Timer timer = new Timer(true);
+
+    public GeocoderCacheStore(String file, int size) throws SQLException {
+        this.size = size;
+        dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:" + file + ";DB_CLOSE_DELAY=-1");
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            statement.execute(QUERY_CREATE);
+        }
+
+        timer.scheduleAtFixedRate(new TimerTask() {
+            @Override
+            public void run() {
+                flush();
+            }
+        }, FLUSH_DELAY, FLUSH_DELAY);
+    }
+
+    public Collection<CachedAddress> getHottest(int limit) {
+        try {
+            return QueryBuilder.create(dataSource, QUERY_SELECT_HOTTEST)
+                    .setInteger("limit", limit)
+                    .executeQuery(CachedAddress.class);
+        } catch (SQLException error) {
+            Log.warning(error);
+            return new ArrayList<>();
+        }
+    }
+
+    public CachedAddress get(long cell) {
+        CachedAddress cachedAddress = pending.get(cell);
+        if (cachedAddress != null) {
+            return cachedAddress;
+        }
+        try {
+            return QueryBuilder.create(dataSource, QUERY_SELECT)
+                    .setLong("cell", cell)
+                    .executeQuerySingle(CachedAddress.class);
+        } catch (SQLException error) {
+            Log.warning(error);
+            return null;
+        }
+    }
+
+    public void put(CachedAddress cachedAddress) {
+        if (pending.size() < MAX_PENDING || pending.containsKey(cachedAddress.getCell())) {
+            pending.put(cachedAddress.getCell(), cachedAddress);
+        }
+    }
+
+    private int count() throws SQLException {
+        try (Connection connection = dataSource.getConnection();
+                Statement statement = connection.createStatement();
+                ResultSet resultSet = statement.executeQuery(QUERY_COUNT)) {
+            return resultSet.next() ? resultSet.getInt(1) : 0;
+        }
+    }
+
+    public synchronized void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        try {
+            QueryBuilder queryBuilder = QueryBuilder.create(dataSource, QUERY_MERGE);
+            Iterator<CachedAddress> iterator = pending.values().iterator();
+            while (iterator.hasNext()) {
+                CachedAddress cachedAddress = iterator.next();
+                iterator.remove();
+                queryBuilder.setObject(cachedAddress).addBatch();
+            }
+            queryBuilder.executeBatch();
+
+            int count = count();
+            if (count > size) {
+                QueryBuilder.create(dataSource, QUERY_EVICT)
+                        .setInteger("limit", count - size)
+                        .executeUpdate();
+            }
+        } catch (SQLException error) {
+            Log.warning(error);
+        }
+    }
+
+    /**
+     * Stops periodic writes and stores pending entries.
+     */
+    public void close() {
+        timer.cancel();
+        flush();
+    }
+
+}
@@ -17,6 +17,7 @@ package org.traccar.geocoder;
 
 import com.ning.http.client.AsyncCompletionHandler;
 import com.ning.http.client.Response;
+import org.traccar.Config;
 import org.traccar.Context;
 import org.traccar.helper.Log;
 
@@ -25,29 +26,94 @@ import javax.json.JsonObject;
 import javax.json.JsonReader;
 
 import java.io.IOException;
-import java.util.AbstractMap;
-import java.util.Collections;
-import java.util.LinkedHashMap;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 public abstract class JsonGeocoder implements Geocoder {
 
+    public static final int DEFAULT_QUEUE_SIZE = 1000;
+
+    private static final long REJECTED_LOG_INTERVAL = 60000;
+
     private final String url;
     private final AddressFormat addressFormat;
 
-    private Map<Map.Entry<Double, Double>, String> cache;
+    private GeocoderCache cache;
+
+    private int precision = GeocoderCache.DEFAULT_PRECISION;
+    private int maxRequests;
+    private int queueSize;
+
+    private final Map<Long, Request> requests = new HashMap<>();
+    private final Queue<Request> waitingRequests = new LinkedList<>();
+    private int activeRequests;
+    private final ThreadLocal<Boolean> sending = new ThreadLocal<>();
+
+    private final AtomicInteger rejectedCount = new AtomicInteger();
+    private final AtomicLong rejectedLogTime = new AtomicLong();
+
+    private final class Request implements ReverseGeocoderCallback {
+
+        private final long key;
+        private final double latitude;
+        private final double longitude;
+        private final List<ReverseGeocoderCallback> callbacks = new LinkedList<>();
+        private final AtomicBoolean completed = new AtomicBoolean();
+        private long startTime;
+
+        private Request(long key, double latitude, double longitude) {
+            this.key = key;
+            this.latitude = latitude;
+            this.longitude = longitude;
+        }
+
+        @Override
+        public void onSuccess(String address) {
+            if (complete(this)) {
+                for (ReverseGeocoderCallback callback : callbacks) {
+                    callback.onSuccess(address);
+                }
+                sendWaitingRequests();
+            }
+        }
 
-    public JsonGeocoder(String url, final int cacheSize, AddressFormat addressFormat) {
+        @Override
+        public void onFailure(Throwable e) {
+            if (complete(this)) {
+                for (ReverseGeocoderCallback callback : callbacks) {
+                    callback.onFailure(e);
+                }
+                sendWaitingRequests();
+            }
+        }
+
+    }
+
+    public JsonGeocoder(String url, int cacheSize, AddressFormat addressFormat) {
         this.url = url;
         this.addressFormat = addressFormat;
+        long cacheTimeout = 0;
+        double cacheRadius = 0;
+        Config config = Context.getConfig();
+        if (config != null) {
+            precision = config.getInteger("geocoder.cachePrecision", GeocoderCache.DEFAULT_PRECISION);
+            maxRequests = config.getInteger("geocoder.maxRequests");
+            queueSize = config.getInteger("geocoder.queueSize", DEFAULT_QUEUE_SIZE);
+            cacheTimeout = config.getLong("geocoder.cacheTimeout") * 1000;
+            cacheRadius = config.getDouble("geocoder.cacheRadius");
+        }
         if (cacheSize > 0) {
-            this.cache = Collections.synchronizedMap(new LinkedHashMap<Map.Entry<Double, Double>, String>() {
-                @Override
-                protected boolean removeEldestEntry(Map.Entry eldest) {
-                    return size() > cacheSize;
-                }
-            });
+            this.cache = new GeocoderCache(cacheSize, precision, cacheTimeout, cacheRadius);
+            if (Context.getGeocoderCacheStore() != null) {
+                cache.setStore(Context.getGeocoderCacheStore());
+            }
         }
     }
 
@@ -58,7 +124,7 @@ public abstract class JsonGeocoder implements Geocoder {
             if (address != null) {
                 String formattedAddress = addressFormat.format(address);
                 if (cache != null) {
-                    cache.put(new AbstractMap.SimpleImmutableEntry<>(latitude, longitude), formattedAddress);
+                    cache.put(latitude, longitude, formattedAddress);
                 }
                 if (callback != null) {
                     callback.onSuccess(formattedAddress);
@@ -79,7 +145,10 @@ public abstract class JsonGeocoder implements Geocoder {
             final double latitude, final double longitude, final ReverseGeocoderCallback callback) {
 
         if (cache != null) {
-            String cachedAddress = cache.get(new AbstractMap.SimpleImmutableEntry<>(latitude, longitude));
+            String cachedAddress = cache.get(latitude, longitude);
+            if (Context.getStatisticsManager() != null) {
+                Context.getStatisticsManager().registerGeocoderCache(cachedAddress != null);
+            }
             if (cachedAddress != null) {
                 if (callback != null) {
                     callback.onSuccess(cachedAddress);
@@ -89,18 +158,42 @@ public abstract class JsonGeocoder implements Geocoder {
         }
 
         if (callback != null) {
-            Context.getAsyncHttpClient().prepareGet(String.format(url, latitude, longitude))
-                    .execute(new AsyncCompletionHandler() {
-                @Override
-                public Object onCompleted(Response response) throws Exception {
-                    return handleResponse(latitude, longitude, response, callback);
+            long key = GeocoderCache.getKey(latitude, longitude, precision);
+            Request request;
+            boolean send = false;
+            synchronized (requests) {
+                request = requests.get(key);
+                if (request != null) {
+                    // Identical lookup is already in progress, so wait for its result
+                    request.callbacks.add(callback);
+                    if (Context.getStatisticsManager() != null) {
+                        Context.getStatisticsManager().registerGeocoderCoalesced();
+                    }
+                    return null;
                 }
-
-                @Override
-                public void onThrowable(Throwable t) {
-                    callback.onFailure(t);
+                request = new Request(key, latitude, longitude);
+                if (maxRequests <= 0 || activeRequests < maxRequests) {
+                    activeRequests += 1;
+                    send = true;
+                } else if (waitingRequests.size() < queueSize) {
+                    waitingRequests.add(request);
+                } else {
+                    request = null;
                 }
-            });
+                if (request != null) {
+                    request.callbacks.add(callback);
+                    requests.put(key, request);
+                }
+            }
+            if (request == null) {
+                if (Context.getStatisticsManager() != null) {
+                    Context.getStatisticsManager().registerGeocoderRejected();
+                }
+                logRejected();
+                callback.onFailure(new GeocoderException("Too many geocoder requests"));
+            } else if (send) {
+                sendRequest(request);
+            }
         } else {
             try {
                 Response response = Context.getAsyncHttpClient()
@@ -113,6 +206,82 @@ public abstract class JsonGeocoder implements Geocoder {
         return null;
     }
 
+    private void logRejected() {
+        long currentTime = System.currentTimeMillis();
+        int count = rejectedCount.incrementAndGet();
+        long lastTime = rejectedLogTime.get();
+        if (currentTime - lastTime >= REJECTED_LOG_INTERVAL && rejectedLogTime.compareAndSet(lastTime, currentTime)) {
+            rejectedCount.addAndGet(-count);
+            Log.warning(count + " geocoder requests rejected, too many requests in progress");
+        }
+    }
+
+    private void sendRequest(final Request request) {
+        request.startTime = System.currentTimeMillis();
+        try {
+            Context.getAsyncHttpClient().prepareGet(String.format(url, request.latitude, request.longitude))
+                    .execute(new AsyncCompletionHandler() {
+                @Override
+                public Object onCompleted(Response response) throws Exception {
+                    try {
+                        return handleResponse(request.latitude, request.longitude, response, request);
+                    } catch (IOException | RuntimeException error) {
+                        request.onFailure(error);
+                        return null;
+                    }
+                }
+
+                @Override
+                public void onThrowable(Throwable t) {
+                    request.onFailure(t);
+                }
+            });
+        } catch (RuntimeException error) {
+            // release the request slot and waiting callbacks if the request could not be started
+            request.onFailure(error);
+        }
+    }
+
+    private boolean complete(Request request) {
+        if (!request.completed.compareAndSet(false, true)) {
+            return false;
+        }
+        synchronized (requests) {
+            requests.remove(request.key);
+            activeRequests -= 1;
+        }
+        if (Context.getStatisticsManager() != null) {
+            Context.getStatisticsManager().registerGeocoderResponse(System.currentTimeMillis() - request.startTime);
+        }
+        return true;
+    }
+
+    private void sendWaitingRequests() {
+        if (sending.get() != null) {
+            // requests failing synchronously complete inside the loop below, which picks up the next ones
+            return;
+        }
+        sending.set(Boolean.TRUE);
+        try {
+            while (true) {
+                Request nextRequest;
+                synchronized (requests) {
+                    if (maxRequests > 0 && activeRequests >= maxRequests) {
+                        return;
+                    }
+                    nextRequest = waitingRequests.poll();
+                    if (nextRequest == null) {
+                        return;
+                    }
+                    activeRequests += 1;
+                }
+                sendRequest(nextRequest);
+            }
+        } finally {
+            sending.remove();
+        }
+    }
+
     public abstract Address parseAddress(JsonObject json);
 
 }
@@ -37,11 +37,18 @@ public class GeofenceCircle extends GeofenceGeometry {
         this.centerLatitude = latitude;
         this.centerLongitude = longitude;
         this.radius = radius;
+        calculateBounds();
+    }
+
+    private void calculateBounds() {
+        resetBounds();
+        extendBounds(getBox(centerLatitude, centerLongitude, radius));
     }
 
     @Override
     public boolean containsPoint(double latitude, double longitude) {
-        return DistanceCalculator.distance(centerLatitude, centerLongitude, latitude, longitude) <= radius;
+        return boundsContain(latitude, longitude)
+                && DistanceCalculator.distance(centerLatitude, centerLongitude, latitude, longitude) <= radius;
     }
 
     @Override
@@ -90,5 +97,6 @@ public class GeofenceCircle extends GeofenceGeometry {
         } catch (NumberFormatException e) {
             throw new ParseException(commaTokens[1] + " is not a double", 0);
         }
+        calculateBounds();
     }
 }
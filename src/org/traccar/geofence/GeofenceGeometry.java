@@ -19,32 +19,85 @@ import java.text.ParseException;
 
 public abstract class GeofenceGeometry {
 
+    private static final double EARTH_RADIUS = 6378137;
+
+    private double minLatitude;
+    private double maxLatitude;
+    private double minLongitude;
+    private double maxLongitude;
+
     public abstract boolean containsPoint(double latitude, double longitude);
 
-    public abstract String toWkt();
+    public double getMinLatitude() {
+        return minLatitude;
+    }
 
-    public abstract void fromWkt(String wkt) throws ParseException;
+    public double getMaxLatitude() {
+        return maxLatitude;
+    }
 
-    public static class Coordinate {
+    /**
+     * Longitude bounds can exceed [-180, 180] range for geometries crossing the antimeridian.
+     */
+    public double getMinLongitude() {
+        return minLongitude;
+    }
 
-        private double lat;
-        private double lon;
+    public double getMaxLongitude() {
+        return maxLongitude;
+    }
 
-        public double getLat() {
-            return lat;
+    /**
+     * Quick check whether point can belong to the geometry.
+     */
+    public boolean boundsContain(double latitude, double longitude) {
+        if (latitude < minLatitude || latitude > maxLatitude) {
+            return false;
         }
+        return longitude >= minLongitude && longitude <= maxLongitude
+                || longitude + 360 >= minLongitude && longitude + 360 <= maxLongitude
+                || longitude - 360 >= minLongitude && longitude - 360 <= maxLongitude;
+    }
 
-        public void setLat(double lat) {
-            this.lat = lat;
-        }
+    protected void resetBounds() {
+        minLatitude = Double.POSITIVE_INFINITY;
+        maxLatitude = Double.NEGATIVE_INFINITY;
+        minLongitude = Double.POSITIVE_INFINITY;
+        maxLongitude = Double.NEGATIVE_INFINITY;
+    }
 
-        public double getLon() {
-            return lon;
-        }
+    protected void extendBounds(double latitude, double longitude) {
+        minLatitude = Math.min(minLatitude, latitude);
+        maxLatitude = Math.max(maxLatitude, latitude);
+        minLongitude = Math.min(minLongitude, longitude);
+        maxLongitude = Math.max(maxLongitude, longitude);
+    }
 
-        public void setLon(double lon) {
-            this.lon = lon;
+    /**
+     * Returns minimum latitude, maximum latitude, minimum longitude and maximum longitude of a box containing all
+     * points within given distance in meters from the center.
+     */
+    protected static double[] getBox(double latitude, double longitude, double distance) {
+        double latitudeDelta = Math.toDegrees(distance / EARTH_RADIUS) * 1.001;
+        double maxAbsLatitude = Math.abs(latitude) + latitudeDelta;
+        if (maxAbsLatitude >= 90) {
+            return new double[] {
+                    Math.max(latitude - latitudeDelta, -90), Math.min(latitude + latitudeDelta, 90),
+                    longitude - 180, longitude + 180};
         }
+        double longitudeDelta = Math.min(latitudeDelta / Math.cos(Math.toRadians(maxAbsLatitude)), 180);
+        return new double[] {
+                latitude - latitudeDelta, latitude + latitudeDelta,
+                longitude - longitudeDelta, longitude + longitudeDelta};
+    }
+
+    protected void extendBounds(double[] box) {
+        extendBounds(box[0], box[2]);
+        extendBounds(box[1], box[3]);
     }
 
+    public abstract String toWkt();
+
+    public abstract void fromWkt(String wkt) throws ParseException;
+
 }
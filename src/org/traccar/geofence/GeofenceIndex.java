@@ -0,0 +1,133 @@
+/*
+ * Copyright 2017 Anton Tananaev (anton@traccar.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar.geofence;
+
+import org.traccar.helper.LongObjectMap;
+import org.traccar.helper.LongSet;
+
+/**
+ * Uniform grid over geofence bounding boxes. Returns candidate geofences for a point, which still have to be checked
+ * with {@link GeofenceGeometry#containsPoint}. Grid is rebuilt lazily on the first lookup after a change.
+ */
+public class GeofenceIndex {
+
+    private static final int MAX_CELLS = 1024;
+
+    private final int rows;
+    private final int columns;
+    private final double cellHeight;
+    private final double cellWidth;
+
+    private final LongObjectMap<double[]> bounds = new LongObjectMap<>();
+
+    private static final class Grid {
+        private final LongObjectMap<long[]> cells;
+        private final long[] global;
+
+        private Grid(LongObjectMap<long[]> cells, long[] global) {
+            this.cells = cells;
+            this.global = global;
+        }
+    }
+
+    private volatile Grid grid;
+
+    public GeofenceIndex(double cellSize) {
+        rows = Math.max((int) Math.round(180 / cellSize), 1);
+        columns = Math.max((int) Math.round(360 / cellSize), 1);
+        cellHeight = 180.0 / rows;
+        cellWidth = 360.0 / columns;
+    }
+
+    private int getRow(double latitude) {
+        return Math.max(Math.min((int) Math.floor((latitude + 90) / cellHeight), rows - 1), 0);
+    }
+
+    private int getColumn(double longitude) {
+        int column = (int) Math.floor((longitude + 180) / cellWidth) % columns;
+        return column < 0 ? column + columns : column;
+    }
+
+    private static long getKey(int row, int column) {
+        return (long) row << 32 | column;
+    }
+
+    public synchronized void put(long id, GeofenceGeometry geometry) {
+        bounds.put(id, new double[] {
+                geometry.getMinLatitude(), geometry.getMaxLatitude(),
+                geometry.getMinLongitude(), geometry.getMaxLongitude()});
+        grid = null;
+    }
+
+    public synchronized void remove(long id) {
+        if (bounds.remove(id) != null) {
+            grid = null;
+        }
+    }
+
+    private synchronized Grid build() {
+        if (grid != null) {
+            return grid;
+        }
+        LongObjectMap<LongSet> cellSets = new LongObjectMap<>();
+        LongSet globalSet = new LongSet();
+        for (long id : bounds.keys()) {
+            double[] box = bounds.get(id);
+            int minRow = getRow(box[0]);
+            int maxRow = getRow(box[1]);
+            long columnCount = box[3] - box[2] >= 360 ? columns
+                    : (long) Math.floor((box[3] + 180) / cellWidth) - (long) Math.floor((box[2] + 180) / cellWidth) + 1;
+            columnCount = Math.min(columnCount, columns);
+            if ((maxRow - minRow + 1) * columnCount > MAX_CELLS) {
+                globalSet.add(id);
+                continue;
+            }
+            int minColumn = getColumn(box[2]);
+            for (int row = minRow; row <= maxRow; row++) {
+                for (int i = 0; i < columnCount; i++) {
+                    long key = getKey(row, (minColumn + i) % columns);
+                    LongSet cell = cellSets.get(key);
+                    if (cell == null) {
+                        cell = new LongSet();
+                        cellSets.put(key, cell);
+                    }
+                    cell.add(id);
+                }
+            }
+        }
+        LongObjectMap<long[]> cells = new LongObjectMap<>(cellSets.size());
+        for (long key : cellSets.keys()) {
+            LongSet cell = cellSets.get(key);
+            cell.addAll(globalSet);
+            cells.put(key, cell.toLongArray());
+        }
+        grid = new Grid(cells, globalSet.toLongArray());
+        return grid;
+    }
+
+    /**
+     * Returns identifiers of geofences with bounding box covering grid cell of the point.
+     */
+    public long[] getItems(double latitude, double longitude) {
+        Grid current = grid;
+        if (current == null) {
+            current = build();
+        }
+        long[] result = current.cells.get(getKey(getRow(latitude), getColumn(longitude)));
+        return result != null ? result : current.global;
+    }
+
+}
@@ -16,7 +16,6 @@
 package org.traccar.geofence;
 
 import java.text.ParseException;
-import java.util.ArrayList;
 
 public class GeofencePolygon extends GeofenceGeometry {
 
@@ -27,55 +26,106 @@ public class GeofencePolygon extends GeofenceGeometry {
         fromWkt(wkt);
     }
 
-    private ArrayList<Coordinate> coordinates;
+    private static final int INDEX_MIN_CORNERS = 64;
+    private static final int INDEX_CORNERS_PER_BUCKET = 4;
+
+    private double[] latitudes;
+    private double[] longitudes;
+    private double[] normalizedLongitudes;
 
     private double[] constant;
     private double[] multiple;
 
     private boolean needNormalize = false;
 
+    private double bucketWidth;
+    private int[] bucketStart;
+    private int[] bucketEdges;
+
     private void precalc() {
-        if (coordinates == null) {
+        if (latitudes == null) {
             return;
         }
 
-        int polyCorners = coordinates.size();
+        int polyCorners = latitudes.length;
         int i;
         int j = polyCorners - 1;
 
-        if (constant != null) {
-            constant = null;
-        }
-        if (multiple != null) {
-            multiple = null;
-        }
-
-        constant = new double[polyCorners];
-        multiple = new double[polyCorners];
-
         boolean hasNegative = false;
         boolean hasPositive = false;
         for (i = 0; i < polyCorners; i++) {
-            if (coordinates.get(i).getLon() > 90) {
+            if (longitudes[i] > 90) {
                 hasPositive = true;
-            } else if (coordinates.get(i).getLon() < -90) {
+            } else if (longitudes[i] < -90) {
                 hasNegative = true;
             }
         }
         needNormalize = hasPositive && hasNegative;
 
+        normalizedLongitudes = new double[polyCorners];
+        resetBounds();
+        for (i = 0; i < polyCorners; i++) {
+            normalizedLongitudes[i] = normalizeLon(longitudes[i]);
+            extendBounds(latitudes[i], normalizedLongitudes[i]);
+        }
+
+        constant = new double[polyCorners];
+        multiple = new double[polyCorners];
+
+        double[] lon = normalizedLongitudes;
         for (i = 0; i < polyCorners; j = i++) {
-            if (normalizeLon(coordinates.get(j).getLon()) == normalizeLon(coordinates.get(i).getLon())) {
-                constant[i] = coordinates.get(i).getLat();
+            if (lon[j] == lon[i]) {
+                constant[i] = latitudes[i];
                 multiple[i] = 0;
             } else {
-                constant[i] = coordinates.get(i).getLat()
-                        - (normalizeLon(coordinates.get(i).getLon()) * coordinates.get(j).getLat())
-                        / (normalizeLon(coordinates.get(j).getLon()) - normalizeLon(coordinates.get(i).getLon()))
-                        + (normalizeLon(coordinates.get(i).getLon()) * coordinates.get(i).getLat())
-                        / (normalizeLon(coordinates.get(j).getLon()) - normalizeLon(coordinates.get(i).getLon()));
-                multiple[i] = (coordinates.get(j).getLat() - coordinates.get(i).getLat())
-                        / (normalizeLon(coordinates.get(j).getLon()) - normalizeLon(coordinates.get(i).getLon()));
+                constant[i] = latitudes[i]
+                        - (lon[i] * latitudes[j]) / (lon[j] - lon[i])
+                        + (lon[i] * latitudes[i]) / (lon[j] - lon[i]);
+                multiple[i] = (latitudes[j] - latitudes[i]) / (lon[j] - lon[i]);
+            }
+        }
+
+        if (polyCorners >= INDEX_MIN_CORNERS && getMaxLongitude() > getMinLongitude()) {
+            buildIndex();
+        } else {
+            bucketStart = null;
+            bucketEdges = null;
+        }
+    }
+
+    private int getBucket(double longitude) {
+        int bucket = (int) ((longitude - getMinLongitude()) / bucketWidth);
+        return Math.max(Math.min(bucket, bucketStart.length - 2), 0);
+    }
+
+    /**
+     * Splits longitude range into buckets listing edges that overlap them, so a point is tested only against edges
+     * from its bucket.
+     */
+    private void buildIndex() {
+        int polyCorners = latitudes.length;
+        int bucketCount = polyCorners / INDEX_CORNERS_PER_BUCKET;
+        bucketWidth = (getMaxLongitude() - getMinLongitude()) / bucketCount;
+        bucketStart = new int[bucketCount + 1];
+
+        for (int pass = 0; pass < 2; pass++) {
+            int[] offsets = pass == 0 ? null : bucketStart.clone();
+            for (int i = 0, j = polyCorners - 1; i < polyCorners; j = i++) {
+                int first = getBucket(Math.min(normalizedLongitudes[i], normalizedLongitudes[j]));
+                int last = getBucket(Math.max(normalizedLongitudes[i], normalizedLongitudes[j]));
+                for (int bucket = first; bucket <= last; bucket++) {
+                    if (offsets == null) {
+                        bucketStart[bucket + 1] += 1;
+                    } else {
+                        bucketEdges[offsets[bucket]++] = i;
+                    }
+                }
+            }
+            if (pass == 0) {
+                for (int bucket = 0; bucket < bucketCount; bucket++) {
+                    bucketStart[bucket + 1] += bucketStart[bucket];
+                }
+                bucketEdges = new int[bucketStart[bucketCount]];
             }
         }
     }
@@ -87,21 +137,31 @@ public class GeofencePolygon extends GeofenceGeometry {
         return lon;
     }
 
+    private boolean crosses(int i, double longitudeNorm, double latitude) {
+        int j = i > 0 ? i - 1 : latitudes.length - 1;
+        double lonI = normalizedLongitudes[i];
+        double lonJ = normalizedLongitudes[j];
+        return (lonI < longitudeNorm && lonJ >= longitudeNorm || lonJ < longitudeNorm && lonI >= longitudeNorm)
+                && longitudeNorm * multiple[i] + constant[i] < latitude;
+    }
+
     @Override
     public boolean containsPoint(double latitude, double longitude) {
+        if (!boundsContain(latitude, longitude)) {
+            return false;
+        }
 
-        int polyCorners = coordinates.size();
-        int i;
-        int j = polyCorners - 1;
         double longitudeNorm = normalizeLon(longitude);
         boolean oddNodes = false;
 
-        for (i = 0; i < polyCorners; j = i++) {
-            if (normalizeLon(coordinates.get(i).getLon()) < longitudeNorm
-                    && normalizeLon(coordinates.get(j).getLon()) >= longitudeNorm
-                    || normalizeLon(coordinates.get(j).getLon()) < longitudeNorm
-                    && normalizeLon(coordinates.get(i).getLon()) >= longitudeNorm) {
-                oddNodes ^= longitudeNorm * multiple[i] + constant[i] < latitude;
+        if (bucketStart != null) {
+            int bucket = getBucket(longitudeNorm);
+            for (int k = bucketStart[bucket]; k < bucketStart[bucket + 1]; k++) {
+                oddNodes ^= crosses(bucketEdges[k], longitudeNorm, latitude);
+            }
+        } else {
+            for (int i = 0; i < latitudes.length; i++) {
+                oddNodes ^= crosses(i, longitudeNorm, latitude);
             }
         }
         return oddNodes;
@@ -111,10 +171,10 @@ public class GeofencePolygon extends GeofenceGeometry {
     public String toWkt() {
         StringBuilder buf = new StringBuilder();
         buf.append("POLYGON ((");
-        for (Coordinate coordinate : coordinates) {
-            buf.append(String.valueOf(coordinate.getLat()));
+        for (int i = 0; i < latitudes.length; i++) {
+            buf.append(String.valueOf(latitudes[i]));
             buf.append(" ");
-            buf.append(String.valueOf(coordinate.getLon()));
+            buf.append(String.valueOf(longitudes[i]));
             buf.append(", ");
         }
         return buf.substring(0, buf.length() - 2) + "))";
@@ -122,12 +182,6 @@ public class GeofencePolygon extends GeofenceGeometry {
 
     @Override
     public void fromWkt(String wkt) throws ParseException {
-        if (coordinates == null) {
-            coordinates = new ArrayList<>();
-        } else {
-            coordinates.clear();
-        }
-
         if (!wkt.startsWith("POLYGON")) {
             throw new ParseException("Mismatch geometry type", 0);
         }
@@ -140,24 +194,26 @@ public class GeofencePolygon extends GeofenceGeometry {
             throw new ParseException("Not valid content", 0);
         }
 
-        for (String commaToken : commaTokens) {
-            String[] tokens = commaToken.trim().split("\\s");
+        double[] newLatitudes = new double[commaTokens.length];
+        double[] newLongitudes = new double[commaTokens.length];
+        for (int i = 0; i < commaTokens.length; i++) {
+            String[] tokens = commaTokens[i].trim().split("\\s");
             if (tokens.length != 2) {
-                throw new ParseException("Here must be two coordinates: " + commaToken, 0);
+                throw new ParseException("Here must be two coordinates: " + commaTokens[i], 0);
             }
-            Coordinate coordinate = new Coordinate();
             try {
-                coordinate.setLat(Double.parseDouble(tokens[0]));
+                newLatitudes[i] = Double.parseDouble(tokens[0]);
             } catch (NumberFormatException e) {
                 throw new ParseException(tokens[0] + " is not a double", 0);
             }
             try {
-                coordinate.setLon(Double.parseDouble(tokens[1]));
+                newLongitudes[i] = Double.parseDouble(tokens[1]);
             } catch (NumberFormatException e) {
                 throw new ParseException(tokens[1] + " is not a double", 0);
             }
-            coordinates.add(coordinate);
         }
+        latitudes = newLatitudes;
+        longitudes = newLongitudes;
         precalc();
     }
 
@@ -17,29 +17,53 @@
 package org.traccar.geofence;
 
 import java.text.ParseException;
-import java.util.ArrayList;
 
 import org.traccar.helper.DistanceCalculator;
 
 public class GeofencePolyline extends GeofenceGeometry {
 
-    private ArrayList<Coordinate> coordinates;
+    private double[] latitudes;
+    private double[] longitudes;
     private double distance;
 
     public GeofencePolyline() {
     }
 
     public GeofencePolyline(String wkt, double distance) throws ParseException {
-        fromWkt(wkt);
         this.distance = distance;
+        fromWkt(wkt);
+    }
+
+    /**
+     * Point close to a segment is within segment length plus the distance from both of its ends.
+     */
+    private void calculateBounds() {
+        resetBounds();
+        double previousLon = longitudes[0];
+        extendBounds(getBox(latitudes[0], previousLon, distance));
+        for (int i = 1; i < latitudes.length; i++) {
+            // unwrap longitude to keep bounds continuous across the antimeridian
+            double lon = longitudes[i] + Math.round((previousLon - longitudes[i]) / 360) * 360;
+            double length = DistanceCalculator.distance(
+                    latitudes[i - 1], longitudes[i - 1], latitudes[i], longitudes[i]);
+            double radius = length + distance;
+            double[] startBox = getBox(latitudes[i - 1], previousLon, radius);
+            double[] endBox = getBox(latitudes[i], lon, radius);
+            extendBounds(new double[] {
+                    Math.max(startBox[0], endBox[0]), Math.min(startBox[1], endBox[1]),
+                    Math.max(startBox[2], endBox[2]), Math.min(startBox[3], endBox[3])});
+            previousLon = lon;
+        }
     }
 
     @Override
     public boolean containsPoint(double latitude, double longitude) {
-        for (int i = 1; i < coordinates.size(); i++) {
-            if (DistanceCalculator.distanceToLine(
-                    latitude, longitude, coordinates.get(i - 1).getLat(), coordinates.get(i - 1).getLon(),
-                    coordinates.get(i).getLat(), coordinates.get(i).getLon()) <= distance) {
+        if (!boundsContain(latitude, longitude)) {
+            return false;
+        }
+        for (int i = 1; i < latitudes.length; i++) {
+            if (DistanceCalculator.distanceToLine(latitude, longitude,
+                    latitudes[i - 1], longitudes[i - 1], latitudes[i], longitudes[i]) <= distance) {
                 return true;
             }
         }
@@ -50,10 +74,10 @@ public class GeofencePolyline extends GeofenceGeometry {
     public String toWkt() {
         StringBuilder buf = new StringBuilder();
         buf.append("LINESTRING (");
-        for (Coordinate coordinate : coordinates) {
-            buf.append(String.valueOf(coordinate.getLat()));
+        for (int i = 0; i < latitudes.length; i++) {
+            buf.append(String.valueOf(latitudes[i]));
             buf.append(" ");
-            buf.append(String.valueOf(coordinate.getLon()));
+            buf.append(String.valueOf(longitudes[i]));
             buf.append(", ");
         }
         return buf.substring(0, buf.length() - 2) + ")";
@@ -61,12 +85,6 @@ public class GeofencePolyline extends GeofenceGeometry {
 
     @Override
     public void fromWkt(String wkt) throws ParseException {
-        if (coordinates == null) {
-            coordinates = new ArrayList<>();
-        } else {
-            coordinates.clear();
-        }
-
         if (!wkt.startsWith("LINESTRING")) {
             throw new ParseException("Mismatch geometry type", 0);
         }
@@ -79,29 +97,34 @@ public class GeofencePolyline extends GeofenceGeometry {
             throw new ParseException("Not valid content", 0);
         }
 
-        for (String commaToken : commaTokens) {
-            String[] tokens = commaToken.trim().split("\\s");
+        double[] newLatitudes = new double[commaTokens.length];
+        double[] newLongitudes = new double[commaTokens.length];
+        for (int i = 0; i < commaTokens.length; i++) {
+            String[] tokens = commaTokens[i].trim().split("\\s");
             if (tokens.length != 2) {
-                throw new ParseException("Here must be two coordinates: " + commaToken, 0);
+                throw new ParseException("Here must be two coordinates: " + commaTokens[i], 0);
             }
-            Coordinate coordinate = new Coordinate();
             try {
-                coordinate.setLat(Double.parseDouble(tokens[0]));
+                newLatitudes[i] = Double.parseDouble(tokens[0]);
             } catch (NumberFormatException e) {
                 throw new ParseException(tokens[0] + " is not a double", 0);
             }
             try {
-                coordinate.setLon(Double.parseDouble(tokens[1]));
+                newLongitudes[i] = Double.parseDouble(tokens[1]);
             } catch (NumberFormatException e) {
                 throw new ParseException(tokens[1] + " is not a double", 0);
             }
-            coordinates.add(coordinate);
         }
-
+        latitudes = newLatitudes;
+        longitudes = newLongitudes;
+        calculateBounds();
     }
 
     public void setDistance(double distance) {
         this.distance = distance;
+        if (latitudes != null) {
+            calculateBounds();
+        }
     }
 
 }
@@ -0,0 +1,166 @@
+/*
+ * Copyright 2017 Anton Tananaev (anton@traccar.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar.helper;
+
+import java.util.ArrayList;
+import java.util.Collection;
+
+/**
+ * Open addressing hash map with primitive long keys. Null values are not supported. Not thread safe.
+ */
+public class LongObjectMap<V> {
+
+    private static final int MIN_CAPACITY = 8;
+
+    private long[] keys;
+    private Object[] values;
+    private int size;
+
+    public LongObjectMap() {
+        this(MIN_CAPACITY);
+    }
+
+    public LongObjectMap(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        while (capacity * 3 / 4 < expectedSize) {
+            capacity <<= 1;
+        }
+        keys = new long[capacity];
+        values = new Object[capacity];
+    }
+
+    public LongObjectMap(LongObjectMap<? extends V> map) {
+        keys = map.keys.clone();
+        values = map.values.clone();
+        size = map.size;
+    }
+
+    private static int hash(long key) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ hash >>> 32);
+    }
+
+    private int index(long key) {
+        int mask = keys.length - 1;
+        int index = hash(key) & mask;
+        while (values[index] != null && keys[index] != key) {
+            index = index + 1 & mask;
+        }
+        return index;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean containsKey(long key) {
+        return values[index(key)] != null;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        return (V) values[index(key)];
+    }
+
+    @SuppressWarnings("unchecked")
+    public V put(long key, V value) {
+        if (value == null) {
+            throw new IllegalArgumentException("Null values are not supported");
+        }
+        int index = index(key);
+        V previous = (V) values[index];
+        keys[index] = key;
+        values[index] = value;
+        if (previous == null) {
+            size += 1;
+            if (size > keys.length * 3 / 4) {
+                resize(keys.length << 1);
+            }
+        }
+        return previous;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V remove(long key) {
+        int mask = keys.length - 1;
+        int index = index(key);
+        V previous = (V) values[index];
+        if (previous != null) {
+            size -= 1;
+            // shift following entries of the same cluster back to keep lookups without tombstones
+            int next = index + 1 & mask;
+            while (values[next] != null) {
+                int ideal = hash(keys[next]) & mask;
+                if ((next - ideal & mask) >= (next - index & mask)) {
+                    keys[index] = keys[next];
+                    values[index] = values[next];
+                    index = next;
+                }
+                next = next + 1 & mask;
+            }
+            values[index] = null;
+        }
+        return previous;
+    }
+
+    public void clear() {
+        for (int i = 0; i < values.length; i++) {
+            values[i] = null;
+        }
+        size = 0;
+    }
+
+    private void resize(int capacity) {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        keys = new long[capacity];
+        values = new Object[capacity];
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldValues[i] != null) {
+                int index = index(oldKeys[i]);
+                keys[index] = oldKeys[i];
+                values[index] = oldValues[i];
+            }
+        }
+    }
+
+    public long[] keys() {
+        long[] result = new long[size];
+        int count = 0;
+        for (int i = 0; i < keys.length; i++) {
+            if (values[i] != null) {
+                result[count++] = keys[i];
+            }
+        }
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    public Collection<V> values() {
+        Collection<V> result = new ArrayList<>(size);
+        for (Object value : values) {
+            if (value != null) {
+                result.add((V) value);
+            }
+        }
+        return result;
+    }
+
+}
@@ -0,0 +1,238 @@
+/*
+ * Copyright 2017 Anton Tananaev (anton@traccar.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar.helper;
+
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Compact open addressing hash set of primitive long values. Not thread safe.
+ */
+public class LongSet extends AbstractSet<Long> {
+
+    private static final int MIN_CAPACITY = 4;
+    private static final long[] EMPTY = new long[0];
+
+    private long[] values = EMPTY;
+    private boolean containsZero;
+    private int size;
+
+    public LongSet() {
+    }
+
+    public LongSet(Collection<Long> collection) {
+        addAll(collection);
+    }
+
+    private static int hash(long value) {
+        long hash = value * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ hash >>> 32);
+    }
+
+    private int index(long value) {
+        int mask = values.length - 1;
+        int index = hash(value) & mask;
+        while (values[index] != 0 && values[index] != value) {
+            index = index + 1 & mask;
+        }
+        return index;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    public boolean contains(long value) {
+        if (value == 0) {
+            return containsZero;
+        }
+        return values.length > 0 && values[index(value)] != 0;
+    }
+
+    @Override
+    public boolean contains(Object object) {
+        return object instanceof Long && contains(((Long) object).longValue());
+    }
+
+    public boolean add(long value) {
+        if (value == 0) {
+            if (containsZero) {
+                return false;
+            }
+            containsZero = true;
+            size += 1;
+            return true;
+        }
+        if ((size + 1) * 4 > values.length * 3) {
+            resize(Math.max(values.length << 1, MIN_CAPACITY));
+        }
+        int index = index(value);
+        if (values[index] != 0) {
+            return false;
+        }
+        values[index] = value;
+        size += 1;
+        return true;
+    }
+
+    @Override
+    public boolean add(Long value) {
+        return add(value.longValue());
+    }
+
+    public boolean remove(long value) {
+        if (value == 0) {
+            if (!containsZero) {
+                return false;
+            }
+            containsZero = false;
+            size -= 1;
+            return true;
+        }
+        if (values.length == 0) {
+            return false;
+        }
+        int mask = values.length - 1;
+        int index = index(value);
+        if (values[index] == 0) {
+            return false;
+        }
+        size -= 1;
+        int next = index + 1 & mask;
+        while (values[next] != 0) {
+            int ideal = hash(values[next]) & mask;
+            if ((next - ideal & mask) >= (next - index & mask)) {
+                values[index] = values[next];
+                index = next;
+            }
+            next = next + 1 & mask;
+        }
+        values[index] = 0;
+        return true;
+    }
+
+    @Override
+    public boolean remove(Object object) {
+        return object instanceof Long && remove(((Long) object).longValue());
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends Long> collection) {
+        if (collection instanceof LongSet) {
+            LongSet other = (LongSet) collection;
+            boolean modified = other.containsZero && add(0);
+            for (long value : other.values) {
+                if (value != 0) {
+                    modified |= add(value);
+                }
+            }
+            return modified;
+        }
+        return super.addAll(collection);
+    }
+
+    @Override
+    public boolean equals(Object object) {
+        if (object instanceof LongSet) {
+            LongSet other = (LongSet) object;
+            if (other.size != size || other.containsZero != containsZero) {
+                return false;
+            }
+            for (long value : other.values) {
+                if (value != 0 && !contains(value)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return super.equals(object);
+    }
+
+    @Override
+    public int hashCode() {
+        return super.hashCode();
+    }
+
+    @Override
+    public void clear() {
+        values = EMPTY;
+        containsZero = false;
+        size = 0;
+    }
+
+    private void resize(int capacity) {
+        long[] oldValues = values;
+        values = new long[capacity];
+        for (long value : oldValues) {
+            if (value != 0) {
+                values[index(value)] = value;
+            }
+        }
+    }
+
+    public long[] toLongArray() {
+        long[] result = new long[size];
+        int count = 0;
+        if (containsZero) {
+            result[count++] = 0;
+        }
+        for (long value : values) {
+            if (value != 0) {
+                result[count++] = value;
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public Iterator<Long> iterator() {
+        return new Iterator<Long>() {
+
+            private int index = containsZero ? -1 : 0;
+
+            private void skip() {
+                while (index >= 0 && index < values.length && values[index] == 0) {
+                    index += 1;
+                }
+            }
+
+            @Override
+            public boolean hasNext() {
+                skip();
+                return index < values.length;
+            }
+
+            @Override
+            public Long next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                index += 1;
+                return index == 0 ? 0 : values[index - 1];
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+
+        };
+    }
+
+}
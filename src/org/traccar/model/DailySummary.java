@@ -0,0 +1,212 @@
+/*
+ * Copyright 2017 Anton Tananaev (anton@traccar.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import org.traccar.database.QueryIgnore;
+
+import java.util.Date;
+
+public class DailySummary {
+
+    private long deviceId;
+
+    public long getDeviceId() {
+        return deviceId;
+    }
+
+    public void setDeviceId(long deviceId) {
+        this.deviceId = deviceId;
+    }
+
+    private Date startTime;
+
+    public Date getStartTime() {
+        return startTime;
+    }
+
+    public void setStartTime(Date startTime) {
+        this.startTime = startTime;
+    }
+
+    private int positionCount;
+
+    public int getPositionCount() {
+        return positionCount;
+    }
+
+    public void setPositionCount(int positionCount) {
+        this.positionCount = positionCount;
+    }
+
+    private double speedSum;
+
+    public double getSpeedSum() {
+        return speedSum;
+    }
+
+    public void setSpeedSum(double speedSum) {
+        this.speedSum = speedSum;
+    }
+
+    private double maxSpeed;
+
+    public double getMaxSpeed() {
+        return maxSpeed;
+    }
+
+    public void setMaxSpeed(double maxSpeed) {
+        this.maxSpeed = maxSpeed;
+    }
+
+    private long engineHours;
+
+    public long getEngineHours() {
+        return engineHours;
+    }
+
+    public void setEngineHours(long engineHours) {
+        this.engineHours = engineHours;
+    }
+
+    private long firstPositionId;
+
+    public long getFirstPositionId() {
+        return firstPositionId;
+    }
+
+    public void setFirstPositionId(long firstPositionId) {
+        this.firstPositionId = firstPositionId;
+    }
+
+    private Date firstTime;
+
+    public Date getFirstTime() {
+        return firstTime;
+    }
+
+    public void setFirstTime(Date firstTime) {
+        this.firstTime = firstTime;
+    }
+
+    private boolean firstIgnition;
+
+    public boolean getFirstIgnition() {
+        return firstIgnition;
+    }
+
+    public void setFirstIgnition(boolean firstIgnition) {
+        this.firstIgnition = firstIgnition;
+    }
+
+    private long lastPositionId;
+
+    public long getLastPositionId() {
+        return lastPositionId;
+    }
+
+    public void setLastPositionId(long lastPositionId) {
+        this.lastPositionId = lastPositionId;
+    }
+
+    private Date lastTime;
+
+    public Date getLastTime() {
+        return lastTime;
+    }
+
+    public void setLastTime(Date lastTime) {
+        this.lastTime = lastTime;
+    }
+
+    private boolean lastIgnition;
+
+    public boolean getLastIgnition() {
+        return lastIgnition;
+    }
+
+    public void setLastIgnition(boolean lastIgnition) {
+        this.lastIgnition = lastIgnition;
+    }
+
+    private Position firstPosition;
+
+    @QueryIgnore
+    @JsonIgnore
+    public Position getFirstPosition() {
+        return firstPosition;
+    }
+
+    @QueryIgnore
+    public void setFirstPosition(Position firstPosition) {
+        this.firstPosition = firstPosition;
+    }
+
+    private Position lastPosition;
+
+    @QueryIgnore
+    @JsonIgnore
+    public Position getLastPosition() {
+        return lastPosition;
+    }
+
+    @QueryIgnore
+    public void setLastPosition(Position lastPosition) {
+        this.lastPosition = lastPosition;
+    }
+
+    public void addPosition(Position position) {
+        boolean ignition = position.getBoolean(Position.KEY_IGNITION);
+        if (positionCount == 0) {
+            firstPositionId = position.getId();
+            firstTime = position.getFixTime();
+            firstIgnition = ignition;
+            firstPosition = position;
+        } else if (lastIgnition && ignition) {
+            engineHours += position.getFixTime().getTime() - lastTime.getTime();
+        }
+        lastPositionId = position.getId();
+        lastTime = position.getFixTime();
+        lastIgnition = ignition;
+        lastPosition = position;
+        positionCount += 1;
+        speedSum += position.getSpeed();
+        maxSpeed = Math.max(maxSpeed, position.getSpeed());
+    }
+
+    public void addSummary(DailySummary summary) {
+        if (summary.positionCount == 0) {
+            return;
+        }
+        if (positionCount == 0) {
+            firstPositionId = summary.firstPositionId;
+            firstTime = summary.firstTime;
+            firstIgnition = summary.firstIgnition;
+            firstPosition = summary.firstPosition;
+        } else if (lastIgnition && summary.firstIgnition) {
+            engineHours += summary.firstTime.getTime() - lastTime.getTime();
+        }
+        lastPositionId = summary.lastPositionId;
+        lastTime = summary.lastTime;
+        lastIgnition = summary.lastIgnition;
+        lastPosition = summary.lastPosition;
+        positionCount += summary.positionCount;
+        speedSum += summary.speedSum;
+        maxSpeed = Math.max(maxSpeed, summary.maxSpeed);
+        engineHours += summary.engineHours;
+    }
+
+}
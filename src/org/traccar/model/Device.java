@@ -18,6 +18,7 @@ package org.traccar.model;
 import java.util.Date;
 import java.util.List;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import org.traccar.database.QueryExtended;
 import org.traccar.database.QueryIgnore;
 
@@ -149,4 +150,23 @@ public class Device extends ExtendedModel {
         this.category = category;
     }
 
+    private Date modifiedTime;
+
+    @JsonIgnore
+    public Date getModifiedTime() {
+        if (modifiedTime != null) {
+            return new Date(modifiedTime.getTime());
+        } else {
+            return null;
+        }
+    }
+
+    public void setModifiedTime(Date modifiedTime) {
+        if (modifiedTime != null) {
+            this.modifiedTime = new Date(modifiedTime.getTime());
+        } else {
+            this.modifiedTime = null;
+        }
+    }
+
 }
@@ -15,6 +15,10 @@
  */
 package org.traccar.model;
 
+import java.util.Date;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
 public class Group extends ExtendedModel {
 
     private String name;
@@ -37,4 +41,23 @@ public class Group extends ExtendedModel {
         this.groupId = groupId;
     }
 
+    private Date modifiedTime;
+
+    @JsonIgnore
+    public Date getModifiedTime() {
+        if (modifiedTime != null) {
+            return new Date(modifiedTime.getTime());
+        } else {
+            return null;
+        }
+    }
+
+    public void setModifiedTime(Date modifiedTime) {
+        if (modifiedTime != null) {
+            this.modifiedTime = new Date(modifiedTime.getTime());
+        } else {
+            this.modifiedTime = null;
+        }
+    }
+
 }
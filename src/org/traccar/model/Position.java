@@ -16,10 +16,11 @@
 package org.traccar.model;
 
 import java.util.Date;
+import java.util.LinkedHashMap;
 
 import org.traccar.database.QueryIgnore;
 
-public class Position extends Message {
+public class Position extends Message implements Cloneable {
 
     public static final String KEY_ORIGINAL = "raw";
     public static final String KEY_INDEX = "index";
@@ -306,4 +307,11 @@ public class Position extends Message {
         return super.getType();
     }
 
+    @Override
+    public Position clone() throws CloneNotSupportedException {
+        Position position = (Position) super.clone();
+        position.setAttributes(new LinkedHashMap<>(getAttributes()));
+        return position;
+    }
+
 }
@@ -0,0 +1,261 @@
+/*
+ * Copyright 2017 Anton Tananaev (anton@traccar.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar.notification;
+
+import org.traccar.Config;
+import org.traccar.Context;
+import org.traccar.helper.Log;
+
+import javax.mail.MessagingException;
+import javax.mail.Session;
+import javax.mail.Transport;
+import javax.mail.internet.MimeMessage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Delivers mail from a bounded queue with a fixed set of workers. Each worker keeps SMTP connections open between
+ * messages, sends queued messages for the same recipient together and retries failed messages with growing delay.
+ */
+public class MailQueue {
+
+    public static final int DEFAULT_QUEUE_SIZE = 1000;
+    public static final int DEFAULT_THREADS = 2;
+    public static final int DEFAULT_BATCH_SIZE = 50;
+    public static final int DEFAULT_RETRY_COUNT = 3;
+    public static final long DEFAULT_RETRY_DELAY = 10;
+    public static final long DEFAULT_IDLE_TIMEOUT = 30;
+
+    private static final class MailTask {
+
+        private final Properties properties;
+        private final String recipient;
+        private final MailMessage message;
+        private final long queueTime = System.currentTimeMillis();
+        private int attempts;
+
+        private MailTask(Properties properties, String recipient, MailMessage message) {
+            this.properties = properties;
+            this.recipient = recipient;
+            this.message = message;
+        }
+
+    }
+
+    private static final class Connection {
+
+        private final Session session;
+        private final Transport transport;
+
+        private Connection(Session session, Transport transport) {
+            this.session = session;
+            this.transport = transport;
+        }
+
+    }
+
+    private final BlockingQueue<MailTask> queue;
+    private final int batchSize;
+    private final int retryCount;
+    private final long retryDelay;
+    private final long idleTimeout;
+    private final boolean digest;
+
+    private final Timer retryTimer = new Timer("mail-retry", true);
+
+    public MailQueue(Config config) {
+        queue = new ArrayBlockingQueue<>(Math.max(config.getInteger("mail.queue.size", DEFAULT_QUEUE_SIZE), 1));
+        batchSize = Math.max(config.getInteger("mail.queue.batchSize", DEFAULT_BATCH_SIZE), 1);
+        retryCount = config.getInteger("mail.retry.count", DEFAULT_RETRY_COUNT);
+        retryDelay = config.getLong("mail.retry.delay", DEFAULT_RETRY_DELAY) * 1000;
+        idleTimeout = config.getLong("mail.transport.idleTimeout", DEFAULT_IDLE_TIMEOUT) * 1000;
+        digest = config.getBoolean("mail.digest");
+
+        int threads = Math.max(config.getInteger("mail.queue.threads", DEFAULT_THREADS), 1);
+        for (int i = 0; i < threads; i++) {
+            Thread worker = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    process();
+                }
+            }, "mail-sender-" + i);
+            worker.setDaemon(true);
+            worker.start();
+        }
+    }
+
+    public int getQueueSize() {
+        return queue.size();
+    }
+
+    public void send(Properties properties, String recipient, MailMessage message) {
+        offer(new MailTask(properties, recipient, message));
+    }
+
+    private void offer(MailTask task) {
+        if (!queue.offer(task)) {
+            Log.warning("Mail queue is full, message to " + task.recipient + " dropped");
+            if (Context.getStatisticsManager() != null) {
+                Context.getStatisticsManager().registerMailDropped();
+            }
+        }
+    }
+
+    private void process() {
+        Map<Properties, Connection> connections = new HashMap<>();
+        List<MailTask> batch = new ArrayList<>(batchSize);
+        while (true) {
+            try {
+                MailTask first = queue.poll(idleTimeout, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    close(connections);
+                    first = queue.take();
+                }
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+
+                Map<List<Object>, List<MailTask>> recipients = new LinkedHashMap<>();
+                for (MailTask task : batch) {
+                    List<Object> key = Arrays.<Object>asList(task.properties, task.recipient);
+                    List<MailTask> tasks = recipients.get(key);
+                    if (tasks == null) {
+                        tasks = new ArrayList<>();
+                        recipients.put(key, tasks);
+                    }
+                    tasks.add(task);
+                }
+                for (List<MailTask> tasks : recipients.values()) {
+                    deliver(connections, tasks);
+                }
+            } catch (InterruptedException error) {
+                Log.warning(error);
+            } catch (RuntimeException error) {
+                Log.warning(error);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void deliver(Map<Properties, Connection> connections, List<MailTask> tasks) {
+        if (digest && tasks.size() > 1) {
+            StringBuilder body = new StringBuilder();
+            for (MailTask task : tasks) {
+                if (body.length() > 0) {
+                    body.append("<hr>");
+                }
+                body.append(task.message.getBody());
+            }
+            MailMessage message = new MailMessage(
+                    tasks.get(0).message.getSubject() + " (" + tasks.size() + " notifications)", body.toString());
+            MailTask first = tasks.get(0);
+            try {
+                send(connections, first.properties, first.recipient, message);
+                delivered(tasks);
+            } catch (MessagingException error) {
+                close(connections, first.properties);
+                for (MailTask task : tasks) {
+                    retry(task, error);
+                }
+            }
+        } else {
+            for (MailTask task : tasks) {
+                try {
+                    send(connections, task.properties, task.recipient, task.message);
+                    delivered(Arrays.asList(task));
+                } catch (MessagingException error) {
+                    close(connections, task.properties);
+                    retry(task, error);
+                }
+            }
+        }
+    }
+
+    private void send(Map<Properties, Connection> connections, Properties properties, String recipient,
+            MailMessage mailMessage) throws MessagingException {
+        Connection connection = connections.get(properties);
+        if (connection == null) {
+            Session session = Session.getInstance(properties);
+            connection = new Connection(session, createTransport(session));
+            connections.put(properties, connection);
+        }
+        if (!connection.transport.isConnected()) {
+            NotificationMail.connect(connection.transport, properties);
+        }
+        MimeMessage message = NotificationMail.createMessage(connection.session, recipient, mailMessage);
+        connection.transport.sendMessage(message, message.getAllRecipients());
+    }
+
+    protected Transport createTransport(Session session) throws MessagingException {
+        return session.getTransport();
+    }
+
+    private void delivered(List<MailTask> tasks) {
+        if (Context.getStatisticsManager() != null) {
+            long time = System.currentTimeMillis();
+            Context.getStatisticsManager().registerMail();
+            for (MailTask task : tasks) {
+                Context.getStatisticsManager().registerMailDelivery(time - task.queueTime, queue.size());
+            }
+        }
+    }
+
+    private void retry(final MailTask task, MessagingException error) {
+        if (task.attempts < retryCount) {
+            long delay = retryDelay << task.attempts;
+            task.attempts += 1;
+            if (Context.getStatisticsManager() != null) {
+                Context.getStatisticsManager().registerMailRetry();
+            }
+            retryTimer.schedule(new TimerTask() {
+                @Override
+                public void run() {
+                    offer(task);
+                }
+            }, delay);
+        } else {
+            Log.warning("Failed to send mail to " + task.recipient, error);
+        }
+    }
+
+    private static void close(Map<Properties, Connection> connections, Properties properties) {
+        Connection connection = connections.remove(properties);
+        if (connection != null) {
+            try {
+                connection.transport.close();
+            } catch (MessagingException error) {
+                Log.warning(error);
+            }
+        }
+    }
+
+    private static void close(Map<Properties, Connection> connections) {
+        for (Properties properties : new ArrayList<>(connections.keySet())) {
+            close(connections, properties);
+        }
+    }
+
+}
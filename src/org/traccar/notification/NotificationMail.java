@@ -84,9 +84,7 @@ public final class NotificationMail {
         return properties;
     }
 
-    public static void sendMailSync(long userId, Event event, Position position) throws MessagingException {
-        User user = Context.getPermissionsManager().getUser(userId);
-
+    static Properties getProperties(User user) {
         Properties properties = null;
         if (!Context.getConfig().getBoolean("mail.smtp.ignoreUserConfig")) {
             properties = getProperties(new PropertiesProvider(user));
@@ -96,47 +94,71 @@ public final class NotificationMail {
         }
         if (!properties.containsKey("mail.smtp.host")) {
             Log.warning("No SMTP configuration found");
-            return;
+            return null;
         }
+        return properties;
+    }
 
-        Session session = Session.getInstance(properties);
-
+    static MimeMessage createMessage(
+            Session session, String recipient, MailMessage mailMessage) throws MessagingException {
         MimeMessage message = new MimeMessage(session);
 
-        String from = properties.getProperty("mail.smtp.from");
+        String from = session.getProperties().getProperty("mail.smtp.from");
         if (from != null) {
             message.setFrom(new InternetAddress(from));
         }
 
-        message.addRecipient(Message.RecipientType.TO, new InternetAddress(user.getEmail()));
-        MailMessage mailMessage = NotificationFormatter.formatMailMessage(userId, event, position);
+        message.addRecipient(Message.RecipientType.TO, new InternetAddress(recipient));
         message.setSubject(mailMessage.getSubject());
         message.setSentDate(new Date());
         message.setContent(mailMessage.getBody(), "text/html; charset=utf-8");
+        return message;
+    }
+
+    static void connect(Transport transport, Properties properties) throws MessagingException {
+        transport.connect(
+                properties.getProperty("mail.smtp.host"),
+                properties.getProperty("mail.smtp.username"),
+                properties.getProperty("mail.smtp.password"));
+    }
+
+    public static void sendMailSync(long userId, Event event, Position position) throws MessagingException {
+        User user = Context.getPermissionsManager().getUser(userId);
+
+        Properties properties = getProperties(user);
+        if (properties == null) {
+            return;
+        }
+
+        Session session = Session.getInstance(properties);
+        MimeMessage message = createMessage(
+                session, user.getEmail(), NotificationFormatter.formatMailMessage(userId, event, position));
 
         Transport transport = session.getTransport();
         try {
             Context.getStatisticsManager().registerMail();
-            transport.connect(
-                    properties.getProperty("mail.smtp.host"),
-                    properties.getProperty("mail.smtp.username"),
-                    properties.getProperty("mail.smtp.password"));
+            connect(transport, properties);
             transport.sendMessage(message, message.getAllRecipients());
         } finally {
             transport.close();
         }
     }
 
-    public static void sendMailAsync(final long userId, final Event event, final Position position) {
-        new Thread(new Runnable() {
-            public void run() {
-                try {
-                    sendMailSync(userId, event, position);
-                } catch (MessagingException error) {
-                    Log.warning(error);
-                }
+    public static void sendMailAsync(long userId, Event event, Position position) {
+        if (Context.getMailQueue() == null) {
+            try {
+                sendMailSync(userId, event, position);
+            } catch (MessagingException error) {
+                Log.warning(error);
             }
-        }).start();
+            return;
+        }
+        User user = Context.getPermissionsManager().getUser(userId);
+        Properties properties = getProperties(user);
+        if (properties != null) {
+            Context.getMailQueue().send(
+                    properties, user.getEmail(), NotificationFormatter.formatMailMessage(userId, event, position));
+        }
     }
 
 }
@@ -16,18 +16,16 @@
  */
 package org.traccar.processing;
 
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
-import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashSet;
+import java.util.HashMap;
 import java.util.Map;
-import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
+import org.apache.commons.jexl2.Expression;
+import org.apache.commons.jexl2.JexlContext;
 import org.apache.commons.jexl2.JexlEngine;
 import org.apache.commons.jexl2.JexlException;
-import org.apache.commons.jexl2.MapContext;
 import org.traccar.BaseDataHandler;
 import org.traccar.Context;
 import org.traccar.helper.Log;
@@ -41,6 +39,8 @@ public class ComputedAttributesHandler extends BaseDataHandler {
 
     private boolean mapDeviceAttributes;
 
+    private final Map<Long, Expression> expressions = new ConcurrentHashMap<>();
+
     public ComputedAttributesHandler() {
         engine = new JexlEngine();
         engine.setStrict(true);
@@ -50,40 +50,141 @@ public class ComputedAttributesHandler extends BaseDataHandler {
         }
     }
 
-    private MapContext prepareContext(Position position) {
-        MapContext result = new MapContext();
-        if (mapDeviceAttributes) {
-            Device device = Context.getIdentityManager().getById(position.getDeviceId());
-            if (device != null) {
-                for (Object key : device.getAttributes().keySet()) {
-                    result.set((String) key, device.getAttributes().get(key));
-                }
+    /**
+     * Resolves variables from position properties, position attributes and device attributes on demand. Assigned
+     * variables are kept in the context and never written back to the position.
+     */
+    private static final class PositionContext implements JexlContext {
+
+        private final Position position;
+        private final boolean mapDeviceAttributes;
+        private Map<String, Object> deviceAttributes;
+        private Map<String, Object> variables;
+
+        private PositionContext(Position position, boolean mapDeviceAttributes) {
+            this.position = position;
+            this.mapDeviceAttributes = mapDeviceAttributes;
+        }
+
+        private static boolean isProperty(String name) {
+            switch (name) {
+                case "id":
+                case "deviceId":
+                case "type":
+                case "protocol":
+                case "serverTime":
+                case "deviceTime":
+                case "fixTime":
+                case "outdated":
+                case "valid":
+                case "latitude":
+                case "longitude":
+                case "altitude":
+                case "speed":
+                case "course":
+                case "address":
+                case "accuracy":
+                case "network":
+                    return true;
+                default:
+                    return false;
             }
         }
-        Set<Method> methods = new HashSet<>(Arrays.asList(position.getClass().getMethods()));
-        methods.removeAll(Arrays.asList(Object.class.getMethods()));
-        for (Method method : methods) {
-            if (method.getName().startsWith("get") && method.getParameterTypes().length == 0) {
-                String name = Character.toLowerCase(method.getName().charAt(3)) + method.getName().substring(4);
 
-                try {
-                    if (!method.getReturnType().equals(Map.class)) {
-                        result.set(name, method.invoke(position));
-                    } else {
-                        for (Object key : ((Map) method.invoke(position)).keySet()) {
-                            result.set((String) key, ((Map) method.invoke(position)).get(key));
-                        }
+        private Object getProperty(String name) {
+            switch (name) {
+                case "id":
+                    return position.getId();
+                case "deviceId":
+                    return position.getDeviceId();
+                case "type":
+                    return position.getType();
+                case "protocol":
+                    return position.getProtocol();
+                case "serverTime":
+                    return position.getServerTime();
+                case "deviceTime":
+                    return position.getDeviceTime();
+                case "fixTime":
+                    return position.getFixTime();
+                case "outdated":
+                    return position.getOutdated();
+                case "valid":
+                    return position.getValid();
+                case "latitude":
+                    return position.getLatitude();
+                case "longitude":
+                    return position.getLongitude();
+                case "altitude":
+                    return position.getAltitude();
+                case "speed":
+                    return position.getSpeed();
+                case "course":
+                    return position.getCourse();
+                case "address":
+                    return position.getAddress();
+                case "accuracy":
+                    return position.getAccuracy();
+                case "network":
+                    return position.getNetwork();
+                default:
+                    return null;
+            }
+        }
+
+        private Map<String, Object> getDeviceAttributes() {
+            if (deviceAttributes == null) {
+                deviceAttributes = Collections.emptyMap();
+                if (mapDeviceAttributes) {
+                    Device device = Context.getIdentityManager().getById(position.getDeviceId());
+                    if (device != null) {
+                        deviceAttributes = device.getAttributes();
                     }
-                } catch (IllegalAccessException | InvocationTargetException error) {
-                    Log.warning(error);
                 }
             }
+            return deviceAttributes;
+        }
+
+        @Override
+        public Object get(String name) {
+            if (variables != null && variables.containsKey(name)) {
+                return variables.get(name);
+            } else if (isProperty(name)) {
+                return getProperty(name);
+            } else if (position.getAttributes().containsKey(name)) {
+                return position.getAttributes().get(name);
+            }
+            return getDeviceAttributes().get(name);
+        }
+
+        @Override
+        public void set(String name, Object value) {
+            if (variables == null) {
+                variables = new HashMap<>();
+            }
+            variables.put(name, value);
+        }
+
+        @Override
+        public boolean has(String name) {
+            return variables != null && variables.containsKey(name) || isProperty(name)
+                    || position.getAttributes().containsKey(name) || getDeviceAttributes().containsKey(name);
+        }
+
+    }
+
+    private Expression getExpression(Attribute attribute) {
+        Expression expression = expressions.get(attribute.getId());
+        // attributes are updated in place by the manager, so compare source to detect changes
+        if (expression == null || !expression.getExpression().equals(attribute.getExpression())) {
+            expression = engine.createExpression(attribute.getExpression());
+            expressions.put(attribute.getId(), expression);
         }
-        return result;
+        return expression;
     }
 
     public Object computeAttribute(Attribute attribute, Position position) throws JexlException {
-        return engine.createExpression(attribute.getExpression()).evaluate(prepareContext(position));
+        return getExpression(attribute).evaluate(new PositionContext(position, mapDeviceAttributes));
     }
 
     @Override
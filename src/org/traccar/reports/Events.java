@@ -16,23 +16,17 @@
  */
 package org.traccar.reports;
 
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
-import java.util.Iterator;
 
-import org.apache.poi.ss.util.WorkbookUtil;
 import org.traccar.Context;
-import org.traccar.model.Device;
 import org.traccar.model.Event;
 import org.traccar.model.Geofence;
-import org.traccar.model.Group;
 import org.traccar.reports.model.DeviceReport;
 
 public final class Events {
@@ -40,13 +34,18 @@ public final class Events {
     private Events() {
     }
 
-    public static Collection<Event> getObjects(long userId, Collection<Long> deviceIds, Collection<Long> groupIds,
-            Collection<String> types, Date from, Date to) throws SQLException {
-        ReportUtils.checkPeriodLimit(from, to);
+    public static Collection<Event> getObjects(final long userId, Collection<Long> deviceIds,
+            Collection<Long> groupIds, final Collection<String> types, final Date from, final Date to)
+            throws SQLException {
         ArrayList<Event> result = new ArrayList<>();
-        for (long deviceId: ReportUtils.getDeviceList(deviceIds, groupIds)) {
-            Context.getPermissionsManager().checkDevice(userId, deviceId);
-            Collection<Event> events = Context.getDataManager().getEvents(deviceId, from, to);
+        for (Collection<Event> events : Context.getReportExecutor().execute(
+                userId, ReportUtils.getDeviceList(userId, deviceIds, groupIds, from, to),
+                new ReportExecutor.DeviceTask<Collection<Event>>() {
+            @Override
+            public Collection<Event> execute(long deviceId) throws SQLException {
+                return Context.getDataManager().getEvents(deviceId, from, to);
+            }
+        })) {
             boolean all = types.isEmpty() || types.contains(Event.ALL_EVENTS);
             for (Event event : events) {
                 if (all || types.contains(event.getType())) {
@@ -63,55 +62,39 @@ public final class Events {
     public static void getExcel(OutputStream outputStream,
             long userId, Collection<Long> deviceIds, Collection<Long> groupIds,
             Collection<String> types, Date from, Date to) throws SQLException, IOException {
-        ReportUtils.checkPeriodLimit(from, to);
-        ArrayList<DeviceReport> devicesEvents = new ArrayList<>();
-        ArrayList<String> sheetNames = new ArrayList<>();
         HashMap<Long, String> geofenceNames = new HashMap<>();
-        for (long deviceId: ReportUtils.getDeviceList(deviceIds, groupIds)) {
-            Context.getPermissionsManager().checkDevice(userId, deviceId);
-            Collection<Event> events = Context.getDataManager().getEvents(deviceId, from, to);
-            boolean all = types.isEmpty() || types.contains(Event.ALL_EVENTS);
-            for (Iterator<Event> iterator = events.iterator(); iterator.hasNext();) {
-                Event event = iterator.next();
-                if (all || types.contains(event.getType())) {
-                    long geofenceId = event.getGeofenceId();
-                    if (geofenceId != 0) {
-                        if (Context.getGeofenceManager().checkItemPermission(userId, geofenceId)) {
-                            Geofence geofence = (Geofence) Context.getGeofenceManager().getById(geofenceId);
-                            if (geofence != null) {
-                                geofenceNames.put(geofenceId, geofence.getName());
+        org.jxls.common.Context jxlsContext = ReportUtils.initializeContext(userId);
+        jxlsContext.putVar("geofenceNames", geofenceNames);
+        jxlsContext.putVar("from", from);
+        jxlsContext.putVar("to", to);
+        try (StreamingExcelWriter writer = ReportUtils.createExcelWriter("events.xlsx", jxlsContext)) {
+            Collection<Long> devices = ReportUtils.getDeviceList(userId, deviceIds, groupIds, from, to);
+            int completed = 0;
+            for (long deviceId : devices) {
+                DeviceReport deviceEvents = ReportUtils.createDeviceReport(deviceId);
+                writer.addSheet(deviceEvents.getDeviceName(), deviceEvents);
+                Collection<Event> events = Context.getDataManager().getEvents(deviceId, from, to);
+                boolean all = types.isEmpty() || types.contains(Event.ALL_EVENTS);
+                for (Event event : events) {
+                    if (all || types.contains(event.getType())) {
+                        long geofenceId = event.getGeofenceId();
+                        if (geofenceId != 0) {
+                            if (Context.getGeofenceManager().checkItemPermission(userId, geofenceId)) {
+                                Geofence geofence = (Geofence) Context.getGeofenceManager().getById(geofenceId);
+                                if (geofence != null) {
+                                    geofenceNames.put(geofenceId, geofence.getName());
+                                }
+                            } else {
+                                continue;
                             }
-                        } else {
-                            iterator.remove();
                         }
+                        writer.addRow(event);
                     }
-                } else {
-                    iterator.remove();
                 }
+                completed += 1;
+                ReportExecutor.updateProgress(completed, devices.size());
             }
-            DeviceReport deviceEvents = new DeviceReport();
-            Device device = Context.getIdentityManager().getById(deviceId);
-            deviceEvents.setDeviceName(device.getName());
-            sheetNames.add(WorkbookUtil.createSafeSheetName(deviceEvents.getDeviceName()));
-            if (device.getGroupId() != 0) {
-                Group group = Context.getGroupsManager().getById(device.getGroupId());
-                if (group != null) {
-                    deviceEvents.setGroupName(group.getName());
-                }
-            }
-            deviceEvents.setObjects(events);
-            devicesEvents.add(deviceEvents);
-        }
-        String templatePath = Context.getConfig().getString("report.templatesPath",
-                "templates/export/");
-        try (InputStream inputStream = new FileInputStream(templatePath + "/events.xlsx")) {
-            org.jxls.common.Context jxlsContext = ReportUtils.initializeContext(userId);
-            jxlsContext.putVar("devices", devicesEvents);
-            jxlsContext.putVar("sheetNames", sheetNames);
-            jxlsContext.putVar("geofenceNames", geofenceNames);
-            jxlsContext.putVar("from", from);
-            jxlsContext.putVar("to", to);
-            ReportUtils.processTemplateWithSheets(inputStream, outputStream, jxlsContext);
+            writer.write(outputStream);
         }
     }
 }
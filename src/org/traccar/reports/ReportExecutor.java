@@ -0,0 +1,169 @@
+/*
+ * Copyright 2017 Anton Tananaev (anton@traccar.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar.reports;
+
+import org.traccar.Config;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ReportExecutor {
+
+    private static final int DEFAULT_POOL_SIZE = 10;
+
+    public interface DeviceTask<T> {
+        T execute(long deviceId) throws SQLException;
+    }
+
+    public interface ProgressListener {
+        void onProgress(int completed, int total);
+    }
+
+    private static final ThreadLocal<ProgressListener> PROGRESS_LISTENER = new ThreadLocal<>();
+
+    /**
+     * Sets listener notified about completed devices of reports generated on the current thread.
+     */
+    public static void setProgressListener(ProgressListener listener) {
+        if (listener != null) {
+            PROGRESS_LISTENER.set(listener);
+        } else {
+            PROGRESS_LISTENER.remove();
+        }
+    }
+
+    public static void updateProgress(int completed, int total) {
+        ProgressListener listener = PROGRESS_LISTENER.get();
+        if (listener != null) {
+            listener.onProgress(completed, total);
+        }
+    }
+
+    private final ExecutorService executor;
+    private final int userThreads;
+
+    private final ConcurrentMap<Long, Semaphore> userPermits = new ConcurrentHashMap<>();
+
+    public ReportExecutor(Config config) {
+        int poolSize = config.getInteger("database.maxPoolSize");
+        if (poolSize == 0) {
+            poolSize = DEFAULT_POOL_SIZE;
+        }
+        // leave half of database connections for regular API requests and position processing
+        int threads = config.getInteger("report.threads", Math.max(1, poolSize / 2));
+        userThreads = config.getInteger("report.userThreads", Math.max(1, threads / 2));
+        executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable);
+                thread.setName("Report-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    private Semaphore getUserPermits(long userId) {
+        Semaphore permits = userPermits.get(userId);
+        if (permits == null) {
+            permits = new Semaphore(userThreads, true);
+            Semaphore existing = userPermits.putIfAbsent(userId, permits);
+            if (existing != null) {
+                permits = existing;
+            }
+        }
+        return permits;
+    }
+
+    public <T> List<T> execute(long userId, Collection<Long> deviceIds, final DeviceTask<T> task)
+            throws SQLException {
+        List<T> result = new ArrayList<>();
+        if (deviceIds.size() <= 1) {
+            for (long deviceId : deviceIds) {
+                result.add(task.execute(deviceId));
+                updateProgress(result.size(), deviceIds.size());
+            }
+            return result;
+        }
+
+        final Semaphore permits = getUserPermits(userId);
+        List<Future<T>> futures = new ArrayList<>();
+        try {
+            for (final long deviceId : deviceIds) {
+                permits.acquire();
+                // permit is released by the task itself or, if it is cancelled before running, by done()
+                final AtomicBoolean claimed = new AtomicBoolean();
+                FutureTask<T> future = new FutureTask<T>(new Callable<T>() {
+                    @Override
+                    public T call() throws SQLException {
+                        if (!claimed.compareAndSet(false, true)) {
+                            return null;
+                        }
+                        try {
+                            return task.execute(deviceId);
+                        } finally {
+                            permits.release();
+                        }
+                    }
+                }) {
+                    @Override
+                    protected void done() {
+                        if (claimed.compareAndSet(false, true)) {
+                            permits.release();
+                        }
+                    }
+                };
+                futures.add(future);
+                executor.execute(future);
+            }
+            for (Future<T> future : futures) {
+                result.add(future.get());
+                updateProgress(result.size(), deviceIds.size());
+            }
+        } catch (InterruptedException error) {
+            Thread.currentThread().interrupt();
+            throw new SQLException(error);
+        } catch (ExecutionException error) {
+            if (error.getCause() instanceof SQLException) {
+                throw (SQLException) error.getCause();
+            } else if (error.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) error.getCause();
+            }
+            throw new SQLException(error.getCause());
+        } finally {
+            for (Future<T> future : futures) {
+                future.cancel(false);
+            }
+        }
+        return result;
+    }
+
+}
@@ -0,0 +1,263 @@
+/*
+ * Copyright 2017 Anton Tananaev (anton@traccar.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar.reports;
+
+import org.traccar.Config;
+import org.traccar.helper.Log;
+import org.traccar.reports.model.ReportJob;
+
+import javax.xml.bind.DatatypeConverter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Generates reports in background and keeps results on disk, so identical requests are answered from the cache.
+ */
+public class ReportJobManager {
+
+    private static final int DEFAULT_THREADS = 2;
+    private static final long DEFAULT_TTL = 3600;
+
+    public interface ReportWriter {
+        void write(OutputStream outputStream) throws SQLException, IOException;
+    }
+
+    private final File directory;
+    private final long ttl;
+    private final ExecutorService executor;
+
+    private final Map<String, ReportJob> jobs = new ConcurrentHashMap<>();
+    private final Map<String, Future<?>> futures = new ConcurrentHashMap<>();
+    private final Set<File> temporaryFiles = Collections.newSetFromMap(new ConcurrentHashMap<File, Boolean>());
+
+    public ReportJobManager(Config config) {
+        directory = new File(config.getString("report.cache.path",
+                new File(System.getProperty("java.io.tmpdir"), "traccar-reports").getPath()));
+        ttl = config.getLong("report.cache.ttl", DEFAULT_TTL) * 1000;
+        executor = Executors.newFixedThreadPool(config.getInteger("report.jobs.threads", DEFAULT_THREADS),
+                new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable);
+                thread.setName("ReportJob-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            Log.warning("Failed to create report cache directory " + directory);
+        }
+        removeExpired();
+
+        long interval = Math.max(ttl / 10, 1000);
+        new Timer(true).schedule(new TimerTask() {
+            @Override
+            public void run() {
+                removeExpired();
+            }
+        }, interval, interval);
+    }
+
+    private static String getId(String key) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return DatatypeConverter.printHexBinary(digest.digest(key.getBytes(StandardCharsets.UTF_8))).toLowerCase();
+        } catch (NoSuchAlgorithmException error) {
+            throw new RuntimeException(error);
+        }
+    }
+
+    private boolean isExpired(long time) {
+        return time + ttl < System.currentTimeMillis();
+    }
+
+    public File getFile(ReportJob job) {
+        return new File(directory, job.getId() + "." + job.getFormat());
+    }
+
+    /**
+     * Returns existing job for identical request if its result is still valid, otherwise schedules a new job.
+     */
+    public synchronized ReportJob submit(
+            long userId, String type, String format, String parameters, final ReportWriter writer) {
+        String id = getId(userId + ":" + type + ":" + format + ":" + parameters);
+
+        ReportJob job = jobs.get(id);
+        if (job != null && !ReportJob.STATUS_FAILED.equals(job.getStatus())
+                && (job.getCompleteTime() == null || !isExpired(job.getCompleteTime().getTime()))) {
+            return job;
+        }
+
+        job = new ReportJob();
+        job.setId(id);
+        job.setUserId(userId);
+        job.setType(type);
+        job.setFormat(format);
+        job.setCreateTime(new Date());
+
+        File file = getFile(job);
+        if (file.isFile() && !isExpired(file.lastModified())) {
+            job.setStatus(ReportJob.STATUS_COMPLETED);
+            job.setProgress(1);
+            job.setCompleteTime(new Date(file.lastModified()));
+            jobs.put(id, job);
+            return job;
+        }
+
+        job.setStatus(ReportJob.STATUS_QUEUED);
+        jobs.put(id, job);
+        final ReportJob newJob = job;
+        FutureTask<Void> future = new FutureTask<Void>(new Runnable() {
+            @Override
+            public void run() {
+                execute(newJob, writer);
+            }
+        }, null) {
+            @Override
+            protected void done() {
+                futures.remove(newJob.getId(), this);
+            }
+        };
+        futures.put(id, future);
+        executor.execute(future);
+        return job;
+    }
+
+    private void execute(final ReportJob job, ReportWriter writer) {
+        job.setStatus(ReportJob.STATUS_RUNNING);
+        File file = getFile(job);
+        File temporaryFile = null;
+        ReportExecutor.setProgressListener(new ReportExecutor.ProgressListener() {
+            @Override
+            public void onProgress(int completed, int total) {
+                job.setProgress((double) completed / total);
+            }
+        });
+        try {
+            temporaryFile = File.createTempFile(job.getId() + "-", ".tmp", directory);
+            temporaryFiles.add(temporaryFile);
+            try (OutputStream outputStream = new FileOutputStream(temporaryFile)) {
+                writer.write(outputStream);
+            }
+            synchronized (this) {
+                if (jobs.get(job.getId()) != job) {
+                    // job was removed while running, its result must not replace the current one
+                    job.setError("Report job cancelled");
+                    job.setStatus(ReportJob.STATUS_FAILED);
+                    return;
+                }
+                if (file.exists() && !file.delete() || !temporaryFile.renameTo(file)) {
+                    throw new IOException("Failed to store report " + file);
+                }
+            }
+            job.setProgress(1);
+            job.setCompleteTime(new Date(file.lastModified()));
+            job.setStatus(ReportJob.STATUS_COMPLETED);
+        } catch (SQLException | IOException | RuntimeException error) {
+            Log.warning(error);
+            job.setError(error.getMessage());
+            job.setStatus(ReportJob.STATUS_FAILED);
+        } finally {
+            ReportExecutor.setProgressListener(null);
+            if (temporaryFile != null) {
+                if (temporaryFile.exists() && !temporaryFile.delete()) {
+                    Log.warning("Failed to delete " + temporaryFile);
+                }
+                temporaryFiles.remove(temporaryFile);
+            }
+        }
+    }
+
+    public ReportJob getJob(long userId, String id) {
+        ReportJob job = jobs.get(id);
+        if (job != null && job.getUserId() == userId) {
+            return job;
+        }
+        return null;
+    }
+
+    public Collection<ReportJob> getJobs(long userId) {
+        Collection<ReportJob> result = new ArrayList<>();
+        for (ReportJob job : jobs.values()) {
+            if (job.getUserId() == userId) {
+                result.add(job);
+            }
+        }
+        return result;
+    }
+
+    public synchronized void removeJob(ReportJob job) {
+        String id = job.getId();
+        Future<?> future = futures.remove(id);
+        if (future != null) {
+            future.cancel(true);
+        }
+        jobs.remove(id);
+        File file = getFile(job);
+        if (file.exists() && !file.delete()) {
+            Log.warning("Failed to delete " + file);
+        }
+    }
+
+    private synchronized void removeExpired() {
+        Iterator<ReportJob> iterator = jobs.values().iterator();
+        while (iterator.hasNext()) {
+            ReportJob job = iterator.next();
+            if (job.getCompleteTime() != null && isExpired(job.getCompleteTime().getTime())
+                    || ReportJob.STATUS_FAILED.equals(job.getStatus())
+                    && isExpired(job.getCreateTime().getTime())) {
+                iterator.remove();
+            }
+        }
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                String name = file.getName();
+                int extension = name.indexOf('.');
+                boolean running = temporaryFiles.contains(file)
+                        || futures.containsKey(extension >= 0 ? name.substring(0, extension) : name);
+                if (!running && isExpired(file.lastModified()) && !file.delete()) {
+                    Log.warning("Failed to delete " + file);
+                }
+            }
+        }
+    }
+
+}
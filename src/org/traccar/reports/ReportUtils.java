@@ -16,37 +16,33 @@
  */
 package org.traccar.reports;
 
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 import org.apache.velocity.tools.generic.DateTool;
 import org.apache.velocity.tools.generic.NumberTool;
-import org.jxls.area.Area;
-import org.jxls.builder.xls.XlsCommentAreaBuilder;
-import org.jxls.common.CellRef;
-import org.jxls.formula.StandardFormulaProcessor;
-import org.jxls.transform.Transformer;
 import org.jxls.transform.poi.PoiTransformer;
-import org.jxls.util.TransformerFactory;
 import org.traccar.Context;
-import org.traccar.events.MotionEventHandler;
-import org.traccar.model.DeviceState;
+import org.traccar.database.DataManager;
+import org.traccar.database.QueryBuilder;
+import org.traccar.model.Device;
 import org.traccar.model.Driver;
-import org.traccar.model.Event;
+import org.traccar.model.Group;
 import org.traccar.model.Position;
 import org.traccar.reports.model.BaseReport;
+import org.traccar.reports.model.DeviceReport;
 import org.traccar.reports.model.StopReport;
 import org.traccar.reports.model.TripReport;
 import org.traccar.reports.model.TripsConfig;
 
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
-import java.util.List;
 import java.util.Locale;
-import java.util.Map;
 import java.util.TimeZone;
 
 public final class ReportUtils {
@@ -87,6 +83,29 @@ public final class ReportUtils {
         return result;
     }
 
+    public static Collection<Long> getDeviceList(long userId, Collection<Long> deviceIds, Collection<Long> groupIds,
+            Date from, Date to) {
+        checkPeriodLimit(from, to);
+        Collection<Long> result = getDeviceList(deviceIds, groupIds);
+        for (long deviceId : result) {
+            Context.getPermissionsManager().checkDevice(userId, deviceId);
+        }
+        return result;
+    }
+
+    public static DeviceReport createDeviceReport(long deviceId) {
+        DeviceReport deviceReport = new DeviceReport();
+        Device device = Context.getIdentityManager().getById(deviceId);
+        deviceReport.setDeviceName(device.getName());
+        if (device.getGroupId() != 0) {
+            Group group = Context.getGroupsManager().getById(device.getGroupId());
+            if (group != null) {
+                deviceReport.setGroupName(group.getName());
+            }
+        }
+        return deviceReport;
+    }
+
     public static double calculateDistance(Position firstPosition, Position lastPosition) {
         return calculateDistance(firstPosition, lastPosition, true);
     }
@@ -151,33 +170,39 @@ public final class ReportUtils {
         return jxlsContext;
     }
 
-    public static void processTemplateWithSheets(InputStream templateStream, OutputStream targetStream,
-            org.jxls.common.Context jxlsContext) throws IOException {
-        Transformer transformer = TransformerFactory.createTransformer(templateStream, targetStream);
-        List<Area> xlsAreas = new XlsCommentAreaBuilder(transformer).build();
-        for (Area xlsArea : xlsAreas) {
-            xlsArea.applyAt(new CellRef(xlsArea.getStartCellRef().getCellName()), jxlsContext);
-            xlsArea.setFormulaProcessor(new StandardFormulaProcessor());
-            xlsArea.processFormulas();
+    public static StreamingExcelWriter createExcelWriter(
+            String template, org.jxls.common.Context jxlsContext) throws IOException {
+        String templatePath = Context.getConfig().getString("report.templatesPath",
+                "templates/export/");
+        try (InputStream inputStream = new FileInputStream(templatePath + "/" + template)) {
+            return new StreamingExcelWriter(inputStream, jxlsContext,
+                    Context.getConfig().getInteger("report.excelWindowSize", SXSSFWorkbook.DEFAULT_WINDOW_SIZE));
         }
-        transformer.deleteSheet(xlsAreas.get(0).getStartCellRef().getSheetName());
-        transformer.write();
     }
 
-    private static TripReport calculateTrip(
-            ArrayList<Position> positions, int startIndex, int endIndex, boolean ignoreOdometer) {
-        Position startTrip = positions.get(startIndex);
-        Position endTrip = positions.get(endIndex);
-
-        double speedMax = 0.0;
-        double speedSum = 0.0;
-        for (int i = startIndex; i <= endIndex; i++) {
-            double speed = positions.get(i).getSpeed();
-            speedSum += speed;
-            if (speed > speedMax) {
-                speedMax = speed;
+    private static boolean isAddressOnRequest() {
+        return Context.getGeocoder() != null && Context.getConfig().getBoolean("geocoder.onRequest");
+    }
+
+    public static void resolveAddresses(TripReport trip) {
+        if (isAddressOnRequest()) {
+            if (trip.getStartAddress() == null) {
+                trip.setStartAddress(Context.getGeocoder().getAddress(trip.getStartLat(), trip.getStartLon(), null));
+            }
+            if (trip.getEndAddress() == null) {
+                trip.setEndAddress(Context.getGeocoder().getAddress(trip.getEndLat(), trip.getEndLon(), null));
             }
         }
+    }
+
+    public static void resolveAddresses(StopReport stop) {
+        if (isAddressOnRequest() && stop.getAddress() == null) {
+            stop.setAddress(Context.getGeocoder().getAddress(stop.getLatitude(), stop.getLongitude(), null));
+        }
+    }
+
+    static TripReport calculateTrip(Position startTrip, Position endTrip,
+            double speedSum, double speedMax, int count, boolean ignoreOdometer) {
 
         TripReport trip = new TripReport();
 
@@ -190,27 +215,17 @@ public final class ReportUtils {
         trip.setStartLat(startTrip.getLatitude());
         trip.setStartLon(startTrip.getLongitude());
         trip.setStartTime(startTrip.getFixTime());
-        String startAddress = startTrip.getAddress();
-        if (startAddress == null && Context.getGeocoder() != null
-                && Context.getConfig().getBoolean("geocoder.onRequest")) {
-            startAddress = Context.getGeocoder().getAddress(startTrip.getLatitude(), startTrip.getLongitude(), null);
-        }
-        trip.setStartAddress(startAddress);
+        trip.setStartAddress(startTrip.getAddress());
 
         trip.setEndPositionId(endTrip.getId());
         trip.setEndLat(endTrip.getLatitude());
         trip.setEndLon(endTrip.getLongitude());
         trip.setEndTime(endTrip.getFixTime());
-        String endAddress = endTrip.getAddress();
-        if (endAddress == null && Context.getGeocoder() != null
-                && Context.getConfig().getBoolean("geocoder.onRequest")) {
-            endAddress = Context.getGeocoder().getAddress(endTrip.getLatitude(), endTrip.getLongitude(), null);
-        }
-        trip.setEndAddress(endAddress);
+        trip.setEndAddress(endTrip.getAddress());
 
         trip.setDistance(calculateDistance(startTrip, endTrip, !ignoreOdometer));
         trip.setDuration(tripDuration);
-        trip.setAverageSpeed(speedSum / (endIndex - startIndex));
+        trip.setAverageSpeed(speedSum / count);
         trip.setMaxSpeed(speedMax);
         trip.setSpentFuel(calculateFuel(startTrip, endTrip));
 
@@ -220,9 +235,7 @@ public final class ReportUtils {
         return trip;
     }
 
-    private static StopReport calculateStop(ArrayList<Position> positions, int startIndex, int endIndex) {
-        Position startStop = positions.get(startIndex);
-        Position endStop = positions.get(endIndex);
+    static StopReport calculateStop(Position startStop, Position endStop, long engineHours) {
 
         StopReport stop = new StopReport();
 
@@ -234,105 +247,76 @@ public final class ReportUtils {
         stop.setLatitude(startStop.getLatitude());
         stop.setLongitude(startStop.getLongitude());
         stop.setStartTime(startStop.getFixTime());
-        String address = startStop.getAddress();
-        if (address == null && Context.getGeocoder() != null
-                && Context.getConfig().getBoolean("geocoder.onRequest")) {
-            address = Context.getGeocoder().getAddress(stop.getLatitude(), stop.getLongitude(), null);
-        }
-        stop.setAddress(address);
+        stop.setAddress(startStop.getAddress());
 
         stop.setEndTime(endStop.getFixTime());
 
         long stopDuration = endStop.getFixTime().getTime() - startStop.getFixTime().getTime();
         stop.setDuration(stopDuration);
         stop.setSpentFuel(calculateFuel(startStop, endStop));
-
-        long engineHours = 0;
-        for (int i = startIndex + 1; i <= endIndex; i++) {
-            if (positions.get(i).getBoolean(Position.KEY_IGNITION)
-                    && positions.get(i - 1).getBoolean(Position.KEY_IGNITION)) {
-                engineHours += positions.get(i).getFixTime().getTime() - positions.get(i - 1).getFixTime().getTime();
-            }
-        }
         stop.setEngineHours(engineHours);
 
         return stop;
 
     }
 
-    private static <T extends BaseReport> T calculateTripOrStop(ArrayList<Position> positions, int startIndex,
-            int endIndex, boolean ignoreOdometer, Class<T> reportClass) {
-        if (reportClass.equals(TripReport.class)) {
-            return (T) calculateTrip(positions, startIndex, endIndex, ignoreOdometer);
-        } else {
-            return (T) calculateStop(positions, startIndex, endIndex);
-        }
-    }
+    private static <T extends BaseReport> TripsDetector createDetector(
+            TripsConfig tripsConfig, boolean ignoreOdometer, final Class<T> reportClass, final Collection<T> result) {
+        return new TripsDetector(tripsConfig, ignoreOdometer, new TripsDetector.Listener() {
+            @Override
+            public void onTrip(TripReport trip) {
+                if (reportClass.equals(TripReport.class)) {
+                    resolveAddresses(trip);
+                    result.add((T) trip);
+                }
+            }
 
-    private static boolean isMoving(ArrayList<Position> positions, int index, TripsConfig tripsConfig) {
-        if (tripsConfig.getMinimalNoDataDuration() > 0) {
-            boolean beforeGap = index < positions.size() - 1
-                    && positions.get(index + 1).getFixTime().getTime() - positions.get(index).getFixTime().getTime()
-                    >= tripsConfig.getMinimalNoDataDuration();
-            boolean afterGap = index > 0
-                    && positions.get(index).getFixTime().getTime() - positions.get(index - 1).getFixTime().getTime()
-                    >= tripsConfig.getMinimalNoDataDuration();
-            if (beforeGap || afterGap) {
-                return false;
+            @Override
+            public void onStop(StopReport stop) {
+                if (reportClass.equals(StopReport.class)) {
+                    resolveAddresses(stop);
+                    result.add((T) stop);
+                }
             }
-        }
-        if (positions.get(index).getAttributes().containsKey(Position.KEY_MOTION)
-                && positions.get(index).getAttributes().get(Position.KEY_MOTION) instanceof Boolean) {
-            return positions.get(index).getBoolean(Position.KEY_MOTION);
-        } else {
-            return positions.get(index).getSpeed() > tripsConfig.getSpeedThreshold();
-        }
+        });
     }
 
     public static <T extends BaseReport> Collection<T> detectTripsAndStops(Collection<Position> positionCollection,
             TripsConfig tripsConfig, boolean ignoreOdometer, Class<T> reportClass) {
         Collection<T> result = new ArrayList<>();
+        TripsDetector detector = createDetector(tripsConfig, ignoreOdometer, reportClass, result);
+        for (Position position : positionCollection) {
+            detector.addPosition(position);
+        }
+        detector.finish();
+        return result;
+    }
 
-        ArrayList<Position> positions = new ArrayList<>(positionCollection);
-        if (positions != null && !positions.isEmpty()) {
-            boolean trips = reportClass.equals(TripReport.class);
-            MotionEventHandler  motionHandler = new MotionEventHandler(tripsConfig);
-            DeviceState deviceState = new DeviceState();
-            deviceState.setMotionState(isMoving(positions, 0, tripsConfig));
-            int startEventIndex = trips == deviceState.getMotionState() ? 0 : -1;
-            int startNoEventIndex = -1;
-            for (int i = 0; i < positions.size(); i++) {
-                Map<Event, Position> event = motionHandler.updateMotionState(deviceState, positions.get(i),
-                        isMoving(positions, i, tripsConfig));
-                if (startEventIndex == -1
-                        && (trips != deviceState.getMotionState() && deviceState.getMotionPosition() != null
-                        || trips == deviceState.getMotionState() && event != null)) {
-                    startEventIndex = i;
-                    startNoEventIndex = -1;
-                } else if (trips != deviceState.getMotionState() && startEventIndex != -1
-                        && deviceState.getMotionPosition() == null && event == null) {
-                    startEventIndex = -1;
-                }
-                if (startNoEventIndex == -1
-                        && (trips == deviceState.getMotionState() && deviceState.getMotionPosition() != null
-                        || trips != deviceState.getMotionState() && event != null)) {
-                    startNoEventIndex = i;
-                } else if (startNoEventIndex != -1 && deviceState.getMotionPosition() == null && event == null) {
-                    startNoEventIndex = -1;
-                }
-                if (startEventIndex != -1 && startNoEventIndex != -1 && event != null
-                        && trips != deviceState.getMotionState()) {
-                    result.add(calculateTripOrStop(positions, startEventIndex, startNoEventIndex,
-                            ignoreOdometer, reportClass));
-                    startEventIndex = -1;
+    public static <T extends BaseReport> Collection<T> detectTripsAndStops(
+            long deviceId, Date from, Date to, Class<T> reportClass) throws SQLException {
+        boolean ignoreOdometer = Context.getDeviceManager()
+                .lookupAttributeBoolean(deviceId, "report.ignoreOdometer", false, true);
+        return detectTripsAndStops(Context.getDataManager(), Context.getTripsConfig(), ignoreOdometer,
+                deviceId, from, to, reportClass);
+    }
+
+    public static <T extends BaseReport> Collection<T> detectTripsAndStops(DataManager dataManager,
+            TripsConfig tripsConfig, boolean ignoreOdometer, long deviceId, Date from, Date to, Class<T> reportClass)
+            throws SQLException {
+        Collection<T> result = new ArrayList<>();
+        final TripsDetector detector = createDetector(tripsConfig, ignoreOdometer, reportClass, result);
+        try {
+            dataManager.getPositions(deviceId, from, to, new QueryBuilder.ResultHandler<Position>() {
+                @Override
+                public void handle(Position position) {
+                    detector.addPosition(position);
                 }
-            }
-            if (startEventIndex != -1 && (startNoEventIndex != -1 || !trips)) {
-                result.add(calculateTripOrStop(positions, startEventIndex,
-                            startNoEventIndex != -1 ? startNoEventIndex : positions.size() - 1,
-                            ignoreOdometer, reportClass));
-            }
+            });
+        } catch (IOException error) {
+            throw new SQLException(error);
         }
+        detector.finish();
         return result;
     }
+
 }
@@ -16,19 +16,15 @@
  */
 package org.traccar.reports;
 
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
 
-import org.apache.poi.ss.util.WorkbookUtil;
 import org.traccar.Context;
-import org.traccar.model.Device;
-import org.traccar.model.Group;
+import org.traccar.database.QueryBuilder;
 import org.traccar.model.Position;
 import org.traccar.reports.model.DeviceReport;
 
@@ -38,12 +34,17 @@ public final class Route {
     }
 
     public static Collection<Position> getObjects(long userId, Collection<Long> deviceIds, Collection<Long> groupIds,
-            Date from, Date to) throws SQLException {
-        ReportUtils.checkPeriodLimit(from, to);
+            final Date from, final Date to) throws SQLException {
         ArrayList<Position> result = new ArrayList<>();
-        for (long deviceId: ReportUtils.getDeviceList(deviceIds, groupIds)) {
-            Context.getPermissionsManager().checkDevice(userId, deviceId);
-            result.addAll(Context.getDataManager().getPositions(deviceId, from, to));
+        for (Collection<Position> positions : Context.getReportExecutor().execute(
+                userId, ReportUtils.getDeviceList(userId, deviceIds, groupIds, from, to),
+                new ReportExecutor.DeviceTask<Collection<Position>>() {
+            @Override
+            public Collection<Position> execute(long deviceId) throws SQLException {
+                return Context.getDataManager().getPositions(deviceId, from, to);
+            }
+        })) {
+            result.addAll(positions);
         }
         return result;
     }
@@ -51,35 +52,25 @@ public final class Route {
     public static void getExcel(OutputStream outputStream,
             long userId, Collection<Long> deviceIds, Collection<Long> groupIds,
             Date from, Date to) throws SQLException, IOException {
-        ReportUtils.checkPeriodLimit(from, to);
-        ArrayList<DeviceReport> devicesRoutes = new ArrayList<>();
-        ArrayList<String> sheetNames = new ArrayList<>();
-        for (long deviceId: ReportUtils.getDeviceList(deviceIds, groupIds)) {
-            Context.getPermissionsManager().checkDevice(userId, deviceId);
-            Collection<Position> positions = Context.getDataManager()
-                    .getPositions(deviceId, from, to);
-            DeviceReport deviceRoutes = new DeviceReport();
-            Device device = Context.getIdentityManager().getById(deviceId);
-            deviceRoutes.setDeviceName(device.getName());
-            sheetNames.add(WorkbookUtil.createSafeSheetName(deviceRoutes.getDeviceName()));
-            if (device.getGroupId() != 0) {
-                Group group = Context.getGroupsManager().getById(device.getGroupId());
-                if (group != null) {
-                    deviceRoutes.setGroupName(group.getName());
-                }
+        org.jxls.common.Context jxlsContext = ReportUtils.initializeContext(userId);
+        jxlsContext.putVar("from", from);
+        jxlsContext.putVar("to", to);
+        try (final StreamingExcelWriter writer = ReportUtils.createExcelWriter("route.xlsx", jxlsContext)) {
+            Collection<Long> devices = ReportUtils.getDeviceList(userId, deviceIds, groupIds, from, to);
+            int completed = 0;
+            for (long deviceId : devices) {
+                DeviceReport deviceRoutes = ReportUtils.createDeviceReport(deviceId);
+                writer.addSheet(deviceRoutes.getDeviceName(), deviceRoutes);
+                Context.getDataManager().getPositions(deviceId, from, to, new QueryBuilder.ResultHandler<Position>() {
+                    @Override
+                    public void handle(Position position) {
+                        writer.addRow(position);
+                    }
+                });
+                completed += 1;
+                ReportExecutor.updateProgress(completed, devices.size());
             }
-            deviceRoutes.setObjects(positions);
-            devicesRoutes.add(deviceRoutes);
-        }
-        String templatePath = Context.getConfig().getString("report.templatesPath",
-                "templates/export/");
-        try (InputStream inputStream = new FileInputStream(templatePath + "/route.xlsx")) {
-            org.jxls.common.Context jxlsContext = ReportUtils.initializeContext(userId);
-            jxlsContext.putVar("devices", devicesRoutes);
-            jxlsContext.putVar("sheetNames", sheetNames);
-            jxlsContext.putVar("from", from);
-            jxlsContext.putVar("to", to);
-            ReportUtils.processTemplateWithSheets(inputStream, outputStream, jxlsContext);
+            writer.write(outputStream);
         }
     }
 }
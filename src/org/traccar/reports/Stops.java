@@ -17,19 +17,14 @@
 
 package org.traccar.reports;
 
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
 
-import org.apache.poi.ss.util.WorkbookUtil;
 import org.traccar.Context;
-import org.traccar.model.Device;
-import org.traccar.model.Group;
 import org.traccar.reports.model.DeviceReport;
 import org.traccar.reports.model.StopReport;
 
@@ -39,59 +34,51 @@ public final class Stops {
     }
 
     private static Collection<StopReport> detectStops(long deviceId, Date from, Date to) throws SQLException {
-        boolean ignoreOdometer = Context.getDeviceManager()
-                .lookupAttributeBoolean(deviceId, "report.ignoreOdometer", false, true);
-
-        Collection<StopReport> result = ReportUtils.detectTripsAndStops(
-                Context.getDataManager().getPositions(deviceId, from, to),
-                Context.getTripsConfig(), ignoreOdometer, StopReport.class);
-
-        return result;
+        if (Context.getTripsManager() != null) {
+            Collection<StopReport> result = Context.getTripsManager().getStops(deviceId, from, to);
+            if (result != null) {
+                return result;
+            }
+        }
+        return ReportUtils.detectTripsAndStops(deviceId, from, to, StopReport.class);
     }
 
     public static Collection<StopReport> getObjects(
             long userId, Collection<Long> deviceIds, Collection<Long> groupIds,
-            Date from, Date to) throws SQLException {
-        ReportUtils.checkPeriodLimit(from, to);
+            final Date from, final Date to) throws SQLException {
         ArrayList<StopReport> result = new ArrayList<>();
-        for (long deviceId: ReportUtils.getDeviceList(deviceIds, groupIds)) {
-            Context.getPermissionsManager().checkDevice(userId, deviceId);
-            result.addAll(detectStops(deviceId, from, to));
+        for (Collection<StopReport> stops : Context.getReportExecutor().execute(
+                userId, ReportUtils.getDeviceList(userId, deviceIds, groupIds, from, to),
+                new ReportExecutor.DeviceTask<Collection<StopReport>>() {
+            @Override
+            public Collection<StopReport> execute(long deviceId) throws SQLException {
+                return detectStops(deviceId, from, to);
+            }
+        })) {
+            result.addAll(stops);
         }
         return result;
     }
 
-    public static void getExcel(
-            OutputStream outputStream, long userId, Collection<Long> deviceIds, Collection<Long> groupIds,
+    public static void getExcel(OutputStream outputStream,
+            long userId, Collection<Long> deviceIds, Collection<Long> groupIds,
             Date from, Date to) throws SQLException, IOException {
-        ReportUtils.checkPeriodLimit(from, to);
-        ArrayList<DeviceReport> devicesStops = new ArrayList<>();
-        ArrayList<String> sheetNames = new ArrayList<>();
-        for (long deviceId: ReportUtils.getDeviceList(deviceIds, groupIds)) {
-            Context.getPermissionsManager().checkDevice(userId, deviceId);
-            Collection<StopReport> stops = detectStops(deviceId, from, to);
-            DeviceReport deviceStops = new DeviceReport();
-            Device device = Context.getIdentityManager().getById(deviceId);
-            deviceStops.setDeviceName(device.getName());
-            sheetNames.add(WorkbookUtil.createSafeSheetName(deviceStops.getDeviceName()));
-            if (device.getGroupId() != 0) {
-                Group group = Context.getGroupsManager().getById(device.getGroupId());
-                if (group != null) {
-                    deviceStops.setGroupName(group.getName());
+        org.jxls.common.Context jxlsContext = ReportUtils.initializeContext(userId);
+        jxlsContext.putVar("from", from);
+        jxlsContext.putVar("to", to);
+        try (StreamingExcelWriter writer = ReportUtils.createExcelWriter("stops.xlsx", jxlsContext)) {
+            Collection<Long> devices = ReportUtils.getDeviceList(userId, deviceIds, groupIds, from, to);
+            int completed = 0;
+            for (long deviceId : devices) {
+                DeviceReport deviceStops = ReportUtils.createDeviceReport(deviceId);
+                writer.addSheet(deviceStops.getDeviceName(), deviceStops);
+                for (StopReport stop : detectStops(deviceId, from, to)) {
+                    writer.addRow(stop);
                 }
+                completed += 1;
+                ReportExecutor.updateProgress(completed, devices.size());
             }
-            deviceStops.setObjects(stops);
-            devicesStops.add(deviceStops);
-        }
-        String templatePath = Context.getConfig().getString("report.templatesPath",
-                "templates/export/");
-        try (InputStream inputStream = new FileInputStream(templatePath + "/stops.xlsx")) {
-            org.jxls.common.Context jxlsContext = ReportUtils.initializeContext(userId);
-            jxlsContext.putVar("devices", devicesStops);
-            jxlsContext.putVar("sheetNames", sheetNames);
-            jxlsContext.putVar("from", from);
-            jxlsContext.putVar("to", to);
-            ReportUtils.processTemplateWithSheets(inputStream, outputStream, jxlsContext);
+            writer.write(outputStream);
         }
     }
 
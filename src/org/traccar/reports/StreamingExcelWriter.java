@@ -0,0 +1,279 @@
+/*
+ * Copyright 2017 Anton Tananaev (anton@traccar.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar.reports;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.Comment;
+import org.apache.poi.ss.usermodel.Font;
+import org.apache.poi.ss.usermodel.IndexedColors;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.util.WorkbookUtil;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.jxls.expression.JexlExpressionEvaluator;
+import org.jxls.transform.poi.WritableCellValue;
+import org.jxls.transform.poi.WritableHyperlink;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Fills jXLS report templates row by row using a POI SXSSF workbook, so only a window of rows is kept in memory.
+ * Supports templates with a multisheet group each command followed by a single row item each command.
+ */
+public class StreamingExcelWriter implements Closeable {
+
+    private static final Pattern VAR_PATTERN = Pattern.compile("var=\"(\\w+)\"");
+    private static final Pattern EXPRESSION_PATTERN = Pattern.compile("\\$\\{(.+?)\\}");
+
+    private static final int MAX_FORMULA_STRING = 255;
+    private static final int MAX_SHEET_NAME = 31;
+
+    private final class TemplateCell {
+
+        private final int column;
+        private final CellStyle style;
+        private final String text;
+        private final List<Object> parts = new ArrayList<>();
+        private JexlExpressionEvaluator expression;
+        private CellStyle linkStyle;
+
+        private TemplateCell(Cell cell) {
+            column = cell.getColumnIndex();
+            style = cell.getCellStyle();
+            text = cell.toString();
+            Matcher matcher = EXPRESSION_PATTERN.matcher(text);
+            int start = 0;
+            while (matcher.find()) {
+                if (matcher.start() > start) {
+                    parts.add(text.substring(start, matcher.start()));
+                }
+                parts.add(new JexlExpressionEvaluator(matcher.group(1)));
+                start = matcher.end();
+            }
+            if (start < text.length() && start > 0) {
+                parts.add(text.substring(start));
+            }
+            if (parts.size() == 1 && parts.get(0) instanceof JexlExpressionEvaluator) {
+                expression = (JexlExpressionEvaluator) parts.get(0);
+            }
+        }
+
+        private void write(Row row, Map<String, Object> variables) {
+            Cell cell = row.createCell(column);
+            cell.setCellStyle(style);
+            if (expression != null) {
+                setValue(cell, expression.evaluate(variables));
+            } else if (!parts.isEmpty()) {
+                StringBuilder value = new StringBuilder();
+                for (Object part : parts) {
+                    if (part instanceof JexlExpressionEvaluator) {
+                        Object result = ((JexlExpressionEvaluator) part).evaluate(variables);
+                        if (result != null) {
+                            value.append(result);
+                        }
+                    } else {
+                        value.append(part);
+                    }
+                }
+                cell.setCellValue(value.toString());
+            } else if (!text.isEmpty()) {
+                cell.setCellValue(text);
+            }
+        }
+
+        private void setValue(Cell cell, Object value) {
+            if (value instanceof WritableHyperlink) {
+                setHyperlink(cell, (WritableHyperlink) value);
+            } else if (value instanceof WritableCellValue) {
+                ((WritableCellValue) value).writeToCell(cell, context);
+            } else if (value instanceof Number) {
+                cell.setCellValue(((Number) value).doubleValue());
+            } else if (value instanceof Boolean) {
+                cell.setCellValue((Boolean) value);
+            } else if (value instanceof Date) {
+                cell.setCellValue((Date) value);
+            } else if (value instanceof Calendar) {
+                cell.setCellValue((Calendar) value);
+            } else if (value != null) {
+                cell.setCellValue(value.toString());
+            }
+        }
+
+        private void setHyperlink(Cell cell, WritableHyperlink hyperlink) {
+            String address = hyperlink.getAddress();
+            String title = hyperlink.getTitle();
+            if (address == null || title == null
+                    || address.length() > MAX_FORMULA_STRING || title.length() > MAX_FORMULA_STRING) {
+                cell.setCellValue(title);
+                return;
+            }
+            if (linkStyle == null) {
+                Font font = workbook.createFont();
+                font.setUnderline(Font.U_SINGLE);
+                font.setColor(IndexedColors.BLUE.getIndex());
+                linkStyle = workbook.createCellStyle();
+                linkStyle.cloneStyleFrom(style);
+                linkStyle.setFont(font);
+            }
+            // formula links are streamed with the row, unlike sheet hyperlinks that are kept in memory
+            cell.setCellFormula("HYPERLINK(" + quote(address) + "," + quote(title) + ")");
+            cell.setCellStyle(linkStyle);
+        }
+
+    }
+
+    private static final class TemplateRow {
+
+        private final short height;
+        private final List<TemplateCell> cells = new ArrayList<>();
+
+        private TemplateRow(short height) {
+            this.height = height;
+        }
+
+    }
+
+    private static String quote(String value) {
+        return "\"" + value.replace("\"", "\"\"") + "\"";
+    }
+
+    private final org.jxls.common.Context context;
+    private final SXSSFWorkbook workbook;
+    private final List<TemplateRow> headerRows = new ArrayList<>();
+    private final List<Integer> columnWidths = new ArrayList<>();
+    private TemplateRow itemRow;
+    private String groupVar;
+    private String itemVar;
+
+    private Sheet sheet;
+    private int rowIndex;
+
+    public StreamingExcelWriter(
+            InputStream template, org.jxls.common.Context context, int windowSize) throws IOException {
+        this.context = context;
+        XSSFWorkbook templateWorkbook = new XSSFWorkbook(template);
+        Sheet templateSheet = templateWorkbook.getSheetAt(0);
+        for (Row row : templateSheet) {
+            if (itemRow != null) {
+                break;
+            }
+            TemplateRow templateRow = new TemplateRow(row.getHeight());
+            for (Cell cell : row) {
+                templateRow.cells.add(new TemplateCell(cell));
+                while (columnWidths.size() <= cell.getColumnIndex()) {
+                    columnWidths.add(templateSheet.getColumnWidth(columnWidths.size()));
+                }
+                Comment comment = cell.getCellComment();
+                if (comment != null) {
+                    String command = comment.getString().getString();
+                    Matcher matcher = VAR_PATTERN.matcher(command);
+                    if (command.contains("jx:each") && matcher.find()) {
+                        if (groupVar == null) {
+                            groupVar = matcher.group(1);
+                        } else {
+                            itemVar = matcher.group(1);
+                            itemRow = templateRow;
+                        }
+                    }
+                    cell.removeCellComment();
+                }
+            }
+            while (headerRows.size() < row.getRowNum()) {
+                headerRows.add(new TemplateRow(templateSheet.getDefaultRowHeight()));
+            }
+            if (itemRow == null) {
+                headerRows.add(templateRow);
+            }
+        }
+        if (itemRow == null) {
+            throw new IllegalArgumentException("Unsupported report template");
+        }
+        for (int i = templateSheet.getLastRowNum(); i >= 0; i--) {
+            Row row = templateSheet.getRow(i);
+            if (row != null) {
+                templateSheet.removeRow(row);
+            }
+        }
+
+        // template sheet is cleared and reused for the first report sheet
+        workbook = new SXSSFWorkbook(templateWorkbook, windowSize, true, false);
+        workbook.setForceFormulaRecalculation(true);
+    }
+
+    private void writeRow(TemplateRow templateRow) {
+        Row row = sheet.createRow(rowIndex++);
+        row.setHeight(templateRow.height);
+        Map<String, Object> variables = context.toMap();
+        for (TemplateCell cell : templateRow.cells) {
+            cell.write(row, variables);
+        }
+    }
+
+    private void createSheet(String name) {
+        String safeName = WorkbookUtil.createSafeSheetName(name);
+        String sheetName = safeName;
+        for (int i = 2; workbook.getSheet(sheetName) != null; i++) {
+            String suffix = " (" + i + ")";
+            sheetName = safeName.substring(0, Math.min(safeName.length(), MAX_SHEET_NAME - suffix.length())) + suffix;
+        }
+        if (sheet == null) {
+            sheet = workbook.getSheetAt(0);
+            workbook.setSheetName(0, sheetName);
+        } else {
+            sheet = workbook.createSheet(sheetName);
+            for (int i = 0; i < columnWidths.size(); i++) {
+                sheet.setColumnWidth(i, columnWidths.get(i));
+            }
+        }
+        rowIndex = 0;
+    }
+
+    public void addSheet(String name, Object group) {
+        createSheet(name);
+        context.putVar(groupVar, group);
+        for (TemplateRow headerRow : headerRows) {
+            writeRow(headerRow);
+        }
+    }
+
+    public void addRow(Object item) {
+        context.putVar(itemVar, item);
+        writeRow(itemRow);
+    }
+
+    public void write(OutputStream outputStream) throws IOException {
+        workbook.write(outputStream);
+    }
+
+    @Override
+    public void close() throws IOException {
+        workbook.dispose();
+        workbook.close();
+    }
+
+}
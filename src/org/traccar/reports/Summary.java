@@ -21,12 +21,13 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.sql.SQLException;
-import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
 
 import org.jxls.util.JxlsHelper;
 import org.traccar.Context;
+import org.traccar.database.SummaryManager;
+import org.traccar.model.DailySummary;
 import org.traccar.model.Position;
 import org.traccar.reports.model.SummaryReport;
 
@@ -35,46 +36,68 @@ public final class Summary {
     private Summary() {
     }
 
+    private static DailySummary calculateSummary(long deviceId, Date from, Date to) throws SQLException {
+        SummaryManager summaryManager = Context.getSummaryManager();
+        long firstDay = SummaryManager.getDayStart(from.getTime() + SummaryManager.DAY - 1);
+        long lastDay = SummaryManager.getDayStart(to.getTime() + 1) - SummaryManager.DAY;
+        if (summaryManager == null || firstDay > lastDay) {
+            return SummaryManager.calculate(deviceId, from, to);
+        }
+
+        // whole days are taken from daily summaries, raw positions are only read for the remaining intervals
+        DailySummary result = new DailySummary();
+        long start = from.getTime();
+        for (DailySummary summary : summaryManager.getSummaries(deviceId, new Date(firstDay), new Date(lastDay))) {
+            long day = summary.getStartTime().getTime();
+            if (start < day) {
+                result.addSummary(SummaryManager.calculate(deviceId, new Date(start), new Date(day - 1)));
+            }
+            result.addSummary(summary);
+            start = day + SummaryManager.DAY;
+        }
+        if (start <= to.getTime()) {
+            result.addSummary(SummaryManager.calculate(deviceId, new Date(start), to));
+        }
+        return result;
+    }
+
     private static SummaryReport calculateSummaryResult(long deviceId, Date from, Date to) throws SQLException {
         SummaryReport result = new SummaryReport();
         result.setDeviceId(deviceId);
         result.setDeviceName(Context.getIdentityManager().getById(deviceId).getName());
-        Collection<Position> positions = Context.getDataManager().getPositions(deviceId, from, to);
-        if (positions != null && !positions.isEmpty()) {
-            Position firstPosition = null;
-            Position previousPosition = null;
-            double speedSum = 0;
-            for (Position position : positions) {
-                if (firstPosition == null) {
-                    firstPosition = position;
-                }
-                if (previousPosition != null && position.getBoolean(Position.KEY_IGNITION)
-                        && previousPosition.getBoolean(Position.KEY_IGNITION)) {
-                    result.addEngineHours(position.getFixTime().getTime()
-                            - previousPosition.getFixTime().getTime());
-                }
-                previousPosition = position;
-                speedSum += position.getSpeed();
-                result.setMaxSpeed(position.getSpeed());
+        DailySummary summary = calculateSummary(deviceId, from, to);
+        if (summary.getPositionCount() > 0) {
+            Position firstPosition = summary.getFirstPosition();
+            if (firstPosition == null) {
+                firstPosition = Context.getDataManager().getObject(Position.class, summary.getFirstPositionId());
+            }
+            Position lastPosition = summary.getLastPosition();
+            if (lastPosition == null) {
+                lastPosition = Context.getDataManager().getObject(Position.class, summary.getLastPositionId());
+            }
+            result.addEngineHours(summary.getEngineHours());
+            result.setMaxSpeed(summary.getMaxSpeed());
+            result.setAverageSpeed(summary.getSpeedSum() / summary.getPositionCount());
+            if (firstPosition != null && lastPosition != null) {
+                boolean ignoreOdometer = Context.getDeviceManager()
+                        .lookupAttributeBoolean(deviceId, "report.ignoreOdometer", false, true);
+                result.setDistance(ReportUtils.calculateDistance(firstPosition, lastPosition, !ignoreOdometer));
+                result.setSpentFuel(ReportUtils.calculateFuel(firstPosition, lastPosition));
             }
-            boolean ignoreOdometer = Context.getDeviceManager()
-                    .lookupAttributeBoolean(deviceId, "report.ignoreOdometer", false, true);
-            result.setDistance(ReportUtils.calculateDistance(firstPosition, previousPosition, !ignoreOdometer));
-            result.setAverageSpeed(speedSum / positions.size());
-            result.setSpentFuel(ReportUtils.calculateFuel(firstPosition, previousPosition));
         }
         return result;
     }
 
     public static Collection<SummaryReport> getObjects(long userId, Collection<Long> deviceIds,
-            Collection<Long> groupIds, Date from, Date to) throws SQLException {
-        ReportUtils.checkPeriodLimit(from, to);
-        ArrayList<SummaryReport> result = new ArrayList<>();
-        for (long deviceId: ReportUtils.getDeviceList(deviceIds, groupIds)) {
-            Context.getPermissionsManager().checkDevice(userId, deviceId);
-            result.add(calculateSummaryResult(deviceId, from, to));
-        }
-        return result;
+            Collection<Long> groupIds, final Date from, final Date to) throws SQLException {
+        return Context.getReportExecutor().execute(
+                userId, ReportUtils.getDeviceList(userId, deviceIds, groupIds, from, to),
+                new ReportExecutor.DeviceTask<SummaryReport>() {
+            @Override
+            public SummaryReport execute(long deviceId) throws SQLException {
+                return calculateSummaryResult(deviceId, from, to);
+            }
+        });
     }
 
     public static void getExcel(OutputStream outputStream,
@@ -16,19 +16,14 @@
  */
 package org.traccar.reports;
 
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
 
-import org.apache.poi.ss.util.WorkbookUtil;
 import org.traccar.Context;
-import org.traccar.model.Device;
-import org.traccar.model.Group;
 import org.traccar.reports.model.DeviceReport;
 import org.traccar.reports.model.TripReport;
 
@@ -38,23 +33,27 @@ public final class Trips {
     }
 
     private static Collection<TripReport> detectTrips(long deviceId, Date from, Date to) throws SQLException {
-        boolean ignoreOdometer = Context.getDeviceManager()
-                .lookupAttributeBoolean(deviceId, "report.ignoreOdometer", false, true);
-
-        Collection<TripReport> result = ReportUtils.detectTripsAndStops(
-                Context.getDataManager().getPositions(deviceId, from, to),
-                Context.getTripsConfig(), ignoreOdometer, TripReport.class);
-
-        return result;
+        if (Context.getTripsManager() != null) {
+            Collection<TripReport> result = Context.getTripsManager().getTrips(deviceId, from, to);
+            if (result != null) {
+                return result;
+            }
+        }
+        return ReportUtils.detectTripsAndStops(deviceId, from, to, TripReport.class);
     }
 
     public static Collection<TripReport> getObjects(long userId, Collection<Long> deviceIds, Collection<Long> groupIds,
-            Date from, Date to) throws SQLException {
-        ReportUtils.checkPeriodLimit(from, to);
+            final Date from, final Date to) throws SQLException {
         ArrayList<TripReport> result = new ArrayList<>();
-        for (long deviceId: ReportUtils.getDeviceList(deviceIds, groupIds)) {
-            Context.getPermissionsManager().checkDevice(userId, deviceId);
-            result.addAll(detectTrips(deviceId, from, to));
+        for (Collection<TripReport> trips : Context.getReportExecutor().execute(
+                userId, ReportUtils.getDeviceList(userId, deviceIds, groupIds, from, to),
+                new ReportExecutor.DeviceTask<Collection<TripReport>>() {
+            @Override
+            public Collection<TripReport> execute(long deviceId) throws SQLException {
+                return detectTrips(deviceId, from, to);
+            }
+        })) {
+            result.addAll(trips);
         }
         return result;
     }
@@ -62,34 +61,22 @@ public final class Trips {
     public static void getExcel(OutputStream outputStream,
             long userId, Collection<Long> deviceIds, Collection<Long> groupIds,
             Date from, Date to) throws SQLException, IOException {
-        ReportUtils.checkPeriodLimit(from, to);
-        ArrayList<DeviceReport> devicesTrips = new ArrayList<>();
-        ArrayList<String> sheetNames = new ArrayList<>();
-        for (long deviceId: ReportUtils.getDeviceList(deviceIds, groupIds)) {
-            Context.getPermissionsManager().checkDevice(userId, deviceId);
-            Collection<TripReport> trips = detectTrips(deviceId, from, to);
-            DeviceReport deviceTrips = new DeviceReport();
-            Device device = Context.getIdentityManager().getById(deviceId);
-            deviceTrips.setDeviceName(device.getName());
-            sheetNames.add(WorkbookUtil.createSafeSheetName(deviceTrips.getDeviceName()));
-            if (device.getGroupId() != 0) {
-                Group group = Context.getGroupsManager().getById(device.getGroupId());
-                if (group != null) {
-                    deviceTrips.setGroupName(group.getName());
+        org.jxls.common.Context jxlsContext = ReportUtils.initializeContext(userId);
+        jxlsContext.putVar("from", from);
+        jxlsContext.putVar("to", to);
+        try (StreamingExcelWriter writer = ReportUtils.createExcelWriter("trips.xlsx", jxlsContext)) {
+            Collection<Long> devices = ReportUtils.getDeviceList(userId, deviceIds, groupIds, from, to);
+            int completed = 0;
+            for (long deviceId : devices) {
+                DeviceReport deviceTrips = ReportUtils.createDeviceReport(deviceId);
+                writer.addSheet(deviceTrips.getDeviceName(), deviceTrips);
+                for (TripReport trip : detectTrips(deviceId, from, to)) {
+                    writer.addRow(trip);
                 }
+                completed += 1;
+                ReportExecutor.updateProgress(completed, devices.size());
             }
-            deviceTrips.setObjects(trips);
-            devicesTrips.add(deviceTrips);
-        }
-        String templatePath = Context.getConfig().getString("report.templatesPath",
-                "templates/export/");
-        try (InputStream inputStream = new FileInputStream(templatePath + "/trips.xlsx")) {
-            org.jxls.common.Context jxlsContext = ReportUtils.initializeContext(userId);
-            jxlsContext.putVar("devices", devicesTrips);
-            jxlsContext.putVar("sheetNames", sheetNames);
-            jxlsContext.putVar("from", from);
-            jxlsContext.putVar("to", to);
-            ReportUtils.processTemplateWithSheets(inputStream, outputStream, jxlsContext);
+            writer.write(outputStream);
         }
     }
 
@@ -0,0 +1,203 @@
+/*
+ * Copyright 2017 Anton Tananaev (anton@traccar.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar.reports;
+
+import org.traccar.events.MotionEventHandler;
+import org.traccar.model.DeviceState;
+import org.traccar.model.Position;
+import org.traccar.reports.model.StopReport;
+import org.traccar.reports.model.TripReport;
+import org.traccar.reports.model.TripsConfig;
+
+/**
+ * Detects trips and stops in a chronologically ordered stream of positions of a single device.
+ * Processing of each position is delayed until the next one arrives, because detection of data gaps looks ahead.
+ */
+public class TripsDetector {
+
+    public interface Listener {
+        void onTrip(TripReport trip);
+        void onStop(StopReport stop);
+    }
+
+    private final TripsConfig tripsConfig;
+    private final boolean ignoreOdometer;
+    private final Listener listener;
+
+    private final MotionEventHandler motionHandler;
+    private final DeviceState deviceState = new DeviceState();
+
+    private final Tracker tripTracker = new Tracker(true);
+    private final Tracker stopTracker = new Tracker(false);
+
+    private Position previous;
+    private Position current;
+
+    private int index = -1;
+    private double speedSum;
+    private long engineHours;
+
+    public TripsDetector(TripsConfig tripsConfig, boolean ignoreOdometer, Listener listener) {
+        this.tripsConfig = tripsConfig;
+        this.ignoreOdometer = ignoreOdometer;
+        this.listener = listener;
+        motionHandler = new MotionEventHandler(tripsConfig);
+    }
+
+    private final class Tracker {
+
+        private final boolean trips;
+
+        private Position start;
+        private int startIndex;
+        private double startSpeedSum;
+        private long startEngineHours;
+        private double maxSpeed;
+
+        private Position end;
+        private int endIndex;
+        private double endSpeedSum;
+        private long endEngineHours;
+        private double endMaxSpeed;
+
+        private Tracker(boolean trips) {
+            this.trips = trips;
+        }
+
+        private void begin(Position position) {
+            start = position;
+            startIndex = index;
+            startSpeedSum = speedSum - position.getSpeed();
+            startEngineHours = engineHours;
+            maxSpeed = position.getSpeed();
+            end = null;
+        }
+
+        private void init(Position position) {
+            if (trips == deviceState.getMotionState()) {
+                begin(position);
+            }
+        }
+
+        private void update(Position position, boolean event) {
+            if (start != null) {
+                maxSpeed = Math.max(maxSpeed, position.getSpeed());
+            }
+            boolean motion = deviceState.getMotionState();
+            boolean pending = deviceState.getMotionPosition() != null;
+            if (start == null && (trips != motion && pending || trips == motion && event)) {
+                begin(position);
+            } else if (trips != motion && start != null && !pending && !event) {
+                start = null;
+            }
+            if (end == null && (trips == motion && pending || trips != motion && event)) {
+                end = position;
+                endIndex = index;
+                endSpeedSum = speedSum;
+                endEngineHours = engineHours;
+                endMaxSpeed = maxSpeed;
+            } else if (end != null && !pending && !event) {
+                end = null;
+            }
+            if (start != null && end != null && event && trips != motion) {
+                report(end, endIndex, endSpeedSum, endEngineHours, endMaxSpeed);
+                start = null;
+            }
+        }
+
+        private void finish() {
+            if (start != null && end != null) {
+                report(end, endIndex, endSpeedSum, endEngineHours, endMaxSpeed);
+            } else if (start != null && !trips) {
+                report(previous, index, speedSum, engineHours, maxSpeed);
+            }
+            start = null;
+            end = null;
+        }
+
+        private void report(Position last, int lastIndex, double lastSpeedSum, long lastEngineHours, double max) {
+            if (trips) {
+                listener.onTrip(ReportUtils.calculateTrip(start, last,
+                        lastSpeedSum - startSpeedSum, max, lastIndex - startIndex, ignoreOdometer));
+            } else {
+                listener.onStop(ReportUtils.calculateStop(start, last, lastEngineHours - startEngineHours));
+            }
+        }
+
+    }
+
+    private boolean isMoving(Position next) {
+        if (tripsConfig.getMinimalNoDataDuration() > 0) {
+            boolean beforeGap = next != null
+                    && next.getFixTime().getTime() - current.getFixTime().getTime()
+                    >= tripsConfig.getMinimalNoDataDuration();
+            boolean afterGap = previous != null
+                    && current.getFixTime().getTime() - previous.getFixTime().getTime()
+                    >= tripsConfig.getMinimalNoDataDuration();
+            if (beforeGap || afterGap) {
+                return false;
+            }
+        }
+        if (current.getAttributes().get(Position.KEY_MOTION) instanceof Boolean) {
+            return current.getBoolean(Position.KEY_MOTION);
+        } else {
+            return current.getSpeed() > tripsConfig.getSpeedThreshold();
+        }
+    }
+
+    private void process(Position next) {
+        boolean moving = isMoving(next);
+        index += 1;
+        speedSum += current.getSpeed();
+        if (previous != null && previous.getBoolean(Position.KEY_IGNITION)
+                && current.getBoolean(Position.KEY_IGNITION)) {
+            engineHours += current.getFixTime().getTime() - previous.getFixTime().getTime();
+        }
+        if (deviceState.getMotionState() == null) {
+            deviceState.setMotionState(moving);
+            tripTracker.init(current);
+            stopTracker.init(current);
+        }
+        boolean event = motionHandler.updateMotionState(deviceState, current, moving) != null;
+        tripTracker.update(current, event);
+        stopTracker.update(current, event);
+        previous = current;
+    }
+
+    public void addPosition(Position position) {
+        if (current != null) {
+            process(position);
+        }
+        current = position;
+    }
+
+    public Position getLastPosition() {
+        return current != null ? current : previous;
+    }
+
+    /**
+     * Reports trip or stop still in progress at the end of the stream.
+     */
+    public void finish() {
+        if (current != null) {
+            process(null);
+            current = null;
+        }
+        tripTracker.finish();
+        stopTracker.finish();
+    }
+
+}
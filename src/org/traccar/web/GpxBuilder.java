@@ -16,6 +16,8 @@
  */
 package org.traccar.web;
 
+import java.io.IOException;
+import java.io.Writer;
 import java.util.Collection;
 
 import org.joda.time.DateTime;
@@ -65,6 +67,11 @@ public class GpxBuilder {
         }
     }
 
+    public void write(Writer writer) throws IOException {
+        writer.append(builder);
+        builder.setLength(0);
+    }
+
     public String build() {
         builder.append(FOOTER);
         return builder.toString();
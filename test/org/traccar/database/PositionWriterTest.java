@@ -0,0 +1,218 @@
+package org.traccar.database;
+
+import org.jboss.netty.channel.Channel;
+import org.junit.Assert;
+import org.junit.Test;
+import org.traccar.Config;
+import org.traccar.model.Position;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class PositionWriterTest {
+
+    private static Config createConfig(int batchSize, int queueSize, int threads) {
+        Config config = new Config();
+        config.setString("database.batch.size", String.valueOf(batchSize));
+        config.setString("database.batch.delay", "10");
+        config.setString("database.batch.queueSize", String.valueOf(queueSize));
+        config.setString("database.batch.threads", String.valueOf(threads));
+        return config;
+    }
+
+    private static Position createPosition(long deviceId, int index) {
+        Position position = new Position();
+        position.setDeviceId(deviceId);
+        position.set("index", index);
+        return position;
+    }
+
+    private static class TestPositionWriter extends PositionWriter {
+
+        private final AtomicLong id = new AtomicLong();
+
+        TestPositionWriter(Config config) {
+            super(null, config);
+        }
+
+        @Override
+        protected void addPositions(List<Position> positions) throws SQLException {
+            for (Position position : positions) {
+                addPosition(position);
+            }
+        }
+
+        @Override
+        protected void addPosition(Position position) throws SQLException {
+            position.setId(id.incrementAndGet());
+        }
+
+    }
+
+    @Test
+    public void testOrder() throws Exception {
+        PositionWriter writer = new TestPositionWriter(createConfig(7, 10000, 3));
+
+        int count = 1000;
+        final CountDownLatch latch = new CountDownLatch(count);
+        final Map<Long, List<Integer>> written = new HashMap<>();
+        PositionWriter.WriteCallback callback = new PositionWriter.WriteCallback() {
+            @Override
+            public void onComplete(Position position, boolean stored) {
+                synchronized (written) {
+                    List<Integer> indexes = written.get(position.getDeviceId());
+                    if (indexes == null) {
+                        indexes = new ArrayList<>();
+                        written.put(position.getDeviceId(), indexes);
+                    }
+                    indexes.add(position.getInteger("index"));
+                }
+                latch.countDown();
+            }
+        };
+
+        for (int i = 0; i < count; i++) {
+            writer.write(null, createPosition(i % 5, i), callback);
+        }
+
+        Assert.assertTrue(latch.await(10, TimeUnit.SECONDS));
+        writer.stop();
+
+        Assert.assertEquals(5, written.size());
+        for (List<Integer> indexes : written.values()) {
+            Assert.assertEquals(count / 5, indexes.size());
+            List<Integer> sorted = new ArrayList<>(indexes);
+            Collections.sort(sorted);
+            Assert.assertEquals(sorted, indexes);
+        }
+    }
+
+    private void testFallback(final RuntimeException batchError) throws Exception {
+        PositionWriter writer = new TestPositionWriter(createConfig(100, 10000, 1)) {
+            @Override
+            protected void addPositions(List<Position> positions) throws SQLException {
+                if (batchError != null) {
+                    throw batchError;
+                }
+                throw new SQLException("batch failed");
+            }
+
+            @Override
+            protected void addPosition(Position position) throws SQLException {
+                if (position.getInteger("index") % 2 != 0) {
+                    throw new SQLException("insert failed");
+                }
+                super.addPosition(position);
+            }
+        };
+
+        final List<Position> stored = Collections.synchronizedList(new ArrayList<Position>());
+        final CountDownLatch latch = new CountDownLatch(10);
+        PositionWriter.WriteCallback callback = new PositionWriter.WriteCallback() {
+            @Override
+            public void onComplete(Position position, boolean written) {
+                if (written) {
+                    stored.add(position);
+                } else {
+                    Assert.assertEquals(0, position.getId());
+                }
+                latch.countDown();
+            }
+        };
+
+        for (int i = 0; i < 10; i++) {
+            writer.write(null, createPosition(1, i), callback);
+        }
+
+        Assert.assertTrue(latch.await(10, TimeUnit.SECONDS));
+        writer.stop();
+
+        Assert.assertEquals(0, writer.getQueueSize());
+        Assert.assertEquals(5, stored.size());
+        for (Position position : stored) {
+            Assert.assertEquals(0, position.getInteger("index") % 2);
+            Assert.assertNotEquals(0, position.getId());
+        }
+    }
+
+    @Test
+    public void testFallback() throws Exception {
+        testFallback(null);
+    }
+
+    @Test
+    public void testRuntimeFailure() throws Exception {
+        testFallback(new IllegalStateException("batch failed"));
+    }
+
+    @Test
+    public void testSuspend() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        PositionWriter writer = new TestPositionWriter(createConfig(1, 4, 1)) {
+            @Override
+            protected void addPositions(List<Position> positions) throws SQLException {
+                try {
+                    release.await();
+                } catch (InterruptedException error) {
+                    throw new SQLException(error);
+                }
+                super.addPositions(positions);
+            }
+        };
+
+        final AtomicBoolean readable = new AtomicBoolean(true);
+        Channel channel = (Channel) Proxy.newProxyInstance(
+                Channel.class.getClassLoader(), new Class<?>[] {Channel.class}, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                switch (method.getName()) {
+                    case "isReadable":
+                        return readable.get();
+                    case "setReadable":
+                        readable.set((Boolean) args[0]);
+                        return null;
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    case "equals":
+                        return proxy == args[0];
+                    default:
+                        throw new UnsupportedOperationException(method.getName());
+                }
+            }
+        });
+
+        final CountDownLatch latch = new CountDownLatch(4);
+        PositionWriter.WriteCallback callback = new PositionWriter.WriteCallback() {
+            @Override
+            public void onComplete(Position position, boolean stored) {
+                latch.countDown();
+            }
+        };
+
+        for (int i = 0; i < 3; i++) {
+            writer.write(channel, createPosition(1, i), callback);
+        }
+        Assert.assertTrue(readable.get());
+
+        writer.write(channel, createPosition(1, 3), callback);
+        Assert.assertFalse(readable.get());
+
+        release.countDown();
+        Assert.assertTrue(latch.await(10, TimeUnit.SECONDS));
+        writer.stop();
+
+        Assert.assertTrue(readable.get());
+    }
+
+}
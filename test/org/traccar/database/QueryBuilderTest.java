@@ -0,0 +1,77 @@
+package org.traccar.database;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.Assert;
+import org.junit.Test;
+import org.traccar.BaseTest;
+import org.traccar.model.Position;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+
+public class QueryBuilderTest extends BaseTest {
+
+    private JdbcDataSource createDataSource() throws SQLException {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:querybuilder;DB_CLOSE_DELAY=-1");
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            statement.execute("DROP TABLE IF EXISTS positions");
+            statement.execute("CREATE TABLE positions (id INT AUTO_INCREMENT PRIMARY KEY, deviceId INT, "
+                    + "valid BOOLEAN, fixTime TIMESTAMP, latitude DOUBLE, longitude DOUBLE, "
+                    + "address VARCHAR(512), attributes VARCHAR(4000))");
+        }
+        return dataSource;
+    }
+
+    private Position createPosition(long deviceId) {
+        Position position = new Position();
+        position.setDeviceId(deviceId);
+        position.setValid(true);
+        position.setTime(new Date(1500000000000L));
+        position.setLatitude(55.75);
+        position.setLongitude(37.62);
+        position.set(Position.KEY_IGNITION, true);
+        return position;
+    }
+
+    @Test
+    public void testObjectMapping() throws SQLException {
+        JdbcDataSource dataSource = createDataSource();
+
+        String insert = "INSERT INTO positions (deviceId, valid, fixTime, latitude, longitude, address, attributes) "
+                + "VALUES (:deviceId, :valid, :fixTime, :latitude, :longitude, :address, :attributes)";
+
+        long id = QueryBuilder.create(dataSource, insert, true).setObject(createPosition(1)).executeUpdate();
+        Assert.assertEquals(1, id);
+
+        Collection<Position> positions = QueryBuilder.create(dataSource,
+                "SELECT * FROM positions WHERE deviceId = :deviceId").setLong("deviceId", 1).executeQuery(Position.class);
+        Assert.assertEquals(1, positions.size());
+
+        Position position = positions.iterator().next();
+        Assert.assertEquals(id, position.getId());
+        Assert.assertTrue(position.getValid());
+        Assert.assertEquals(1500000000000L, position.getFixTime().getTime());
+        Assert.assertEquals(55.75, position.getLatitude(), 0.0001);
+        Assert.assertNull(position.getAddress());
+        Assert.assertTrue(position.getBoolean(Position.KEY_IGNITION));
+    }
+
+    @Test
+    public void testBatch() throws SQLException {
+        JdbcDataSource dataSource = createDataSource();
+
+        QueryBuilder queryBuilder = QueryBuilder.create(dataSource,
+                "INSERT INTO positions (deviceId, latitude) VALUES (:deviceId, :latitude)", true);
+        for (Position position : Arrays.asList(createPosition(1), createPosition(2), createPosition(3))) {
+            queryBuilder.setObject(position).addBatch();
+        }
+        long[] ids = queryBuilder.executeBatch();
+        Assert.assertArrayEquals(new long[] {1, 2, 3}, ids);
+    }
+
+}
@@ -0,0 +1,328 @@
+package org.traccar.database;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.traccar.BaseTest;
+import org.traccar.Config;
+import org.traccar.model.Position;
+import org.traccar.reports.ReportUtils;
+import org.traccar.reports.model.StopReport;
+import org.traccar.reports.model.TripReport;
+import org.traccar.reports.model.TripsConfig;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TripsManagerTest extends BaseTest {
+
+    private static final long MINUTE = 60 * 1000L;
+
+    private static final TripsConfig TRIPS_CONFIG = new TripsConfig(500, 300000, 180000, 900000, false, false, 0.01);
+
+    private static final List<Long> DEVICES = Collections.singletonList(1L);
+
+    private static Config createConfig() {
+        Config config = new Config();
+        config.setString("database.driver", "org.h2.Driver");
+        config.setString("database.url", "jdbc:h2:mem:tripsManagerTest");
+        config.setString("report.trip.interval", "0");
+        return config;
+    }
+
+    private static class TestDataManager extends DataManager {
+
+        private final List<Position> positions = new ArrayList<>();
+        private final List<TripReport> trips = new ArrayList<>();
+        private final List<StopReport> stops = new ArrayList<>();
+        private final AtomicInteger queries = new AtomicInteger();
+        private Date removeTime;
+
+        TestDataManager() throws Exception {
+            super(createConfig());
+        }
+
+        protected void onQuery() {
+        }
+
+        @Override
+        public void getPositions(long deviceId, Date from, Date to, QueryBuilder.ResultHandler<Position> handler)
+                throws SQLException, IOException {
+            queries.incrementAndGet();
+            List<Position> result = new ArrayList<>();
+            synchronized (positions) {
+                for (Position position : positions) {
+                    if (!position.getFixTime().before(from) && !position.getFixTime().after(to)) {
+                        result.add(copy(position));
+                    }
+                }
+            }
+            Collections.sort(result, new Comparator<Position>() {
+                @Override
+                public int compare(Position first, Position second) {
+                    return first.getFixTime().compareTo(second.getFixTime());
+                }
+            });
+            onQuery();
+            for (Position position : result) {
+                handler.handle(position);
+            }
+        }
+
+        @Override
+        public Collection<TripReport> getTrips(long deviceId, Date from, Date to) {
+            List<TripReport> result = new ArrayList<>();
+            for (TripReport trip : trips) {
+                if (!trip.getStartTime().before(from) && !trip.getEndTime().after(to)) {
+                    result.add(trip);
+                }
+            }
+            return result;
+        }
+
+        @Override
+        public TripReport getTripsRange(long deviceId) {
+            TripReport range = null;
+            for (TripReport trip : trips) {
+                if (range == null) {
+                    range = new TripReport();
+                    range.setStartTime(trip.getStartTime());
+                    range.setEndTime(trip.getEndTime());
+                } else {
+                    range.setEndTime(trip.getEndTime());
+                }
+            }
+            return range;
+        }
+
+        @Override
+        public void addTrip(TripReport trip) {
+            trips.add(trip);
+        }
+
+        @Override
+        public void removeTrips(long deviceId, Date time) {
+            removeTime = time;
+            for (TripReport trip : new ArrayList<>(trips)) {
+                if (trip.getEndTime().after(time)) {
+                    trips.remove(trip);
+                }
+            }
+        }
+
+        @Override
+        public Collection<StopReport> getStops(long deviceId, Date from, Date to) {
+            List<StopReport> result = new ArrayList<>();
+            for (StopReport stop : stops) {
+                if (!stop.getStartTime().before(from) && !stop.getEndTime().after(to)) {
+                    result.add(stop);
+                }
+            }
+            return result;
+        }
+
+        @Override
+        public StopReport getStopsRange(long deviceId) {
+            StopReport range = null;
+            for (StopReport stop : stops) {
+                if (range == null) {
+                    range = new StopReport();
+                    range.setStartTime(stop.getStartTime());
+                    range.setEndTime(stop.getEndTime());
+                } else {
+                    range.setEndTime(stop.getEndTime());
+                }
+            }
+            return range;
+        }
+
+        @Override
+        public void addStop(StopReport stop) {
+            stops.add(stop);
+        }
+
+        @Override
+        public void removeStops(long deviceId, Date time) {
+            for (StopReport stop : new ArrayList<>(stops)) {
+                if (stop.getEndTime().after(time)) {
+                    stops.remove(stop);
+                }
+            }
+        }
+
+    }
+
+    private static Position copy(Position position) {
+        Position copy = new Position();
+        copy.setDeviceId(position.getDeviceId());
+        copy.setTime(position.getFixTime());
+        copy.setValid(position.getValid());
+        copy.setSpeed(position.getSpeed());
+        copy.setAttributes(new HashMap<>(position.getAttributes()));
+        return copy;
+    }
+
+    private final Date start = new Date((System.currentTimeMillis() - 24 * 3600 * 1000L) / MINUTE * MINUTE);
+
+    private Position position(TestDataManager dataManager, int minute, double speed, double distance) {
+        Position position = new Position();
+        position.setDeviceId(1);
+        position.setTime(new Date(start.getTime() + minute * MINUTE));
+        position.setValid(true);
+        position.setSpeed(speed);
+        position.set(Position.KEY_TOTAL_DISTANCE, distance);
+        synchronized (dataManager.positions) {
+            dataManager.positions.add(position);
+        }
+        return position;
+    }
+
+    private double drive(TestDataManager dataManager, TripsManager tripsManager, int from, int to, double distance) {
+        for (int minute = from; minute < to; minute++) {
+            Position position;
+            if (minute % 20 < 10) {
+                position = position(dataManager, minute, 0, distance);
+            } else {
+                distance += 1000;
+                position = position(dataManager, minute, 10, distance);
+            }
+            if (tripsManager != null) {
+                tripsManager.updatePosition(copy(position));
+            }
+        }
+        return distance;
+    }
+
+    private static List<String> format(Collection<TripReport> trips) {
+        List<String> result = new ArrayList<>();
+        for (TripReport trip : trips) {
+            result.add(trip.getStartTime().getTime() + "-" + trip.getEndTime().getTime());
+        }
+        return result;
+    }
+
+    private List<String> detect(TestDataManager dataManager) throws SQLException {
+        return format(ReportUtils.detectTripsAndStops(
+                dataManager, TRIPS_CONFIG, false, 1, start, new Date(), TripReport.class));
+    }
+
+    @Test
+    public void testIncremental() throws Exception {
+        TestDataManager dataManager = new TestDataManager();
+        TripsManager tripsManager = new TripsManager(dataManager, TRIPS_CONFIG, createConfig());
+
+        double distance = drive(dataManager, null, 0, 60, 0);
+        tripsManager.update(DEVICES);
+        Assert.assertEquals(2, dataManager.trips.size());
+        int queries = dataManager.queries.get();
+
+        drive(dataManager, tripsManager, 60, 120, distance);
+        tripsManager.update(DEVICES);
+        Assert.assertEquals(queries, dataManager.queries.get());
+        Assert.assertEquals(5, dataManager.trips.size());
+        Assert.assertNull(dataManager.removeTime);
+
+        Assert.assertEquals(detect(dataManager), format(tripsManager.getTrips(1, start, new Date())));
+    }
+
+    @Test
+    public void testLatePosition() throws Exception {
+        TestDataManager dataManager = new TestDataManager();
+        TripsManager tripsManager = new TripsManager(dataManager, TRIPS_CONFIG, createConfig());
+
+        drive(dataManager, null, 0, 80, 0);
+        tripsManager.update(DEVICES);
+        Assert.assertEquals(3, dataManager.trips.size());
+
+        Position late = position(dataManager, 45, 0, 20000);
+        late.setTime(new Date(late.getFixTime().getTime() + 30000));
+        tripsManager.updatePosition(late);
+        tripsManager.update(DEVICES);
+        Assert.assertEquals(late.getFixTime(), dataManager.removeTime);
+
+        Assert.assertEquals(detect(dataManager), format(dataManager.trips));
+        Assert.assertEquals(detect(dataManager), format(tripsManager.getTrips(1, start, new Date())));
+    }
+
+    @Test
+    public void testPositionDuringReplay() throws Exception {
+        final AtomicInteger passes = new AtomicInteger();
+        final TripsManager[] tripsManager = new TripsManager[1];
+        final TestDataManager dataManager = new TestDataManager() {
+            private final Thread owner = Thread.currentThread();
+
+            @Override
+            protected void onQuery() {
+                if (Thread.currentThread() != owner) {
+                    return;
+                }
+                final Position position = passes.getAndIncrement() == 0 ? position(this, 80, 0, 40000) : null;
+                Thread thread = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            if (position != null) {
+                                tripsManager[0].updatePosition(position);
+                            }
+                            tripsManager[0].getTrips(1, start, new Date());
+                        } catch (SQLException error) {
+                            throw new RuntimeException(error);
+                        }
+                    }
+                });
+                thread.start();
+                try {
+                    thread.join(5000);
+                } catch (InterruptedException error) {
+                    throw new RuntimeException(error);
+                }
+                Assert.assertFalse("history must be read without holding the device lock", thread.isAlive());
+            }
+        };
+        tripsManager[0] = new TripsManager(dataManager, TRIPS_CONFIG, createConfig());
+
+        drive(dataManager, null, 0, 80, 0);
+        tripsManager[0].update(DEVICES);
+        Assert.assertEquals(2, passes.get());
+        Assert.assertNull(dataManager.removeTime);
+
+        drive(dataManager, tripsManager[0], 81, 100, 40000);
+        tripsManager[0].update(DEVICES);
+        Assert.assertEquals(2, passes.get());
+        Assert.assertNull(dataManager.removeTime);
+        Assert.assertEquals(detect(dataManager), format(dataManager.trips));
+    }
+
+    @Test
+    public void testStoredAndDetected() throws Exception {
+        TestDataManager dataManager = new TestDataManager();
+        TripsManager tripsManager = new TripsManager(dataManager, TRIPS_CONFIG, createConfig());
+
+        Assert.assertNull(tripsManager.getTrips(1, start, new Date()));
+
+        drive(dataManager, null, 0, 83, 0);
+        tripsManager.update(DEVICES);
+        Date endTime = dataManager.getTripsRange(1).getEndTime();
+        Assert.assertTrue(dataManager.getStopsRange(1).getEndTime().after(endTime));
+
+        List<String> expected = detect(dataManager);
+        List<String> stored = format(dataManager.trips);
+        Assert.assertTrue(expected.size() > stored.size());
+        Assert.assertEquals(expected.subList(0, stored.size()), stored);
+        Assert.assertEquals(expected, format(tripsManager.getTrips(1, start, new Date())));
+
+        Date from = new Date(start.getTime() + 15 * MINUTE);
+        Collection<TripReport> trips = tripsManager.getTrips(1, from, new Date());
+        Assert.assertEquals(expected.subList(1, expected.size()), format(trips));
+
+        Assert.assertNull(tripsManager.getTrips(1, new Date(start.getTime() - MINUTE), new Date()));
+    }
+
+}
@@ -0,0 +1,84 @@
+package org.traccar.geocoder;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+public class GeocoderCacheStoreTest {
+
+    private static int count;
+
+    private static GeocoderCacheStore createStore(int size) throws Exception {
+        count += 1;
+        return new GeocoderCacheStore("mem:geocoderCacheStoreTest" + count, size);
+    }
+
+    private static GeocoderCacheStore.CachedAddress createAddress(long cell, String address, int hits) {
+        GeocoderCacheStore.CachedAddress cachedAddress = new GeocoderCacheStore.CachedAddress();
+        cachedAddress.setCell(cell);
+        cachedAddress.setLatitude(cell);
+        cachedAddress.setLongitude(cell);
+        cachedAddress.setAddress(address);
+        cachedAddress.setCreated(new Date());
+        cachedAddress.setLastUsed(new Date(cell * 1000));
+        cachedAddress.setHits(hits);
+        return cachedAddress;
+    }
+
+    @Test
+    public void testFlush() throws Exception {
+        GeocoderCacheStore store = createStore(10);
+        store.put(createAddress(1, "a", 1));
+        Assert.assertEquals("a", store.get(1).getAddress());
+        Assert.assertTrue(store.getHottest(10).isEmpty());
+
+        store.close();
+        Assert.assertEquals("a", store.get(1).getAddress());
+        Assert.assertEquals(1, store.getHottest(10).size());
+        Assert.assertNull(store.get(2));
+    }
+
+    @Test
+    public void testEviction() throws Exception {
+        GeocoderCacheStore store = createStore(3);
+        for (int i = 1; i <= 5; i++) {
+            store.put(createAddress(i, "a" + i, i));
+        }
+        store.flush();
+
+        List<String> addresses = new ArrayList<>();
+        for (GeocoderCacheStore.CachedAddress cachedAddress : store.getHottest(10)) {
+            addresses.add(cachedAddress.getAddress());
+        }
+        Assert.assertEquals(3, addresses.size());
+        Assert.assertEquals("a5", addresses.get(0));
+        Assert.assertNull(store.get(1));
+        Assert.assertNull(store.get(2));
+        store.close();
+    }
+
+    @Test
+    public void testPrecisionChange() throws Exception {
+        GeocoderCacheStore store = createStore(10);
+
+        GeocoderCache cache = new GeocoderCache(10, 4, 0, 0);
+        cache.setStore(store);
+        cache.put(0.0123, 0.0456, "a");
+        store.flush();
+
+        // same cell number at precision 2 is a different place
+        cache = new GeocoderCache(10, 2, 0, 0);
+        cache.setStore(store);
+        Assert.assertNull(cache.get(1.23, 4.56));
+        Assert.assertEquals("a", cache.get(0.01, 0.05));
+
+        cache = new GeocoderCache(10, 2, 0, 0);
+        cache.setStore(createStore(10));
+        Assert.assertNull(cache.get(0.01, 0.05));
+        store.close();
+    }
+
+}
@@ -0,0 +1,52 @@
+package org.traccar.geocoder;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class GeocoderCacheTest {
+
+    @Test
+    public void testCell() {
+        GeocoderCache cache = new GeocoderCache(10, 4, 0, 0);
+        cache.put(55.75001, 37.62001, "a");
+
+        Assert.assertEquals("a", cache.get(55.75001, 37.62001));
+        Assert.assertEquals("a", cache.get(55.75003, 37.61998));
+        Assert.assertNull(cache.get(55.7505, 37.62001));
+    }
+
+    @Test
+    public void testNegativeCoordinates() {
+        GeocoderCache cache = new GeocoderCache(10, 4, 0, 0);
+        cache.put(-33.8688, -151.2093, "a");
+        cache.put(-33.8688, 151.2093, "b");
+
+        Assert.assertEquals("a", cache.get(-33.8688, -151.2093));
+        Assert.assertEquals("b", cache.get(-33.8688, 151.2093));
+    }
+
+    @Test
+    public void testRadius() {
+        GeocoderCache cache = new GeocoderCache(10, 4, 0, 50);
+        cache.put(55.75, 37.62, "a");
+        cache.put(55.7508, 37.62, "b");
+
+        Assert.assertEquals("a", cache.get(55.7502, 37.62));
+        Assert.assertEquals("b", cache.get(55.7506, 37.62));
+        Assert.assertNull(cache.get(55.76, 37.62));
+    }
+
+    @Test
+    public void testEviction() {
+        GeocoderCache cache = new GeocoderCache(2, 4, 0, 0);
+        cache.put(1, 1, "a");
+        cache.put(2, 2, "b");
+        Assert.assertEquals("a", cache.get(1, 1));
+        cache.put(3, 3, "c");
+
+        Assert.assertEquals("a", cache.get(1, 1));
+        Assert.assertNull(cache.get(2, 2));
+        Assert.assertEquals("c", cache.get(3, 3));
+    }
+
+}
@@ -1,12 +1,24 @@
 package org.traccar.geocoder;
 
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.json.JsonObject;
 
 import org.junit.Assert;
 import org.junit.Ignore;
 import org.junit.Test;
+import org.traccar.BaseTest;
+import org.traccar.Context;
 
-public class GeocoderTest {
+public class GeocoderTest extends BaseTest {
 
     @Ignore
     @Test
@@ -15,6 +27,90 @@ public class GeocoderTest {
         testGoogle();
     }
 
+    @Test
+    public void testRequestFailure() {
+        Geocoder geocoder = new JsonGeocoder("%q", 10, new AddressFormat()) {
+            @Override
+            public Address parseAddress(JsonObject json) {
+                return null;
+            }
+        };
+        final List<Throwable> errors = new ArrayList<>();
+        Geocoder.ReverseGeocoderCallback callback = new Geocoder.ReverseGeocoderCallback() {
+            @Override
+            public void onSuccess(String address) {
+            }
+
+            @Override
+            public void onFailure(Throwable e) {
+                errors.add(e);
+            }
+        };
+        geocoder.getAddress(10, 20, callback);
+        geocoder.getAddress(10, 20, callback);
+        Assert.assertEquals(2, errors.size());
+    }
+
+    @Test
+    public void testWaitingRequestsFailure() throws Exception {
+        final ServerSocket serverSocket = new ServerSocket(0);
+        final Socket[] socket = new Socket[1];
+        Thread acceptor = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    socket[0] = serverSocket.accept();
+                } catch (IOException error) {
+                    throw new RuntimeException(error);
+                }
+            }
+        });
+        acceptor.start();
+
+        // first request stays in progress, the queued ones have an invalid port and fail synchronously
+        Context.getConfig().setString("geocoder.maxRequests", "1");
+        Geocoder geocoder;
+        try {
+            geocoder = new JsonGeocoder("http://127.0.0.1:%.0f/%f", 0, new AddressFormat()) {
+                @Override
+                public Address parseAddress(JsonObject json) {
+                    return null;
+                }
+            };
+        } finally {
+            Context.getConfig().setString("geocoder.maxRequests", "0");
+        }
+
+        int count = 200;
+        final CountDownLatch latch = new CountDownLatch(count + 1);
+        final List<Integer> depths = Collections.synchronizedList(new ArrayList<Integer>());
+        Geocoder.ReverseGeocoderCallback callback = new Geocoder.ReverseGeocoderCallback() {
+            @Override
+            public void onSuccess(String address) {
+                latch.countDown();
+            }
+
+            @Override
+            public void onFailure(Throwable e) {
+                depths.add(new Throwable().getStackTrace().length);
+                latch.countDown();
+            }
+        };
+
+        geocoder.getAddress(serverSocket.getLocalPort(), 0, callback);
+        acceptor.join(5000);
+        for (int i = 1; i <= count; i++) {
+            geocoder.getAddress(-5, i, callback);
+        }
+        Assert.assertTrue(depths.isEmpty());
+
+        serverSocket.close();
+        socket[0].close();
+        Assert.assertTrue(latch.await(10, TimeUnit.SECONDS));
+        Assert.assertEquals(count + 1, depths.size());
+        Assert.assertTrue(Collections.max(depths) - Collections.min(depths) < 50);
+    }
+
     private String address;
 
     private synchronized String waitAddress() {
@@ -0,0 +1,62 @@
+package org.traccar.geofence;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class GeofenceIndexTest {
+
+    private static boolean contains(long[] items, long id) {
+        for (long item : items) {
+            if (item == id) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Test
+    public void testCandidates() throws ParseException {
+        List<GeofenceGeometry> geometries = new ArrayList<>();
+        geometries.add(new GeofenceCircle(55.75, 37.6, 500));
+        geometries.add(new GeofenceCircle(89.9, 10, 50000));
+        geometries.add(new GeofenceCircle(0, 179.999, 10000));
+        geometries.add(new GeofencePolygon("POLYGON ((66.9 179.5, 67.1 179.5, 67.1 -179.5, 66.9 -179.5))"));
+        geometries.add(new GeofencePolygon("POLYGON ((-1 -1, 1 -1, 1 1, -1 1))"));
+        geometries.add(new GeofencePolyline("LINESTRING (66.9494 179.838, 66.9508 -179.8496)", 25));
+        geometries.add(new GeofencePolyline("LINESTRING (56.836 60.6126, 56.8393 60.6114, 56.83887 60.60811)", 100));
+
+        GeofenceIndex index = new GeofenceIndex(0.1);
+        for (int i = 0; i < geometries.size(); i++) {
+            index.put(i + 1, geometries.get(i));
+        }
+
+        Random random = new Random(1);
+        for (int i = 0; i < 200000; i++) {
+            GeofenceGeometry target = geometries.get(random.nextInt(geometries.size()));
+            double latitude = target.getMinLatitude() - 0.5 + random.nextDouble() * 1.2
+                    * (target.getMaxLatitude() - target.getMinLatitude() + 1);
+            double longitude = target.getMinLongitude() - 0.5 + random.nextDouble() * 1.2
+                    * (target.getMaxLongitude() - target.getMinLongitude() + 1);
+            latitude = Math.max(Math.min(latitude, 90), -90);
+            longitude = longitude - Math.floor((longitude + 180) / 360) * 360;
+            long[] candidates = index.getItems(latitude, longitude);
+            for (int j = 0; j < geometries.size(); j++) {
+                if (geometries.get(j).containsPoint(latitude, longitude)) {
+                    Assert.assertTrue(contains(candidates, j + 1));
+                }
+            }
+        }
+
+        index.remove(1);
+        Assert.assertFalse(contains(index.getItems(55.75, 37.6), 1));
+        Assert.assertTrue(contains(index.getItems(0, 0), 5));
+        Assert.assertFalse(contains(index.getItems(-50, -50), 5));
+        Assert.assertTrue(contains(index.getItems(-50, -50), 2));
+    }
+
+}
@@ -47,4 +47,22 @@ public class GeofencePolygonTest {
 
     }
 
+    @Test
+    public void testContainsLargePolygon() throws ParseException {
+        StringBuilder test = new StringBuilder("POLYGON ((");
+        int count = 360;
+        for (int i = 0; i < count; i++) {
+            double angle = Math.toRadians(i);
+            double radius = i % 2 == 0 ? 1 : 0.9;
+            test.append(50 + radius * Math.sin(angle)).append(' ').append(10 + radius * Math.cos(angle));
+            test.append(i < count - 1 ? ", " : "))");
+        }
+        GeofenceGeometry geofenceGeometry = new GeofencePolygon(test.toString());
+        Assert.assertTrue(geofenceGeometry.containsPoint(50, 10));
+        Assert.assertTrue(geofenceGeometry.containsPoint(50.8, 10.1));
+        Assert.assertTrue(!geofenceGeometry.containsPoint(51.1, 10));
+        Assert.assertTrue(!geofenceGeometry.containsPoint(50, 8));
+        Assert.assertEquals(test.toString(), geofenceGeometry.toWkt());
+    }
+
 }
@@ -0,0 +1,61 @@
+package org.traccar.helper;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+public class LongObjectMapTest {
+
+    @Test
+    public void testOperations() {
+        LongObjectMap<String> map = new LongObjectMap<>();
+        Assert.assertTrue(map.isEmpty());
+        Assert.assertNull(map.put(1, "a"));
+        Assert.assertNull(map.put(-5, "b"));
+        Assert.assertEquals("a", map.put(1, "c"));
+        Assert.assertEquals(2, map.size());
+        Assert.assertEquals("c", map.get(1));
+        Assert.assertTrue(map.containsKey(-5));
+        Assert.assertFalse(map.containsKey(0));
+        Assert.assertEquals("b", map.remove(-5));
+        Assert.assertNull(map.remove(-5));
+        Assert.assertEquals(1, map.size());
+        map.clear();
+        Assert.assertNull(map.get(1));
+    }
+
+    @Test
+    public void testRandom() {
+        Random random = new Random(1);
+        LongObjectMap<Long> map = new LongObjectMap<>();
+        Map<Long, Long> expected = new HashMap<>();
+        for (int i = 0; i < 100000; i++) {
+            long key = random.nextInt(2000) * 1024L;
+            if (random.nextBoolean()) {
+                Assert.assertEquals(expected.put(key, (long) i), map.put(key, (long) i));
+            } else {
+                Assert.assertEquals(expected.remove(key), map.remove(key));
+            }
+        }
+        Assert.assertEquals(expected.size(), map.size());
+        for (Map.Entry<Long, Long> entry : expected.entrySet()) {
+            Assert.assertEquals(entry.getValue(), map.get(entry.getKey()));
+        }
+        long[] keys = map.keys();
+        Arrays.sort(keys);
+        Long[] expectedKeys = expected.keySet().toArray(new Long[0]);
+        Arrays.sort(expectedKeys);
+        Assert.assertEquals(expectedKeys.length, keys.length);
+        for (int i = 0; i < keys.length; i++) {
+            Assert.assertEquals((long) expectedKeys[i], keys[i]);
+        }
+        LongObjectMap<Long> copy = new LongObjectMap<>(map);
+        copy.remove(keys[0]);
+        Assert.assertTrue(map.containsKey(keys[0]));
+    }
+
+}
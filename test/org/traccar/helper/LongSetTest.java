@@ -0,0 +1,64 @@
+package org.traccar.helper;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+public class LongSetTest {
+
+    @Test
+    public void testOperations() {
+        LongSet set = new LongSet();
+        Assert.assertTrue(set.isEmpty());
+        Assert.assertFalse(set.contains(1));
+        Assert.assertTrue(set.add(1));
+        Assert.assertFalse(set.add(1));
+        Assert.assertTrue(set.add(0));
+        Assert.assertTrue(set.add(-7));
+        Assert.assertEquals(3, set.size());
+        Assert.assertTrue(set.contains(0));
+        Assert.assertTrue(set.contains(Long.valueOf(-7)));
+        Assert.assertFalse(set.contains("1"));
+        Assert.assertTrue(set.remove(0));
+        Assert.assertFalse(set.remove(0));
+        Assert.assertEquals(new HashSet<>(Arrays.asList(1L, -7L)), set);
+    }
+
+    @Test
+    public void testRandom() {
+        Random random = new Random(1);
+        LongSet set = new LongSet();
+        Set<Long> expected = new HashSet<>();
+        for (int i = 0; i < 100000; i++) {
+            long value = random.nextInt(3000) * 4096L;
+            if (random.nextInt(3) > 0) {
+                Assert.assertEquals(expected.add(value), set.add(value));
+            } else {
+                Assert.assertEquals(expected.remove(value), set.remove(value));
+            }
+        }
+        Assert.assertEquals(expected, set);
+        Assert.assertEquals(expected, new HashSet<>(set));
+        Assert.assertEquals(expected.size(), set.toLongArray().length);
+
+        LongSet copy = new LongSet();
+        copy.addAll(set);
+        Assert.assertEquals(expected, copy);
+        Assert.assertEquals(set, copy);
+        Assert.assertEquals(set.hashCode(), copy.hashCode());
+
+        copy.add(1);
+        Assert.assertNotEquals(set, copy);
+        copy.remove(1);
+        Assert.assertEquals(set, copy);
+        if (!copy.remove(0)) {
+            copy.add(0);
+        }
+        Assert.assertNotEquals(set, copy);
+    }
+
+}
@@ -0,0 +1,52 @@
+package org.traccar.model;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Date;
+
+public class DailySummaryTest {
+
+    private Position createPosition(long time, double speed, boolean ignition) {
+        Position position = new Position();
+        position.setId(time);
+        position.setTime(new Date(time));
+        position.setSpeed(speed);
+        position.set(Position.KEY_IGNITION, ignition);
+        return position;
+    }
+
+    @Test
+    public void testMerge() {
+        Position[] positions = {
+                createPosition(1000, 10, false),
+                createPosition(2000, 20, true),
+                createPosition(3000, 30, true),
+                createPosition(4000, 5, true),
+                createPosition(5000, 0, false),
+                createPosition(6000, 15, true)};
+
+        DailySummary sequential = new DailySummary();
+        DailySummary first = new DailySummary();
+        DailySummary second = new DailySummary();
+        for (int i = 0; i < positions.length; i++) {
+            sequential.addPosition(positions[i]);
+            (i < 3 ? first : second).addPosition(positions[i]);
+        }
+
+        DailySummary merged = new DailySummary();
+        merged.addSummary(first);
+        merged.addSummary(new DailySummary());
+        merged.addSummary(second);
+
+        Assert.assertEquals(6, merged.getPositionCount());
+        Assert.assertEquals(2000, sequential.getEngineHours());
+        Assert.assertEquals(sequential.getEngineHours(), merged.getEngineHours());
+        Assert.assertEquals(sequential.getSpeedSum(), merged.getSpeedSum(), 0.01);
+        Assert.assertEquals(30, merged.getMaxSpeed(), 0.01);
+        Assert.assertEquals(1000, merged.getFirstPositionId());
+        Assert.assertEquals(6000, merged.getLastPositionId());
+        Assert.assertTrue(merged.getLastIgnition());
+    }
+
+}
@@ -0,0 +1,199 @@
+package org.traccar.notification;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.traccar.Config;
+
+import javax.mail.Address;
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.Session;
+import javax.mail.Transport;
+import javax.mail.URLName;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class MailQueueTest {
+
+    private static final List<String> SENT = Collections.synchronizedList(new ArrayList<String>());
+    private static final List<Long> ATTEMPTS = Collections.synchronizedList(new ArrayList<Long>());
+    private static final AtomicInteger CONNECTS = new AtomicInteger();
+    private static final AtomicInteger CLOSES = new AtomicInteger();
+    private static final AtomicInteger FAILURES = new AtomicInteger();
+    private static volatile CountDownLatch release = new CountDownLatch(0);
+
+    private static class TestTransport extends Transport {
+
+        TestTransport(Session session) {
+            super(session, new URLName("smtp", "localhost", -1, null, null, null));
+        }
+
+        @Override
+        protected boolean protocolConnect(String host, int port, String user, String password) {
+            CONNECTS.incrementAndGet();
+            return true;
+        }
+
+        @Override
+        public void sendMessage(Message message, Address[] addresses) throws MessagingException {
+            ATTEMPTS.add(System.currentTimeMillis());
+            try {
+                release.await(5, TimeUnit.SECONDS);
+                if (FAILURES.getAndDecrement() > 0) {
+                    throw new MessagingException("send failed");
+                }
+                SENT.add(addresses[0] + " " + message.getSubject() + " " + message.getContent());
+            } catch (InterruptedException | IOException error) {
+                throw new MessagingException(error.getMessage());
+            }
+        }
+
+        @Override
+        public synchronized void close() throws MessagingException {
+            CLOSES.incrementAndGet();
+            super.close();
+        }
+
+    }
+
+    @Before
+    public void reset() {
+        SENT.clear();
+        ATTEMPTS.clear();
+        CONNECTS.set(0);
+        CLOSES.set(0);
+        FAILURES.set(0);
+        release = new CountDownLatch(0);
+    }
+
+    private static Properties createProperties() {
+        Properties properties = new Properties();
+        properties.put("mail.smtp.host", "localhost");
+        return properties;
+    }
+
+    private static MailQueue createQueue(boolean digest) {
+        Config config = new Config();
+        config.setString("mail.queue.threads", "1");
+        config.setString("mail.retry.count", "2");
+        config.setString("mail.retry.delay", "1");
+        config.setString("mail.transport.idleTimeout", "1");
+        config.setString("mail.digest", String.valueOf(digest));
+        return new MailQueue(config) {
+            @Override
+            protected Transport createTransport(Session session) {
+                return new TestTransport(session);
+            }
+        };
+    }
+
+    private static void waitFor(int sent) throws InterruptedException {
+        for (int i = 0; i < 100 && SENT.size() < sent; i++) {
+            Thread.sleep(50);
+        }
+        Assert.assertEquals(sent, SENT.size());
+    }
+
+    private static void send(MailQueue queue, Properties properties, String recipient, String text) {
+        queue.send(properties, recipient, new MailMessage(text, text));
+    }
+
+    @Test
+    public void testGrouping() throws Exception {
+        MailQueue queue = createQueue(false);
+        Properties properties = createProperties();
+
+        release = new CountDownLatch(1);
+        send(queue, properties, "a@example.com", "1");
+        for (int i = 0; i < 100 && ATTEMPTS.isEmpty(); i++) {
+            Thread.sleep(10);
+        }
+        send(queue, properties, "b@example.com", "2");
+        send(queue, properties, "a@example.com", "3");
+        send(queue, properties, "b@example.com", "4");
+        release.countDown();
+
+        waitFor(4);
+        Assert.assertEquals("a@example.com 1 1", SENT.get(0));
+        Assert.assertEquals("b@example.com 2 2", SENT.get(1));
+        Assert.assertEquals("b@example.com 4 4", SENT.get(2));
+        Assert.assertEquals("a@example.com 3 3", SENT.get(3));
+        Assert.assertEquals(1, CONNECTS.get());
+        Assert.assertEquals(0, queue.getQueueSize());
+    }
+
+    @Test
+    public void testDigest() throws Exception {
+        MailQueue queue = createQueue(true);
+        Properties properties = createProperties();
+
+        release = new CountDownLatch(1);
+        send(queue, properties, "a@example.com", "1");
+        for (int i = 0; i < 100 && ATTEMPTS.isEmpty(); i++) {
+            Thread.sleep(10);
+        }
+        send(queue, properties, "a@example.com", "2");
+        send(queue, properties, "b@example.com", "3");
+        send(queue, properties, "a@example.com", "4");
+        release.countDown();
+
+        waitFor(3);
+        Assert.assertEquals("a@example.com 1 1", SENT.get(0));
+        Assert.assertEquals("a@example.com 2 (2 notifications) 2<hr>4", SENT.get(1));
+        Assert.assertEquals("b@example.com 3 3", SENT.get(2));
+        Assert.assertEquals(1, CONNECTS.get());
+    }
+
+    @Test
+    public void testRetry() throws Exception {
+        MailQueue queue = createQueue(false);
+
+        FAILURES.set(2);
+        send(queue, createProperties(), "a@example.com", "1");
+
+        waitFor(1);
+        Assert.assertEquals(3, ATTEMPTS.size());
+        Assert.assertTrue(ATTEMPTS.get(1) - ATTEMPTS.get(0) >= 1000);
+        Assert.assertTrue(ATTEMPTS.get(2) - ATTEMPTS.get(1) >= 2000);
+        Assert.assertEquals(3, CONNECTS.get());
+        Assert.assertTrue(CLOSES.get() >= 2);
+
+        FAILURES.set(3);
+        send(queue, createProperties(), "a@example.com", "2");
+        for (int i = 0; i < 100 && ATTEMPTS.size() < 6; i++) {
+            Thread.sleep(50);
+        }
+        Thread.sleep(100);
+        Assert.assertEquals(1, SENT.size());
+        Assert.assertEquals(6, ATTEMPTS.size());
+    }
+
+    @Test
+    public void testIdleClose() throws Exception {
+        MailQueue queue = createQueue(false);
+        Properties properties = createProperties();
+
+        send(queue, properties, "a@example.com", "1");
+        send(queue, properties, "a@example.com", "2");
+        waitFor(2);
+        Assert.assertEquals(1, CONNECTS.get());
+        Assert.assertEquals(0, CLOSES.get());
+
+        for (int i = 0; i < 100 && CLOSES.get() == 0; i++) {
+            Thread.sleep(50);
+        }
+        Assert.assertEquals(1, CLOSES.get());
+
+        send(queue, properties, "a@example.com", "3");
+        waitFor(3);
+        Assert.assertEquals(2, CONNECTS.get());
+    }
+
+}
@@ -0,0 +1,126 @@
+package org.traccar.reports;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.traccar.Config;
+
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ReportExecutorTest {
+
+    private ReportExecutor createExecutor() {
+        Config config = new Config();
+        config.setString("report.threads", "4");
+        config.setString("report.userThreads", "2");
+        return new ReportExecutor(config);
+    }
+
+    @Test
+    public void testOrder() throws Exception {
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        List<Long> result = createExecutor().execute(1, Arrays.asList(5L, 4L, 3L, 2L, 1L),
+                new ReportExecutor.DeviceTask<Long>() {
+            @Override
+            public Long execute(long deviceId) {
+                int current = running.incrementAndGet();
+                synchronized (maxRunning) {
+                    maxRunning.set(Math.max(maxRunning.get(), current));
+                }
+                try {
+                    Thread.sleep(deviceId * 10);
+                } catch (InterruptedException error) {
+                    throw new RuntimeException(error);
+                }
+                running.decrementAndGet();
+                return deviceId * 10;
+            }
+        });
+
+        Assert.assertEquals(Arrays.asList(50L, 40L, 30L, 20L, 10L), result);
+        Assert.assertTrue(maxRunning.get() <= 2);
+    }
+
+    @Test(expected = SQLException.class)
+    public void testError() throws Exception {
+        createExecutor().execute(1, Arrays.asList(1L, 2L, 3L), new ReportExecutor.DeviceTask<Object>() {
+            @Override
+            public Object execute(long deviceId) throws SQLException {
+                if (deviceId == 2) {
+                    throw new SQLException();
+                }
+                return null;
+            }
+        });
+    }
+
+    @Test
+    public void testCancelledTasksKeepPermits() throws Exception {
+        final ReportExecutor executor = createExecutor();
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+
+        try {
+            executor.execute(1, Arrays.asList(1L, 2L, 3L), new ReportExecutor.DeviceTask<Object>() {
+                @Override
+                public Object execute(long deviceId) throws SQLException {
+                    if (deviceId == 1) {
+                        throw new SQLException();
+                    }
+                    running.incrementAndGet();
+                    try {
+                        release.await();
+                    } catch (InterruptedException error) {
+                        throw new SQLException(error);
+                    } finally {
+                        running.decrementAndGet();
+                    }
+                    return null;
+                }
+            });
+            Assert.fail();
+        } catch (SQLException error) {
+            // expected
+        }
+
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    executor.execute(1, Arrays.asList(4L, 5L), new ReportExecutor.DeviceTask<Object>() {
+                        @Override
+                        public Object execute(long deviceId) throws SQLException {
+                            int current = running.incrementAndGet();
+                            synchronized (maxRunning) {
+                                maxRunning.set(Math.max(maxRunning.get(), current));
+                            }
+                            try {
+                                Thread.sleep(50);
+                            } catch (InterruptedException error) {
+                                throw new SQLException(error);
+                            } finally {
+                                running.decrementAndGet();
+                            }
+                            return null;
+                        }
+                    });
+                } catch (SQLException error) {
+                    throw new RuntimeException(error);
+                }
+            }
+        });
+        thread.start();
+        Thread.sleep(200);
+        release.countDown();
+        thread.join(5000);
+
+        Assert.assertFalse(thread.isAlive());
+        Assert.assertTrue(maxRunning.get() <= 2);
+    }
+
+}
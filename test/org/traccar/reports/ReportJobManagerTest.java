@@ -0,0 +1,120 @@
+package org.traccar.reports;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.traccar.Config;
+import org.traccar.reports.model.ReportJob;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.sql.SQLException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class ReportJobManagerTest {
+
+    private ReportJob waitForJob(ReportJob job) throws InterruptedException {
+        for (int i = 0; i < 100 && !ReportJob.STATUS_COMPLETED.equals(job.getStatus())
+                && !ReportJob.STATUS_FAILED.equals(job.getStatus()); i++) {
+            Thread.sleep(50);
+        }
+        return job;
+    }
+
+    private static void awaitUninterruptibly(CountDownLatch latch) {
+        while (true) {
+            try {
+                latch.await();
+                return;
+            } catch (InterruptedException error) {
+                // database drivers ignore interrupts as well
+            }
+        }
+    }
+
+    private static ReportJobManager.ReportWriter createWriter(
+            final String result, final CountDownLatch started, final CountDownLatch release) {
+        return new ReportJobManager.ReportWriter() {
+            @Override
+            public void write(OutputStream outputStream) throws IOException {
+                started.countDown();
+                awaitUninterruptibly(release);
+                outputStream.write(result.getBytes(StandardCharsets.UTF_8));
+            }
+        };
+    }
+
+    @Test
+    public void testJobs() throws Exception {
+        File directory = Files.createTempDirectory("reports").toFile();
+        Config config = new Config();
+        config.setString("report.cache.path", directory.getPath());
+        ReportJobManager manager = new ReportJobManager(config);
+
+        ReportJobManager.ReportWriter writer = new ReportJobManager.ReportWriter() {
+            @Override
+            public void write(OutputStream outputStream) throws IOException {
+                outputStream.write("result".getBytes(StandardCharsets.UTF_8));
+            }
+        };
+
+        ReportJob job = waitForJob(manager.submit(1, "trips", ReportJob.FORMAT_JSON, "a", writer));
+        Assert.assertEquals(ReportJob.STATUS_COMPLETED, job.getStatus());
+        Assert.assertEquals("result", new String(
+                Files.readAllBytes(manager.getFile(job).toPath()), StandardCharsets.UTF_8));
+
+        Assert.assertSame(job, manager.submit(1, "trips", ReportJob.FORMAT_JSON, "a", writer));
+        Assert.assertNotEquals(job.getId(), manager.submit(2, "trips", ReportJob.FORMAT_JSON, "a", writer).getId());
+        Assert.assertNull(manager.getJob(2, job.getId()));
+
+        ReportJob failedJob = waitForJob(manager.submit(1, "trips", ReportJob.FORMAT_JSON, "b",
+                new ReportJobManager.ReportWriter() {
+            @Override
+            public void write(OutputStream outputStream) throws SQLException {
+                throw new SQLException("error");
+            }
+        }));
+        Assert.assertEquals(ReportJob.STATUS_FAILED, failedJob.getStatus());
+        Assert.assertFalse(manager.getFile(failedJob).exists());
+
+        manager.removeJob(job);
+        Assert.assertFalse(manager.getFile(job).exists());
+        Assert.assertNull(manager.getJob(1, job.getId()));
+    }
+
+    @Test
+    public void testRemoveRunningJob() throws Exception {
+        File directory = Files.createTempDirectory("reports").toFile();
+        Config config = new Config();
+        config.setString("report.cache.path", directory.getPath());
+        ReportJobManager manager = new ReportJobManager(config);
+
+        CountDownLatch oldStarted = new CountDownLatch(1);
+        CountDownLatch oldRelease = new CountDownLatch(1);
+        ReportJob oldJob = manager.submit(1, "trips", ReportJob.FORMAT_JSON, "a",
+                createWriter("old", oldStarted, oldRelease));
+        Assert.assertTrue(oldStarted.await(5, TimeUnit.SECONDS));
+        manager.removeJob(oldJob);
+
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ReportJob job = manager.submit(1, "trips", ReportJob.FORMAT_JSON, "a", createWriter("new", started, release));
+        Assert.assertNotSame(oldJob, job);
+        Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        oldRelease.countDown();
+        Assert.assertEquals(ReportJob.STATUS_FAILED, waitForJob(oldJob).getStatus());
+        Assert.assertFalse(manager.getFile(job).exists());
+
+        release.countDown();
+        Assert.assertEquals(ReportJob.STATUS_COMPLETED, waitForJob(job).getStatus());
+        Assert.assertEquals("new", new String(
+                Files.readAllBytes(manager.getFile(job).toPath()), StandardCharsets.UTF_8));
+        Assert.assertSame(job, manager.getJob(1, job.getId()));
+        Assert.assertArrayEquals(new String[] {manager.getFile(job).getName()}, directory.list());
+    }
+
+}
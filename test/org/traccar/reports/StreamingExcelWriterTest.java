@@ -0,0 +1,78 @@
+package org.traccar.reports;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.ClientAnchor;
+import org.apache.poi.ss.usermodel.Comment;
+import org.apache.poi.ss.usermodel.Drawing;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.jxls.common.Context;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+public class StreamingExcelWriterTest {
+
+    private Cell createCell(Sheet sheet, int row, int column, String value, String command) {
+        Cell cell = (sheet.getRow(row) != null ? sheet.getRow(row) : sheet.createRow(row)).createCell(column);
+        cell.setCellValue(value);
+        if (command != null) {
+            ClientAnchor anchor = sheet.getWorkbook().getCreationHelper().createClientAnchor();
+            anchor.setRow1(row);
+            anchor.setCol1(column);
+            Drawing drawing = sheet.createDrawingPatriarch();
+            Comment comment = drawing.createCellComment(anchor);
+            comment.setString(sheet.getWorkbook().getCreationHelper().createRichTextString(command));
+            cell.setCellComment(comment);
+        }
+        return cell;
+    }
+
+    private byte[] createTemplate() throws IOException {
+        try (Workbook workbook = new XSSFWorkbook()) {
+            Sheet sheet = workbook.createSheet("template");
+            createCell(sheet, 0, 0, "Device:", "jx:each(items=\"devices\", var=\"device\", lastCell=\"B2\")");
+            createCell(sheet, 0, 1, "${device}", null);
+            createCell(sheet, 1, 0, "${item}", "jx:each(items=\"device.objects\", var=\"item\", lastCell=\"B2\")");
+            createCell(sheet, 1, 1, "value ${item * 2} of ${device}", null);
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            workbook.write(output);
+            return output.toByteArray();
+        }
+    }
+
+    @Test
+    public void testWrite() throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (StreamingExcelWriter writer = new StreamingExcelWriter(
+                new ByteArrayInputStream(createTemplate()), new Context(), 2)) {
+            writer.addSheet("a", "a");
+            for (int i = 0; i < 5; i++) {
+                writer.addRow(i);
+            }
+            writer.addSheet("a", "b");
+            writer.addRow(10);
+            writer.write(output);
+        }
+
+        try (Workbook workbook = new XSSFWorkbook(new ByteArrayInputStream(output.toByteArray()))) {
+            Assert.assertEquals(2, workbook.getNumberOfSheets());
+
+            Sheet sheet = workbook.getSheet("a");
+            Assert.assertEquals("a", sheet.getRow(0).getCell(1).getStringCellValue());
+            Assert.assertEquals(5, sheet.getLastRowNum());
+            Assert.assertEquals(4, sheet.getRow(5).getCell(0).getNumericCellValue(), 0);
+            Assert.assertEquals("value 8 of a", sheet.getRow(5).getCell(1).getStringCellValue());
+            Assert.assertNull(sheet.getRow(0).getCell(0).getCellComment());
+
+            sheet = workbook.getSheet("a (2)");
+            Assert.assertEquals("b", sheet.getRow(0).getCell(1).getStringCellValue());
+            Assert.assertEquals("value 20 of b", sheet.getRow(1).getCell(1).getStringCellValue());
+        }
+    }
+
+}